@@ -0,0 +1,74 @@
+package com.hazelnut.benchmark;
+
+import com.hazelnut.HazelNutApplication;
+import com.hazelnut.Hazelnut;
+import org.apache.curator.test.TestingServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cold start of one node, from nothing loaded to startup coordination done, then shut down again
+ * Every fork is a fresh JVM measured once, so class loading and context setup are part of the time
+ * Each start begins a new cluster, i.e. both variants do the full welcome path
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class ColdStartBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        TestingServer server;
+
+        final AtomicInteger clusters = new AtomicInteger();
+
+        @Setup
+        public void start() throws Exception {
+            System.setProperty("zookeeper.extendedTypesEnabled", "true");
+            server = new TestingServer(true);
+        }
+
+        @TearDown
+        public void stop() throws Exception {
+            server.close();
+        }
+
+        String nextClusterId() {
+            return "cold_start_" + clusters.incrementAndGet();
+        }
+    }
+
+    @Benchmark
+    public void embedded(Server zooKeeper) {
+        Hazelnut.builder()
+                .connectString(zooKeeper.server.getConnectString())
+                .clusterId(zooKeeper.nextClusterId())
+                .start()
+                .close();
+    }
+
+    @Benchmark
+    public void springBoot(Server zooKeeper) {
+        SpringApplication application = new SpringApplication(HazelNutApplication.class);
+        application.setBannerMode(Banner.Mode.OFF);
+        application.run("--client.connection.string=" + zooKeeper.server.getConnectString(),
+                "--cluster.id=" + zooKeeper.nextClusterId()).close();
+    }
+}
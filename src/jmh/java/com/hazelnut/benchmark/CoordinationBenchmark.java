@@ -0,0 +1,103 @@
+package com.hazelnut.benchmark;
+
+import com.hazelnut.cluster.DistributedLock;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.retry.RetryNTimes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.hazelnut.benchmark.EmbeddedCluster.STATUS_PATH;
+import static com.hazelnut.benchmark.EmbeddedCluster.TTL;
+import static org.apache.curator.framework.CuratorFrameworkFactory.newClient;
+
+/**
+ * Cost of the coordination primitives against an in-process ZooKeeper server
+ * Throughput gives ops/us, SampleTime gives the latency percentiles of each primitive
+ * The Contended variants run the same primitive from 8 threads sharing one node's services
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoordinationBenchmark {
+
+    @Benchmark
+    public void openAndCloseSession(EmbeddedCluster cluster) {
+        cluster.spareSession.open().close();
+    }
+
+    /**
+     * what every session open cost before the connection was shared, kept as the baseline
+     */
+    @Benchmark
+    public void openAndCloseNewClient(EmbeddedCluster cluster) throws InterruptedException {
+        CuratorFramework client = newClient(cluster.server.getConnectString(), 60000, 15000, new RetryNTimes(2, 1000));
+        client.start();
+        client.blockUntilConnected();
+        client.close();
+    }
+
+    @Benchmark
+    public boolean getClusterStatus(EmbeddedCluster cluster) {
+        return cluster.session.getClusterStatus(STATUS_PATH);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean getClusterStatusContended(EmbeddedCluster cluster) {
+        return cluster.session.getClusterStatus(STATUS_PATH);
+    }
+
+    @Benchmark
+    public boolean getSyncedClusterStatus(EmbeddedCluster cluster) {
+        return cluster.session.getSyncedClusterStatus(STATUS_PATH);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean getSyncedClusterStatusContended(EmbeddedCluster cluster) {
+        return cluster.session.getSyncedClusterStatus(STATUS_PATH);
+    }
+
+    @Benchmark
+    public void markClusterAsActive(EmbeddedCluster cluster) {
+        cluster.session.markClusterAsActive(STATUS_PATH, TTL);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void markClusterAsActiveContended(EmbeddedCluster cluster) {
+        cluster.session.markClusterAsActive(STATUS_PATH, TTL);
+    }
+
+    /**
+     * the conditional create of the create coordination mode, on a cluster already marked as started
+     */
+    @Benchmark
+    public boolean tryMarkClusterAsActive(EmbeddedCluster cluster) {
+        return cluster.session.tryMarkClusterAsActive(STATUS_PATH, TTL);
+    }
+
+    @Benchmark
+    public boolean tryLockAndRelease(EmbeddedCluster cluster) {
+        DistributedLock lock = cluster.context.getBean(DistributedLock.class);
+        try (DistributedLock locked = lock.tryLock()) {
+            return locked.isLocked();
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean tryLockAndReleaseContended(EmbeddedCluster cluster) {
+        return tryLockAndRelease(cluster);
+    }
+}
@@ -0,0 +1,85 @@
+package com.hazelnut.benchmark;
+
+import com.hazelnut.cluster.ClientRetryPolicy;
+import com.hazelnut.cluster.ClusterMembership;
+import com.hazelnut.cluster.ClusterStatusCache;
+import com.hazelnut.cluster.DistributedLock;
+import com.hazelnut.cluster.StatusJournal;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.test.TestingServer;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process ZooKeeper server with the cluster services of one node wired against it
+ * The services are wired by Spring exactly as in the application, only the properties differ
+ */
+@State(Scope.Benchmark)
+public class EmbeddedCluster {
+
+    static final String STATUS_PATH = "/benchmark/startup_status";
+
+    static final long TTL = 7000;
+
+    TestingServer server;
+
+    AnnotationConfigApplicationContext context;
+
+    ZooKeeperSession session;
+
+    ZooKeeperSession spareSession;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        System.setProperty("zookeeper.extendedTypesEnabled", "true");
+        server = new TestingServer(true);
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties(server.getConnectString())));
+        context.register(HazelnutMetrics.class, ZooKeeperCircuitBreaker.class, ZooKeeperConnectionManager.class, StatusJournal.class, ClusterStatusCache.class, ClusterMembership.class, ZooKeeperSession.class, DistributedLock.class);
+        context.refresh();
+        session = context.getBean(ZooKeeperSession.class).open();
+        spareSession = context.getBean(ZooKeeperSession.class);
+        session.markClusterAsActive(STATUS_PATH, TTL);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        session.close();
+        context.close();
+        server.close();
+    }
+
+    static Map<String, Object> properties(String connectString) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cluster.members.path", "/benchmark/members");
+        properties.put("cluster.generation.path", "/benchmark/generation");
+        properties.put("cluster.status.data.path", "/benchmark/startup_status");
+        properties.put("node.id", "benchmark");
+        properties.put("node.status.journal.path", "");
+        properties.put("distributed.lock.path", "/benchmark/initialization_mutex");
+        properties.put("distributed.lock.timeout.ms", "5000");
+        properties.put("distributed.lock.lease.ms", "0");
+        properties.put("client.connection.string", connectString);
+        properties.put("client.session.timeout.ms", "60000");
+        properties.put("client.connection.timeout.ms", "15000");
+        properties.put("client.connect.budget.ms", "15000");
+        properties.put("client.retry.time.ms", "1000");
+        properties.put("client.retry.attempts.count", "2");
+        properties.put("client.retry.max.time.ms", "8000");
+        properties.put("client.retry.policy", ClientRetryPolicy.EXPONENTIAL.name());
+        properties.put("client.circuit.breaker.failures", "5");
+        properties.put("client.circuit.breaker.open.ms", "5000");
+        return properties;
+    }
+}
@@ -1,17 +1,26 @@
 package com.hazelnut;
 
+import com.hazelnut.node.ClusterTenants;
 import com.hazelnut.node.NodeStartup;
+import com.hazelnut.node.StartupOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.ComponentScan;
-import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.Import;
 
 import javax.annotation.PostConstruct;
 
-@SpringBootApplication
-@EnableScheduling
-@ComponentScan(basePackages = "com.hazelnut")
+@SpringBootConfiguration
+@EnableAutoConfiguration
+/**
+ * Runs one Hazelnut node as a Spring Boot application, a thin adapter over HazelnutConfiguration
+ * The services are imported rather than scanned, so they are the same beans as with Hazelnut.builder()
+ */
+@Import(HazelnutConfiguration.class)
 public class HazelNutApplication {
 
     public static void main(String[] args) {
@@ -20,9 +29,28 @@ public class HazelNutApplication {
     @Autowired
     NodeStartup service;
 
+    @Autowired
+    ClusterTenants tenants;
+
+    @Value("${node.startup.async}")
+    boolean asyncStartup;
+
+    private final Logger logger = LoggerFactory.getLogger(HazelNutApplication.class);
+
     @PostConstruct
     public void init(){
-        service.bootStrapNodeAndCluster();
+        if (asyncStartup) {
+            service.bootStrapNodeAndClusterAsync()
+                    .whenComplete((outcome, e) -> {
+                        logger.info("Node startup completed: {}", outcome, e);
+                        tenants.startTenants();
+                    });
+        } else {
+            while (service.bootStrapNodeAndCluster() == StartupOutcome.NOT_STARTED && !Thread.currentThread().isInterrupted()) {
+                logger.warn("Node is not started, bootstrapping again.");
+            }
+            tenants.startTenants();
+        }
     }
 
 }
@@ -0,0 +1,219 @@
+package com.hazelnut;
+
+import com.hazelnut.cluster.ClusterEvents;
+import com.hazelnut.cluster.ClusterStore;
+import com.hazelnut.cluster.ClusterStartupTask;
+import com.hazelnut.cluster.DistributedLockRegistry;
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.cluster.StartupCoordination;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.ClusterTenants;
+import com.hazelnut.node.NodeLivenessReporter;
+import com.hazelnut.node.NodeStartup;
+import com.hazelnut.node.StartupOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.scheduling.annotation.ScheduledAnnotationBeanPostProcessor;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * One Hazelnut node embedded in a plain Java process, without a Spring Boot application
+ * <pre>
+ * try (Hazelnut hazelnut = Hazelnut.builder().connectString("localhost:2181").clusterId("orders").start()) {
+ *     DistributedLock lock = hazelnut.getLockRegistry().getLock("invoices");
+ *     ...
+ * }
+ * </pre>
+ * The services are wired as per HazelnutConfiguration in a bare Spring context, without Spring Boot
+ * auto-configuration or classpath scanning. Properties not set on the builder keep their value from
+ * hazelnut-defaults.properties. Heart beats are scheduled as in the application, until the node is closed.
+ */
+public final class Hazelnut implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(Hazelnut.class);
+
+    private final AnnotationConfigApplicationContext context;
+
+    private final CompletableFuture<StartupOutcome> startup;
+
+    private Hazelnut(AnnotationConfigApplicationContext context, CompletableFuture<StartupOutcome> startup) {
+        this.context = context;
+        this.startup = startup;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the startup of this node, complete once start() returned unless node.startup.async is set
+     */
+    public CompletableFuture<StartupOutcome> getStartup() {
+        return startup;
+    }
+
+    public NodeStartup getNodeStartup() {
+        return context.getBean(NodeStartup.class);
+    }
+
+    public NodeLivenessReporter getLivenessReporter() {
+        return context.getBean(NodeLivenessReporter.class);
+    }
+
+    /**
+     * @return the registry handing out one DistributedLock, read-write lock or semaphore per resource
+     */
+    public DistributedLockRegistry getLockRegistry() {
+        return context.getBean(DistributedLockRegistry.class);
+    }
+
+    /**
+     * @return the tenant clusters coordinated by this node, see ClusterTenants
+     */
+    public ClusterTenants getTenants() {
+        return context.getBean(ClusterTenants.class);
+    }
+
+    /**
+     * @return publisher of cluster status, membership and connection events, see ClusterEvents
+     */
+    public ClusterEvents getEvents() {
+        return context.getBean(ClusterEvents.class);
+    }
+
+    /**
+     * @return typed key-value store of cluster-wide state, see ClusterStore
+     */
+    public ClusterStore getStore() {
+        return context.getBean(ClusterStore.class);
+    }
+
+    public HazelnutMetrics getMetrics() {
+        return context.getBean(HazelnutMetrics.class);
+    }
+
+    /**
+     * stop heart beats and close the ZooKeeper session of this node
+     * the heart beats are cancelled first, so none runs against services already shut down
+     */
+    @Override
+    public void close() {
+        if (context.isActive()) {
+            context.getBean(ScheduledAnnotationBeanPostProcessor.class).destroy();
+        }
+        context.close();
+    }
+
+    /**
+     * Collects the properties of one node, the keys are the ones of hazelnut-defaults.properties
+     */
+    public static final class Builder {
+
+        private final Map<String, Object> properties = new HashMap<>();
+
+        private final List<ClusterStartupTask> startupTasks = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder connectString(String connectString) {
+            return property("client.connection.string", connectString);
+        }
+
+        public Builder clusterId(String clusterId) {
+            return property("cluster.id", clusterId);
+        }
+
+        /**
+         * @param nodeId id of this node, a random UUID if not set
+         */
+        public Builder nodeId(String nodeId) {
+            return property("node.id", nodeId);
+        }
+
+        public Builder livenessMode(LivenessMode livenessMode) {
+            return property("cluster.liveness.mode", livenessMode.name());
+        }
+
+        public Builder startupCoordination(StartupCoordination startupCoordination) {
+            return property("distributed.startup.coordination", startupCoordination.name());
+        }
+
+        /**
+         * @param clusterIds tenant clusters to start along with this node and keep alive, see ClusterTenants
+         */
+        public Builder tenants(String... clusterIds) {
+            return property("cluster.tenants", String.join(",", clusterIds));
+        }
+
+        /**
+         * @param asyncStartup True to return from start() before startup coordination completed, see getStartup()
+         */
+        public Builder asyncStartup(boolean asyncStartup) {
+            return property("node.startup.async", String.valueOf(asyncStartup));
+        }
+
+        /**
+         * set any other property, e.g. client.connect.budget.ms
+         */
+        public Builder property(String key, Object value) {
+            properties.put(key, value);
+            return this;
+        }
+
+        /**
+         * add a task to run once per cluster start, as a ClusterStartupTask bean would in the application
+         */
+        public Builder startupTask(ClusterStartupTask startupTask) {
+            startupTasks.add(startupTask);
+            return this;
+        }
+
+        /**
+         * wire the node, connect to ZooKeeper, bootstrap the node and cluster, then start the tenants if any
+         * waits for startup coordination, bounded by node.startup.budget.ms, unless node.startup.async is set
+         *
+         * @return the started node, to be closed on shutdown
+         */
+        public Hazelnut start() {
+            long begin = System.nanoTime();
+            AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+            ConfigurableEnvironment environment = context.getEnvironment();
+            Map<String, Object> nodeProperties = new HashMap<>(properties);
+            nodeProperties.putIfAbsent("node.id", UUID.randomUUID().toString());
+            environment.getPropertySources().addFirst(new MapPropertySource("hazelnut", nodeProperties));
+            context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+            context.register(HazelnutConfiguration.class);
+            for (int i = 0; i < startupTasks.size(); i++) {
+                ClusterStartupTask startupTask = startupTasks.get(i);
+                context.registerBean("startupTask" + i, ClusterStartupTask.class, () -> startupTask);
+            }
+            try {
+                context.refresh();
+                CompletableFuture<StartupOutcome> startup = context.getBean(NodeStartup.class).bootStrapNodeAndClusterAsync();
+                if (!environment.getRequiredProperty("node.startup.async", Boolean.class)) {
+                    startup.join();
+                }
+                context.getBean(ClusterTenants.class).startTenants();
+                logger.info("Hazelnut node {} started in {} ms.", nodeProperties.get("node.id"), NANOSECONDS.toMillis(System.nanoTime() - begin));
+                return new Hazelnut(context, startup);
+            } catch (RuntimeException e) {
+                context.close();
+                throw e;
+            }
+        }
+    }
+}
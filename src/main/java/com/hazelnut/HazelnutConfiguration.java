@@ -0,0 +1,36 @@
+package com.hazelnut;
+
+import com.hazelnut.cluster.ClusterEvents;
+import com.hazelnut.cluster.ClusterMembership;
+import com.hazelnut.cluster.ClusterStartupTasks;
+import com.hazelnut.cluster.ClusterStatusCache;
+import com.hazelnut.cluster.ClusterStore;
+import com.hazelnut.cluster.DistributedLock;
+import com.hazelnut.cluster.DistributedLockRegistry;
+import com.hazelnut.cluster.StatusJournal;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.ClusterTenants;
+import com.hazelnut.node.NodeLivenessReporter;
+import com.hazelnut.node.NodeStartup;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+/**
+ * The Hazelnut services of one node, for a Spring context to import
+ * Defaults come from hazelnut-defaults.properties, any property source of the importing context overrides them
+ * Needs plain Spring only, no Spring Boot auto-configuration, see Hazelnut.builder() for use without any context
+ */
+@EnableScheduling
+@PropertySource("classpath:hazelnut-defaults.properties")
+@Import({HazelnutMetrics.class, ZooKeeperCircuitBreaker.class, ZooKeeperConnectionManager.class, StatusJournal.class, ClusterStatusCache.class,
+        ClusterMembership.class, ZooKeeperSession.class, DistributedLock.class, DistributedLockRegistry.class,
+        ClusterStartupTasks.class, NodeStartup.class, NodeLivenessReporter.class, ClusterTenants.class, ClusterEvents.class,
+        ClusterStore.class})
+public class HazelnutConfiguration {
+}
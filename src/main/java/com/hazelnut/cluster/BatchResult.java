@@ -0,0 +1,131 @@
+package com.hazelnut.cluster;
+
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a ZooKeeperSession.Batch, one entry per step in the order the steps were added
+ * <br/>
+ * A transaction is all or nothing. If it is rolled back, the failing step reports its error, the steps ahead of it
+ * report OK as they would have succeeded, and the steps after it report RUNTIMEINCONSISTENCY.
+ * In case of network failure nothing is known of the steps, all of them report the error of the request.
+ */
+public final class BatchResult {
+
+    private final boolean committed;
+
+    private final Code[] codes;
+
+    private final String[] paths;
+
+    private final Stat[] stats;
+
+    private BatchResult(boolean committed, List<Integer> stepEnds, int[] opCodes, String[] opPaths, Stat[] opStats) {
+        this.committed = committed;
+        this.codes = new Code[stepEnds.size()];
+        this.paths = new String[stepEnds.size()];
+        this.stats = new Stat[stepEnds.size()];
+        int from = 0;
+        for (int step = 0; step < stepEnds.size(); step++) {
+            int end = stepEnds.get(step);
+            codes[step] = Code.OK;
+            for (int op = from; op < end; op++) {
+                Code code = Code.get(opCodes[op]);
+                if (code != Code.OK && (codes[step] == Code.OK || codes[step] == Code.RUNTIMEINCONSISTENCY)) {
+                    codes[step] = code;
+                }
+            }
+            if (end > from) {
+                paths[step] = opPaths[end - 1];
+                stats[step] = opStats[end - 1];
+            }
+            from = end;
+        }
+    }
+
+    static BatchResult committed(List<CuratorTransactionResult> results, List<Integer> stepEnds) {
+        int[] opCodes = new int[results.size()];
+        String[] opPaths = new String[results.size()];
+        Stat[] opStats = new Stat[results.size()];
+        for (int op = 0; op < results.size(); op++) {
+            opCodes[op] = results.get(op).getError();
+            opPaths[op] = results.get(op).getResultPath();
+            opStats[op] = results.get(op).getResultStat();
+        }
+        return new BatchResult(true, stepEnds, opCodes, opPaths, opStats);
+    }
+
+    static BatchResult rolledBack(List<OpResult> results, List<Integer> stepEnds) {
+        int[] opCodes = new int[results.size()];
+        for (int op = 0; op < results.size(); op++) {
+            OpResult result = results.get(op);
+            opCodes[op] = result instanceof OpResult.ErrorResult ? ((OpResult.ErrorResult) result).getErr() : Code.OK.intValue();
+        }
+        return new BatchResult(false, stepEnds, opCodes, new String[results.size()], new Stat[results.size()]);
+    }
+
+    static BatchResult failed(Code code, int steps) {
+        List<Integer> stepEnds = new ArrayList<>(steps);
+        int[] opCodes = new int[steps];
+        for (int step = 0; step < steps; step++) {
+            stepEnds.add(step + 1);
+            opCodes[step] = code.intValue();
+        }
+        return new BatchResult(false, stepEnds, opCodes, new String[steps], new Stat[steps]);
+    }
+
+    /**
+     * @return True if every step took effect
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return number of steps
+     */
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * @param step index of the step, in the order added
+     * @return OK if the step succeeded or would have, otherwise its error
+     */
+    public Code getCode(int step) {
+        return codes[step];
+    }
+
+    /**
+     * @return index of the first step with an error other than RUNTIMEINCONSISTENCY, -1 if none
+     */
+    public int getFailedStep() {
+        for (int step = 0; step < codes.length; step++) {
+            if (codes[step] != Code.OK && codes[step] != Code.RUNTIMEINCONSISTENCY) {
+                return step;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param step index of the step, in the order added
+     * @return path of the znode of the step, for a create with its sequential suffix, null unless committed
+     */
+    public String getPath(int step) {
+        return paths[step];
+    }
+
+    /**
+     * @param step index of the step, in the order added
+     * @return stat of the znode after a set data step, null for other steps or unless committed
+     */
+    public Stat getStat(int step) {
+        return stats[step];
+    }
+}
@@ -0,0 +1,14 @@
+package com.hazelnut.cluster;
+
+/**
+ * Thrown instead of sending an operation to ZooKeeper while the ZooKeeperCircuitBreaker is open
+ * Carries no stack trace, it is thrown often and always from the same place
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException() {
+        super("ZooKeeper circuit breaker is open, operation not sent.", null, false, false);
+    }
+}
@@ -0,0 +1,33 @@
+package com.hazelnut.cluster;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.retry.BoundedExponentialBackoffRetry;
+import org.apache.curator.retry.RetryNTimes;
+
+/**
+ * How the shared client retries an operation that lost its connection or timed out
+ */
+public enum ClientRetryPolicy {
+    /**
+     * client.retry.attempts.count retries, client.retry.time.ms apart
+     */
+    FIXED {
+        @Override
+        public RetryPolicy create(int attempts, int baseSleepMillis, int maxSleepMillis) {
+            return new RetryNTimes(attempts, baseSleepMillis);
+        }
+    },
+    /**
+     * client.retry.attempts.count retries, the n-th after a random sleep between client.retry.time.ms and
+     * 2^n times that, capped at client.retry.max.time.ms. The random sleep keeps nodes failing together from
+     * retrying together.
+     */
+    EXPONENTIAL {
+        @Override
+        public RetryPolicy create(int attempts, int baseSleepMillis, int maxSleepMillis) {
+            return new BoundedExponentialBackoffRetry(baseSleepMillis, Math.max(baseSleepMillis, maxSleepMillis), attempts);
+        }
+    };
+
+    public abstract RetryPolicy create(int attempts, int baseSleepMillis, int maxSleepMillis);
+}
@@ -0,0 +1,77 @@
+package com.hazelnut.cluster;
+
+/**
+ * One change of the cluster as seen by this process
+ * <br/>
+ * Events are coalesced per subject: the connection, the cluster status, and each node. A subscriber lagging behind
+ * gets only the latest event of a subject, which counts the earlier ones it replaced.
+ */
+public final class ClusterEvent {
+
+    private final ClusterEventType type;
+
+    private final String nodeId;
+
+    private final long timestampMillis;
+
+    private final int coalesced;
+
+    public ClusterEvent(ClusterEventType type, String nodeId, long timestampMillis) {
+        this(type, nodeId, timestampMillis, 0);
+    }
+
+    private ClusterEvent(ClusterEventType type, String nodeId, long timestampMillis, int coalesced) {
+        this.type = type;
+        this.nodeId = nodeId;
+        this.timestampMillis = timestampMillis;
+        this.coalesced = coalesced;
+    }
+
+    public ClusterEventType getType() {
+        return type;
+    }
+
+    /**
+     * @return the node joined or left, the starter of the cluster for CLUSTER_STARTED if known, null otherwise
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return wall clock time this process observed the change
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return number of earlier events of the same subject this one replaced before delivery
+     */
+    public int getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return key of the subject the event is about, events of equal subjects are coalesced
+     */
+    public String getSubject() {
+        if (type.isConnectionEvent()) {
+            return "connection";
+        }
+        return type.isNodeEvent() ? "node/" + nodeId : "cluster";
+    }
+
+    /**
+     * @param older pending event of the same subject
+     * @return this event, counting the older one and what it replaced
+     */
+    public ClusterEvent coalescing(ClusterEvent older) {
+        return new ClusterEvent(type, nodeId, timestampMillis, coalesced + older.coalesced + 1);
+    }
+
+    @Override
+    public String toString() {
+        return type + (nodeId == null ? "" : " " + nodeId) + (coalesced == 0 ? "" : " (" + coalesced + " coalesced)");
+    }
+}
@@ -0,0 +1,49 @@
+package com.hazelnut.cluster;
+
+/**
+ * Changes of the cluster published by ClusterEvents
+ */
+public enum ClusterEventType {
+    /**
+     * the cluster went up, i.e. its status became live or its first member registered
+     */
+    CLUSTER_STARTED,
+    /**
+     * the cluster went cold, i.e. its status was removed or went stale, or its last member left
+     */
+    CLUSTER_EXPIRED,
+    /**
+     * a node registered as live member, membership liveness mode only
+     */
+    NODE_JOINED,
+    /**
+     * the member znode of a node went away, membership liveness mode only
+     */
+    NODE_LEFT,
+    /**
+     * the connection to ZooKeeper is down, the session may still be recovered
+     */
+    CONNECTION_SUSPENDED,
+    /**
+     * the ZooKeeper session is considered gone, ephemeral znodes of this process may be deleted
+     */
+    CONNECTION_LOST,
+    /**
+     * the connection to ZooKeeper is back after being suspended or lost
+     */
+    CONNECTION_RESTORED;
+
+    /**
+     * @return True if the event is about the connection of this process rather than the cluster
+     */
+    public boolean isConnectionEvent() {
+        return this == CONNECTION_SUSPENDED || this == CONNECTION_LOST || this == CONNECTION_RESTORED;
+    }
+
+    /**
+     * @return True if the event is about one node, named by the event
+     */
+    public boolean isNodeEvent() {
+        return this == NODE_JOINED || this == NODE_LEFT;
+    }
+}
@@ -0,0 +1,248 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.utils.ClusterStatusRecord;
+import com.hazelnut.utils.CoalescingPublisher;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.hazelnut.utils.DataMapper.isLiveStatus;
+import static com.hazelnut.utils.DataMapper.readStatus;
+import static org.apache.curator.framework.recipes.cache.CuratorCache.Options.SINGLE_NODE_CACHE;
+import static org.apache.curator.utils.ZKPaths.getNodeFromPath;
+import static org.apache.curator.utils.ZKPaths.getPathAndNode;
+
+@Service
+/**
+ * Publisher of cluster events driven by ZooKeeper watches, instead of polling NodeStartup.isNodeStarted()
+ * <br/>
+ * In ttl mode the status znode is watched: CLUSTER_STARTED when it becomes live or a new epoch begins, CLUSTER_EXPIRED
+ * when it is removed or, checked every node.liveness.reporting.time.ms, not refreshed in time.
+ * In membership mode the members path is watched: NODE_JOINED and NODE_LEFT per member znode, CLUSTER_STARTED with the
+ * first member and CLUSTER_EXPIRED once the last one left. Connection events are published in both modes.
+ * <br/>
+ * Watching starts with the first subscriber. A subscriber first gets the last cluster event, if any, then every change
+ * as it requests them. Changes of one subject piling up while a subscriber lags are coalesced to the latest, see
+ * CoalescingPublisher, so slow subscribers hold a few pending events at most, one per node in membership mode.
+ */
+public class ClusterEvents implements Flow.Publisher<ClusterEvent>, SchedulingConfigurer, Closeable {
+
+    @Value("${cluster.liveness.mode}")
+    private LivenessMode livenessMode;
+
+    @Value("${cluster.status.data.path}")
+    private String statusPath;
+
+    @Value("${cluster.members.path}")
+    private String membersPath;
+
+    @Value("${node.liveness.reporting.time.ms}")
+    private long expiryCheckMillis;
+
+    private final ZooKeeperConnectionManager connectionManager;
+
+    private final CoalescingPublisher<ClusterEvent> publisher =
+            new CoalescingPublisher<>(ForkJoinPool.commonPool(), ClusterEvent::getSubject, (older, newer) -> newer.coalescing(older));
+
+    private final ClusterStatusRecord statusRecord = new ClusterStatusRecord();
+
+    private final Set<String> members = new HashSet<>();
+
+    private CuratorFramework client = null;
+
+    private CuratorCache cache = null;
+
+    private ConnectionStateListener connectionListener = null;
+
+    private boolean closed = false;
+
+    private volatile byte[] statusData = null;
+
+    private volatile boolean clusterUp = false;
+
+    private long clusterEpoch = 0;
+
+    private volatile ClusterEvent clusterEvent = null;
+
+    private final Logger logger = LoggerFactory.getLogger(ClusterEvents.class);
+
+    public ClusterEvents(@Autowired ZooKeeperConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @Override
+    /**
+     * the subscriber first gets the current cluster state, if any, then every later event
+     * taken under the lock the state changes under, so an event being published is neither missed nor seen twice
+     */
+    public synchronized void subscribe(Flow.Subscriber<? super ClusterEvent> subscriber) {
+        publisher.subscribe(subscriber, () -> clusterEvent);
+        startWatching();
+    }
+
+    @Override
+    /**
+     * check the watched status for expiry, as a status going stale sends no watch notification
+     */
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(this::checkStatusExpiry, expiryCheckMillis);
+    }
+
+    private synchronized void startWatching() {
+        if (cache != null || closed) {
+            return;
+        }
+        client = connectionManager.acquire();
+        connectionListener = (curator, newState) -> connectionChanged(newState);
+        client.getConnectionStateListenable().addListener(connectionListener);
+        if (livenessMode == LivenessMode.MEMBERSHIP) {
+            cache = CuratorCache.build(client, membersPath);
+            cache.listenable().addListener(CuratorCacheListener.builder()
+                    .forCreates(this::memberJoined)
+                    .forDeletes(this::memberLeft)
+                    .build());
+        } else {
+            cache = CuratorCache.build(client, statusPath, SINGLE_NODE_CACHE);
+            cache.listenable().addListener(CuratorCacheListener.builder()
+                    .forCreatesAndChanges((oldNode, node) -> statusChanged(node.getData()))
+                    .forDeletes(node -> statusChanged(null))
+                    .build());
+        }
+        cache.start();
+        logger.info("Publishing cluster events of {}.", livenessMode == LivenessMode.MEMBERSHIP ? membersPath : statusPath);
+    }
+
+    private void connectionChanged(ConnectionState newState) {
+        switch (newState) {
+            case SUSPENDED:
+                publish(ClusterEventType.CONNECTION_SUSPENDED, null);
+                break;
+            case LOST:
+                publish(ClusterEventType.CONNECTION_LOST, null);
+                break;
+            case RECONNECTED:
+                publish(ClusterEventType.CONNECTION_RESTORED, null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized void statusChanged(byte[] data) {
+        statusData = data;
+        boolean live = data != null && isLiveStatus(data, System.currentTimeMillis());
+        if (!live) {
+            clusterChanged(false, null);
+            return;
+        }
+        readStatus(data, statusRecord);
+        String starter = statusRecord.getStarterNodeId();
+        if (clusterUp && statusRecord.getEpochMillis() != clusterEpoch) {
+            clusterChanged(false, null);
+        }
+        clusterEpoch = statusRecord.getEpochMillis();
+        clusterChanged(true, starter.isEmpty() ? null : starter);
+    }
+
+    /**
+     * publish CLUSTER_EXPIRED once the last seen status got stale without any write
+     * skipped while nobody subscribes, a later subscriber is caught up by the next check
+     */
+    public void checkStatusExpiry() {
+        if (publisher.getSubscriberCount() == 0) {
+            return;
+        }
+        byte[] data = statusData;
+        if (clusterUp && data != null && !isLiveStatus(data, System.currentTimeMillis())) {
+            statusChanged(data);
+        }
+    }
+
+    private synchronized void memberJoined(ChildData node) {
+        if (isMember(node) && members.add(node.getPath())) {
+            String nodeId = nodeIdOf(node);
+            publish(ClusterEventType.NODE_JOINED, nodeId);
+            clusterChanged(true, nodeId);
+        }
+    }
+
+    private synchronized void memberLeft(ChildData node) {
+        if (isMember(node) && members.remove(node.getPath())) {
+            publish(ClusterEventType.NODE_LEFT, nodeIdOf(node));
+            if (members.isEmpty()) {
+                clusterChanged(false, null);
+            }
+        }
+    }
+
+    private boolean isMember(ChildData node) {
+        return membersPath.equals(getPathAndNode(node.getPath()).getPath());
+    }
+
+    private static String nodeIdOf(ChildData member) {
+        byte[] data = member.getData();
+        return data == null || data.length == 0 ? getNodeFromPath(member.getPath()) : new String(data, StandardCharsets.UTF_8);
+    }
+
+    private void clusterChanged(boolean up, String nodeId) {
+        if (up == clusterUp) {
+            return;
+        }
+        clusterUp = up;
+        clusterEvent = publish(up ? ClusterEventType.CLUSTER_STARTED : ClusterEventType.CLUSTER_EXPIRED, nodeId);
+    }
+
+    private ClusterEvent publish(ClusterEventType type, String nodeId) {
+        ClusterEvent event = new ClusterEvent(type, nodeId, System.currentTimeMillis());
+        logger.debug("Cluster event {}.", event);
+        publisher.submit(event);
+        return event;
+    }
+
+    /**
+     * @return True while the cluster is up as per the last event
+     */
+    public boolean isClusterUp() {
+        return clusterUp;
+    }
+
+    public int getSubscriberCount() {
+        return publisher.getSubscriberCount();
+    }
+
+    @Override
+    @PreDestroy
+    /**
+     * stop watching and complete the subscribers
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (cache != null) {
+                cache.close();
+                client.getConnectionStateListenable().removeListener(connectionListener);
+                connectionManager.release();
+                cache = null;
+            }
+        }
+        publisher.close();
+    }
+}
@@ -0,0 +1,298 @@
+package com.hazelnut.cluster;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.recipes.nodes.PersistentNode;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.curator.utils.ZKPaths.extractSequentialSuffix;
+import static org.apache.curator.utils.ZKPaths.getNodeFromPath;
+import static org.apache.curator.utils.ZKPaths.makePath;
+
+@Service
+/**
+ * Registry of live cluster members
+ * Each started node owns one ephemeral sequential znode under the members path, bound to its ZooKeeper session.
+ * The znode is recreated by Curator after a session expiry, and disappears when the node dies,
+ * so the cluster is up as long as the members path has children.
+ * The node starting a cold cluster writes the generation marker before it registers, see ClusterStartupTasks.
+ * Reads of the members path fail fast while the ZooKeeperCircuitBreaker is open, and count towards it.
+ */
+public class ClusterMembership implements Closeable {
+
+    @Value("${cluster.members.path}")
+    private String membersPath;
+
+    @Value("${cluster.generation.path}")
+    private String generationPath;
+
+    @Value("${node.id}")
+    private String nodeId;
+
+    @Value("${client.connection.timeout.ms}")
+    private long registrationTimeoutMillis;
+
+    private final ZooKeeperConnectionManager connectionManager;
+
+    private PersistentNode member = null;
+
+    private final Logger logger = LoggerFactory.getLogger(ClusterMembership.class);
+
+    public ClusterMembership(@Autowired ZooKeeperConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * register this node as a live member of the cluster
+     * registering is idempotent
+     */
+    public synchronized void register() {
+        if (member != null) {
+            return;
+        }
+        CuratorFramework client = connectionManager.acquire();
+        member = new PersistentNode(client, CreateMode.EPHEMERAL_SEQUENTIAL, true, makePath(membersPath, nodeId + "-"), nodeId.getBytes(StandardCharsets.UTF_8));
+        member.start();
+        try {
+            if (!connectionManager.isConnected()) {
+                logger.warn("ZooKeeper connection is down, node {} registers once reconnected.", nodeId);
+            } else if (connectionManager.isCircuitOpen()) {
+                logger.warn("ZooKeeper circuit breaker is open, node {} registers in the background.", nodeId);
+            } else if (!member.waitForInitialCreate(registrationTimeoutMillis, MILLISECONDS)) {
+                logger.warn("Membership of node {} not yet confirmed by ZooKeeper.", nodeId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Registered node {} as cluster member.", nodeId);
+    }
+
+    /**
+     * register this node as the first member of a cold cluster, beginning a new generation of it
+     * to be called by the node that won the startup, e.g. under the startup lock
+     */
+    public void registerAsFirst() {
+        beginGenerationIfCold();
+        register();
+    }
+
+    /**
+     * register this node and check if it is the oldest live member
+     * member znodes are sequential, so among nodes starting together exactly one sees no older member.
+     * A node joining a running cluster always sees the older members.
+     * in case of network failure, this node is considered the first so the flow continues pessimistically
+     *
+     * @return True if no member registered before this node is live
+     */
+    public boolean registerAndCheckIfFirst() {
+        beginGenerationIfCold();
+        register();
+        String ownPath = member.getActualPath();
+        if (ownPath == null) {
+            return true;
+        }
+        long ownSequence = sequenceOf(getNodeFromPath(ownPath));
+        CuratorFramework client = connectionManager.acquire();
+        try {
+            connectionManager.admit();
+            List<String> members = client.getChildren().forPath(membersPath);
+            connectionManager.onSuccess();
+            return members.stream().mapToLong(this::sequenceOf).allMatch(sequence -> sequence >= ownSequence);
+        } catch (Exception e) {
+            connectionManager.onFailure(e);
+            logger.warn(e.getMessage(), e);
+        } finally {
+            connectionManager.release();
+        }
+        return true;
+    }
+
+    /**
+     * write the generation marker if no member is live
+     * the write is conditional on the marker version read ahead of the member list, so of the nodes finding
+     * the cluster cold together exactly one begins the new generation, and a node that found it cold before
+     * another node registered does not begin it a second time.
+     * in case of network failure no generation is begun, tasks then count done markers of the last one
+     */
+    private void beginGenerationIfCold() {
+        CuratorFramework client = connectionManager.acquire();
+        try {
+            connectionManager.admit();
+            Stat marker = client.checkExists().forPath(generationPath);
+            if (getLiveMemberCount(true) > 0) {
+                connectionManager.onSuccess();
+                return;
+            }
+            if (marker == null) {
+                client.create().creatingParentContainersIfNeeded().forPath(generationPath);
+            } else {
+                client.setData().withVersion(marker.getVersion()).forPath(generationPath);
+            }
+            connectionManager.onSuccess();
+            logger.info("Node {} begins a new generation of the cluster.", nodeId);
+        } catch (KeeperException.BadVersionException | KeeperException.NodeExistsException e) {
+            connectionManager.onSuccess();
+            logger.info("New generation of the cluster already begun by another node.");
+        } catch (Exception e) {
+            connectionManager.onFailure(e);
+            logger.warn(e.getMessage(), e);
+        } finally {
+            connectionManager.release();
+        }
+    }
+
+    private long sequenceOf(String memberName) {
+        try {
+            return Long.parseLong(extractSequentialSuffix(memberName));
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Checks if any node is registered as live member of the cluster
+     *
+     * @param synced if true, a sync is queued ahead of the read so the answer is up-to-date with the leader
+     * @return True if at least one member is live
+     */
+    public boolean hasLiveMembers(boolean synced) {
+        return getLiveMemberCount(synced) > 0;
+    }
+
+    /**
+     * Checks without waiting for ZooKeeper to answer if any node is registered as live member of the cluster
+     * the first use of the shared client still connects it on the calling thread, see ZooKeeperConnectionManager
+     * In case of network failure the future completes as false
+     *
+     * @return future completing with True if at least one member is live
+     */
+    public CompletableFuture<Boolean> hasLiveMembersAsync() {
+        CompletableFuture<Boolean> live = new CompletableFuture<>();
+        CuratorFramework client = connectionManager.acquire();
+        try {
+            connectionManager.admit();
+            client.getChildren().inBackground((curator, event) -> {
+                Code code = Code.get(event.getResultCode());
+                if (code == Code.OK || code == Code.NONODE) {
+                    connectionManager.onSuccess();
+                } else {
+                    connectionManager.onFailure(KeeperException.create(code, membersPath));
+                }
+                live.complete(code == Code.OK && !event.getChildren().isEmpty());
+            }).forPath(membersPath);
+        } catch (Exception e) {
+            connectionManager.onFailure(e);
+            logger.warn(e.getMessage(), e);
+            live.complete(false);
+        }
+        return live.whenComplete((result, e) -> connectionManager.release());
+    }
+
+    /**
+     * count the live members of the cluster
+     * in case of network failure, the count is 0 so the caller proceeds pessimistically
+     *
+     * @param synced if true, a sync is queued ahead of the read
+     * @return number of live members
+     */
+    public int getLiveMemberCount(boolean synced) {
+        CuratorFramework client = connectionManager.acquire();
+        try {
+            connectionManager.admit();
+            if (synced) {
+                client.sync().forPath(membersPath);
+            }
+            int count = client.getChildren().forPath(membersPath).size();
+            connectionManager.onSuccess();
+            return count;
+        } catch (KeeperException.NoNodeException e) {
+            connectionManager.onSuccess();
+            logger.info("No cluster member ever registered.");
+        } catch (Exception e) {
+            connectionManager.onFailure(e);
+            logger.warn(e.getMessage(), e);
+        } finally {
+            connectionManager.release();
+        }
+        return 0;
+    }
+
+    /**
+     * wait on a children watch of the members path until any node registers
+     *
+     * @param timeoutMillis
+     * @return True if the cluster got a live member within the timeout
+     */
+    public boolean awaitLiveMembers(long timeoutMillis) {
+        long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+        CuratorFramework client = connectionManager.acquire();
+        try {
+            connectionManager.admit();
+            while (true) {
+                CountDownLatch changed = new CountDownLatch(1);
+                CuratorWatcher watcher = event -> changed.countDown();
+                boolean live = client.checkExists().usingWatcher(watcher).forPath(membersPath) != null
+                        && !client.getChildren().usingWatcher(watcher).forPath(membersPath).isEmpty();
+                connectionManager.onSuccess();
+                if (live) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !changed.await(remaining, NANOSECONDS)) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            connectionManager.onFailure(e);
+            logger.warn(e.getMessage(), e);
+        } finally {
+            connectionManager.release();
+        }
+        return false;
+    }
+
+    public boolean isRegistered() {
+        return member != null;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    @PreDestroy
+    /**
+     * leave the cluster by deleting the member znode of this node
+     */
+    public synchronized void close() {
+        if (member != null) {
+            try {
+                member.close();
+            } catch (IOException e) {
+                logger.warn(e.getMessage(), e);
+            }
+            member = null;
+            connectionManager.release();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.hazelnut.cluster;
+
+import java.util.Set;
+
+/**
+ * A piece of work run once per cluster start, by whichever node claims it first
+ * Declare implementations as Spring beans, ClusterStartupTasks picks them up
+ */
+public interface ClusterStartupTask {
+
+    /**
+     * @return name unique among the startup tasks, also the name of its znodes
+     */
+    String getName();
+
+    /**
+     * @return names of the tasks that must be done, by any node, before this one runs
+     */
+    default Set<String> getDependencies() {
+        return Set.of();
+    }
+
+    /**
+     * do the work, a thrown exception leaves the task to be claimed again
+     */
+    void run() throws Exception;
+}
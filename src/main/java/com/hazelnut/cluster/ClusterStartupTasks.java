@@ -0,0 +1,194 @@
+package com.hazelnut.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.curator.utils.ZKPaths.makePath;
+
+@Service
+/**
+ * Runs the ClusterStartupTask beans once per cluster start, spread over the starting nodes
+ * <br/>
+ * Every task has a claim znode and a done marker under cluster.startup.tasks.path. A task becomes ready once all its
+ * dependencies are marked done, by any node. Every node tries to claim the ready tasks, up to
+ * cluster.startup.tasks.parallelism at a time, so independent tasks run on different nodes in parallel and cluster
+ * initialization takes as long as the longest chain of dependencies, not the sum of all tasks.
+ * <br/>
+ * A node finding a task claimed does not block on it but watches the claim, and tries again once it goes away.
+ * Claims are ephemeral, so tasks of a node dying half way are claimed again. Done markers count for the generation
+ * of the cluster they were created in, i.e. tasks run again when the cluster starts again after going cold.
+ */
+public class ClusterStartupTasks {
+
+    private static final String CLAIM = "claim";
+
+    private static final String DONE = "done";
+
+    @Value("${cluster.startup.tasks.path}")
+    private String tasksPath;
+
+    @Value("${cluster.startup.tasks.parallelism}")
+    private int parallelism;
+
+    @Value("${cluster.liveness.mode}")
+    private LivenessMode livenessMode;
+
+    @Value("${cluster.status.data.path}")
+    private String clusterStatusPath;
+
+    @Value("${cluster.generation.path}")
+    private String generationPath;
+
+    @Value("${distributed.lock.timeout.ms}")
+    private long claimWaitMillis;
+
+    private final ObjectProvider<ZooKeeperSession> sessions;
+
+    private final ObjectProvider<ClusterStartupTask> taskProvider;
+
+    private List<ClusterStartupTask> tasks = List.of();
+
+    private final Logger logger = LoggerFactory.getLogger(ClusterStartupTasks.class);
+
+    public ClusterStartupTasks(@Autowired ObjectProvider<ZooKeeperSession> sessions, @Autowired ObjectProvider<ClusterStartupTask> taskProvider) {
+        this.sessions = sessions;
+        this.taskProvider = taskProvider;
+    }
+
+    /**
+     * collect the task beans and put them in dependency order
+     *
+     * @throws IllegalStateException if names repeat, a dependency is unknown or dependencies form a cycle
+     */
+    @PostConstruct
+    public void init() {
+        Map<String, ClusterStartupTask> declared = new LinkedHashMap<>();
+        taskProvider.orderedStream().forEach(task -> {
+            if (declared.putIfAbsent(task.getName(), task) != null) {
+                throw new IllegalStateException("Startup task " + task.getName() + " is declared twice.");
+            }
+        });
+        for (ClusterStartupTask task : declared.values()) {
+            for (String dependency : task.getDependencies()) {
+                if (!declared.containsKey(dependency)) {
+                    throw new IllegalStateException("Startup task " + task.getName() + " depends on unknown task " + dependency + ".");
+                }
+            }
+        }
+        List<ClusterStartupTask> ordered = new ArrayList<>();
+        while (ordered.size() < declared.size()) {
+            List<String> done = ordered.stream().map(ClusterStartupTask::getName).collect(Collectors.toList());
+            List<ClusterStartupTask> ready = declared.values().stream()
+                    .filter(task -> !ordered.contains(task) && done.containsAll(task.getDependencies()))
+                    .collect(Collectors.toList());
+            if (ready.isEmpty()) {
+                throw new IllegalStateException("Startup tasks have cyclic dependencies.");
+            }
+            ordered.addAll(ready);
+        }
+        tasks = Collections.unmodifiableList(ordered);
+    }
+
+    /**
+     * run the tasks not yet done in this generation of the cluster, together with the other starting nodes
+     * returns once every task is done, failed or given up on, tasks depending on a task not done are skipped
+     *
+     * @return outcome of every task for this node, in dependency order
+     */
+    public Map<String, StartupTaskOutcome> runPending() {
+        if (tasks.isEmpty()) {
+            return Map.of();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "hazelnut-startup-task");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ZooKeeperSession session = sessions.getObject().open()) {
+            long generation = livenessMode == LivenessMode.MEMBERSHIP ? session.getMarkedGeneration(generationPath) : session.getGeneration(clusterStatusPath);
+            Map<String, CompletableFuture<StartupTaskOutcome>> outcomes = new LinkedHashMap<>();
+            for (ClusterStartupTask task : tasks) {
+                CompletableFuture<?>[] dependencies = task.getDependencies().stream().map(outcomes::get).toArray(CompletableFuture[]::new);
+                outcomes.put(task.getName(), CompletableFuture.allOf(dependencies).thenComposeAsync(ignored -> {
+                    boolean ready = task.getDependencies().stream().map(outcomes::get).map(CompletableFuture::join)
+                            .allMatch(outcome -> outcome == StartupTaskOutcome.RAN || outcome == StartupTaskOutcome.DONE_BY_OTHER_NODE);
+                    if (!ready) {
+                        return CompletableFuture.completedFuture(StartupTaskOutcome.SKIPPED);
+                    }
+                    return attempt(task, session, generation, System.nanoTime() + MILLISECONDS.toNanos(claimWaitMillis), executor);
+                }, executor).exceptionally(e -> {
+                    logger.warn("Startup task " + task.getName() + " could not be coordinated.", e);
+                    return StartupTaskOutcome.FAILED;
+                }));
+            }
+            Map<String, StartupTaskOutcome> result = new LinkedHashMap<>();
+            outcomes.forEach((name, outcome) -> result.put(name, outcome.join()));
+            return result;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private CompletableFuture<StartupTaskOutcome> attempt(ClusterStartupTask task, ZooKeeperSession session, long generation,
+                                                         long deadline, ExecutorService executor) {
+        String donePath = makePath(tasksPath, task.getName(), DONE);
+        String claimPath = makePath(tasksPath, task.getName(), CLAIM);
+        if (session.isMarkedSince(donePath, generation)) {
+            return CompletableFuture.completedFuture(StartupTaskOutcome.DONE_BY_OTHER_NODE);
+        }
+        if (session.tryClaim(claimPath)) {
+            //the node that held the claim may have marked the task done between the check above and this claim
+            if (session.isMarkedSince(donePath, generation)) {
+                session.releaseClaim(claimPath);
+                return CompletableFuture.completedFuture(StartupTaskOutcome.DONE_BY_OTHER_NODE);
+            }
+            return CompletableFuture.completedFuture(runClaimed(task, session, donePath, claimPath));
+        }
+        long remainingMillis = NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMillis <= 0) {
+            logger.warn("Startup task {} still claimed by another node, not waiting any longer.", task.getName());
+            return CompletableFuture.completedFuture(StartupTaskOutcome.TIMED_OUT);
+        }
+        return session.watch(claimPath)
+                .completeOnTimeout(null, remainingMillis, MILLISECONDS)
+                .thenComposeAsync(changed -> attempt(task, session, generation, deadline, executor), executor);
+    }
+
+    private StartupTaskOutcome runClaimed(ClusterStartupTask task, ZooKeeperSession session, String donePath, String claimPath) {
+        try {
+            task.run();
+            session.mark(donePath);
+            logger.info("Startup task {} done.", task.getName());
+            return StartupTaskOutcome.RAN;
+        } catch (Exception e) {
+            logger.warn("Startup task " + task.getName() + " failed.", e);
+            return StartupTaskOutcome.FAILED;
+        } finally {
+            session.releaseClaim(claimPath);
+        }
+    }
+
+    /**
+     * @return names of the startup tasks in dependency order
+     */
+    public List<String> getTaskNames() {
+        return tasks.stream().map(ClusterStartupTask::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,224 @@
+package com.hazelnut.cluster;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hazelnut.utils.DataMapper.isLiveStatus;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.curator.framework.recipes.cache.CuratorCache.Options.SINGLE_NODE_CACHE;
+
+@Service
+/**
+ * Near cache of cluster status znodes kept fresh by ZooKeeper watches
+ * <br/>
+ * Staleness: a cached status reflects the last watch notification processed by this process.
+ * It lags ZooKeeper by at most one notification while connected. Until the first notification
+ * arrives, and while the connection is suspended or lost, the entry is not current and callers
+ * are expected to read ZooKeeper directly.
+ */
+public class ClusterStatusCache implements Closeable {
+
+    private final ZooKeeperConnectionManager connectionManager;
+
+    private final StatusJournal journal;
+
+    private final Map<String, CachedStatus> entries = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(ClusterStatusCache.class);
+
+    public ClusterStatusCache(@Autowired ZooKeeperConnectionManager connectionManager, @Autowired StatusJournal journal) {
+        this.connectionManager = connectionManager;
+        this.journal = journal;
+    }
+
+    /**
+     * get the cached status of the path, starting a watch on it on first use
+     * the entry is put into the map first and started outside of the mapping function, as connecting may block
+     * for client.connect.budget.ms and must not hold a bin of the map meanwhile
+     *
+     * @param clusterStatusPath
+     * @return the cache entry of the path
+     */
+    public CachedStatus watch(String clusterStatusPath) {
+        CachedStatus status = entries.computeIfAbsent(clusterStatusPath, path -> new CachedStatus());
+        if (status.cache == null) {
+            synchronized (status.startLock) {
+                if (status.cache == null) {
+                    status.cache = startWatching(clusterStatusPath, status);
+                }
+            }
+        }
+        return status;
+    }
+
+    private CuratorCache startWatching(String clusterStatusPath, CachedStatus status) {
+        CuratorFramework client = connectionManager.acquire();
+        CuratorCache cache = CuratorCache.build(client, clusterStatusPath, SINGLE_NODE_CACHE);
+        boolean journaled = journal.isJournaled(clusterStatusPath);
+        cache.listenable().addListener(CuratorCacheListener.builder()
+                .forCreatesAndChanges((oldNode, node) -> {
+                    status.update(node);
+                    if (journaled) {
+                        journal.record(node.getData(), node.getStat().getVersion(), System.currentTimeMillis());
+                    }
+                })
+                .forDeletes(node -> {
+                    status.update(null);
+                    if (journaled) {
+                        journal.record(null, -1, System.currentTimeMillis());
+                    }
+                })
+                .forInitialized(status::initialized)
+                .build());
+        client.getConnectionStateListenable().addListener(status);
+        status.connected = connectionManager.isConnected();
+        cache.start();
+        logger.info("Watching cluster status at {}", clusterStatusPath);
+        return cache;
+    }
+
+    @Override
+    @PreDestroy
+    /**
+     * stop all watches and give the shared connection back
+     */
+    public void close() {
+        entries.values().forEach(status -> {
+            synchronized (status.startLock) {
+                if (status.cache != null) {
+                    status.cache.close();
+                    status.cache = null;
+                    connectionManager.release();
+                }
+            }
+        });
+        entries.clear();
+    }
+
+    /**
+     * Last known status of one cluster status znode
+     */
+    public static final class CachedStatus implements ConnectionStateListener {
+
+        private final Object startLock = new Object();
+
+        private volatile CuratorCache cache = null;
+
+        private volatile boolean started = false;
+
+        private volatile ChildData node = null;
+
+        private volatile boolean initialized = false;
+
+        private volatile boolean connected = false;
+
+        private volatile long updatedAtNanos = System.nanoTime();
+
+        private volatile boolean refreshSeen = false;
+
+        /**
+         * not watching yet, the connection state is taken when the watch is set up and kept current by its state events
+         */
+        private CachedStatus() {
+        }
+
+        private void update(ChildData node) {
+            this.node = node;
+            started = node != null && isLiveStatus(node.getData(), System.currentTimeMillis());
+            updatedAtNanos = System.nanoTime();
+            refreshSeen = initialized && started;
+            if (started) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private void initialized() {
+            initialized = true;
+        }
+
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            connected = newState.isConnected();
+        }
+
+        /**
+         * @return true if the cached value can be served instead of reading ZooKeeper
+         */
+        public boolean isCurrent() {
+            return initialized && connected;
+        }
+
+        /**
+         * @return True if the cluster was marked as started at the last notification, and that status is not stale yet
+         */
+        public boolean isStarted() {
+            ChildData last = node;
+            return last != null && isLiveStatus(last.getData(), System.currentTimeMillis());
+        }
+
+        /**
+         * @return data and stat of the znode as of the last notification, null if it does not exist
+         */
+        ChildData getNode() {
+            return node;
+        }
+
+        /**
+         * wait for the notification that the cluster is marked as started
+         * all waiters are woken by the same single watch notification
+         *
+         * @param timeoutMillis
+         * @return True if the cluster got marked as started within the timeout
+         */
+        public synchronized boolean awaitStarted(long timeoutMillis) {
+            long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+            long remaining = timeoutMillis;
+            try {
+                while (!started && remaining > 0) {
+                    wait(remaining);
+                    remaining = NANOSECONDS.toMillis(deadline - System.nanoTime());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return started;
+        }
+
+        /**
+         * @return System.nanoTime() of the last observed change of the znode
+         */
+        public long getUpdatedAtNanos() {
+            return updatedAtNanos;
+        }
+
+        /**
+         * time since a write of the started status was last seen
+         * the initial load doesn't count as a refresh: the znode may have been written long before
+         *
+         * @return milliseconds since the last seen refresh, empty if none was seen while current
+         */
+        public OptionalLong getRefreshAgeMillis() {
+            if (!refreshSeen || !isCurrent() || !started) {
+                return OptionalLong.empty();
+            }
+            return OptionalLong.of(NANOSECONDS.toMillis(System.nanoTime() - updatedAtNanos));
+        }
+    }
+}
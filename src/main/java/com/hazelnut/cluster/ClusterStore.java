@@ -0,0 +1,393 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.utils.Codec;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+@Service
+/**
+ * Typed key-value store of small pieces of cluster-wide state, e.g. config epochs or feature toggles
+ * <br/>
+ * Every key is one znode below cluster.store.path, its value converted by a Codec, see DataMapper for the stock ones.
+ * Writes go to ZooKeeper as one ZooKeeperSession.Batch each, so they are linearizable, and compareAndSet() applies
+ * only if the key is still at the version it was read at.
+ * <br/>
+ * Reads are served from a near cache of at most cluster.store.cache.size keys, the least recently read evicted first.
+ * An entry is dropped on the watch notification of any change of its key, and the whole cache while the connection
+ * is down. So a read lags writes of other nodes by at most one notification, as the ClusterStatusCache does, and
+ * always sees the writes of this node. getSynced() reads ZooKeeper up-to-date with the leader instead.
+ * Every key read has at most one watch left on ZooKeeper, set again only once it fired, and removed on eviction.
+ * <br/>
+ * A value that can not be read or a write of unknown outcome throws ClusterStoreException, nothing is guessed.
+ */
+public class ClusterStore implements Closeable {
+
+    private static final int MAX_RACE_ROUNDS = 3;
+
+    @Value("${cluster.store.path}")
+    private String storePath;
+
+    @Value("${cluster.store.cache.size}")
+    private int cacheSize;
+
+    private final ObjectProvider<ZooKeeperSession> sessions;
+
+    private final Map<String, CachedValue> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, KeyWatcher> watchers = new HashMap<>();
+
+    private final Map<String, List<CachedValue>> loading = new HashMap<>();
+
+    private ZooKeeperSession session = null;
+
+    private ConnectionStateListener connectionListener = null;
+
+    private boolean connected = false;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private final Logger logger = LoggerFactory.getLogger(ClusterStore.class);
+
+    public ClusterStore(@Autowired ObjectProvider<ZooKeeperSession> sessions) {
+        this.sessions = sessions;
+    }
+
+    /**
+     * read the key, from the near cache if it holds it
+     *
+     * @param key   name of the key, no slashes
+     * @param codec converting the value
+     * @return the value and its version, not present if the key does not exist
+     * @throws ClusterStoreException if ZooKeeper could not be read
+     */
+    public <T> Versioned<T> get(String key, Codec<T> codec) {
+        String path = pathOf(key);
+        CachedValue cached;
+        synchronized (cache) {
+            cached = connected ? cache.get(path) : null;
+            if (cached != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        return cached != null ? cached.decode(codec) : load(key, path, false).decode(codec);
+    }
+
+    /**
+     * read the key from ZooKeeper after a sync, i.e. as of the latest write acknowledged to any node
+     *
+     * @throws ClusterStoreException if ZooKeeper could not be read
+     */
+    public <T> Versioned<T> getSynced(String key, Codec<T> codec) {
+        return load(key, pathOf(key), true).decode(codec);
+    }
+
+    /**
+     * write the value only if the key is at the expected version
+     * <pre>
+     * Versioned&lt;Long&gt; epoch = store.get("config-epoch", DataMapper.LONG);
+     * boolean won = store.compareAndSet("config-epoch", DataMapper.LONG, epoch.getVersion(), epoch.getValueOr(0L) + 1);
+     * </pre>
+     *
+     * @param expectedVersion as per Versioned.getVersion(), Versioned.ABSENT to create the key
+     * @return False if another write came first, the key is then to be read again
+     * @throws ClusterStoreException if the outcome is unknown
+     */
+    public <T> boolean compareAndSet(String key, Codec<T> codec, int expectedVersion, T value) {
+        String path = pathOf(key);
+        byte[] data = codec.encode(value);
+        BatchResult result = expectedVersion == Versioned.ABSENT
+                ? create(key, path, data)
+                : commit(key, path, batch -> batch.setData(path, data, expectedVersion));
+        return result.isCommitted();
+    }
+
+    /**
+     * write the value whatever the version of the key, creating the key if needed
+     * a key deleted and created again by other nodes between the update and the create is tried again,
+     * at most MAX_RACE_ROUNDS times
+     *
+     * @return the version written
+     * @throws ClusterStoreException if the outcome is unknown, or the key kept being deleted and created meanwhile
+     */
+    public <T> int put(String key, Codec<T> codec, T value) {
+        String path = pathOf(key);
+        byte[] data = codec.encode(value);
+        KeeperException.Code code = KeeperException.Code.OK;
+        for (int round = 0; round < MAX_RACE_ROUNDS; round++) {
+            BatchResult result = commit(key, path, batch -> batch.setData(path, data, Versioned.ABSENT));
+            if (result.isCommitted()) {
+                return result.getStat(0).getVersion();
+            }
+            result = create(key, path, data);
+            if (result.isCommitted()) {
+                return 0;
+            }
+            code = result.getCode(0);
+        }
+        logger.warn("Cluster store key {} kept changing, not written within {} rounds.", key, MAX_RACE_ROUNDS);
+        throw new ClusterStoreException(key, code, null);
+    }
+
+    /**
+     * @param expectedVersion as per Versioned.getVersion(), Versioned.ABSENT for any
+     * @return False if the key did not exist or was not at the expected version
+     * @throws ClusterStoreException if the outcome is unknown
+     */
+    public boolean delete(String key, int expectedVersion) {
+        String path = pathOf(key);
+        return commit(key, path, batch -> batch.delete(path, expectedVersion)).isCommitted();
+    }
+
+    /**
+     * create the key, and the store path first if ZooKeeper lacks it
+     */
+    private BatchResult create(String key, String path, byte[] data) {
+        BatchResult result = commit(key, path, batch -> batch.create(path, data, CreateMode.PERSISTENT));
+        if (result.getCode(0) == KeeperException.Code.NONODE) {
+            session().createContainers(storePath);
+            result = commit(key, path, batch -> batch.create(path, data, CreateMode.PERSISTENT));
+        }
+        if (result.getCode(0) == KeeperException.Code.NONODE) {
+            throw new ClusterStoreException(key, KeeperException.Code.NONODE, null);
+        }
+        return result;
+    }
+
+    /**
+     * commit one write, a rolled back one is a lost race, any other failure leaves the outcome unknown
+     * the key is dropped from the near cache either way, reads of it already on their way are not cached
+     */
+    private BatchResult commit(String key, String path, UnaryOperator<ZooKeeperSession.Batch> write) {
+        BatchResult result = write.apply(session().batch()).commit();
+        synchronized (cache) {
+            invalidate(path);
+        }
+        KeeperException.Code code = result.getCode(0);
+        if (!result.isCommitted() && code != KeeperException.Code.BADVERSION
+                && code != KeeperException.Code.NODEEXISTS && code != KeeperException.Code.NONODE) {
+            throw new ClusterStoreException(key, code, null);
+        }
+        return result;
+    }
+
+    /**
+     * read the key, leaving a watch unless one is set already, and cache it unless a notification or a write
+     * of this node came meanwhile
+     */
+    private CachedValue load(String key, String path, boolean synced) {
+        CachedValue loaded = new CachedValue();
+        KeyWatcher watcher;
+        Watcher watch;
+        synchronized (cache) {
+            loading.computeIfAbsent(path, p -> new ArrayList<>()).add(loaded);
+            watcher = watchers.computeIfAbsent(path, KeyWatcher::new);
+            //a watch not yet confirmed is set again with the same watcher, which ZooKeeper keeps once per path
+            watch = watcher.armed ? null : watcher;
+        }
+        Stat stat = new Stat();
+        try {
+            byte[] data = session().getWatchedData(path, stat, watch, synced);
+            loaded.data = data;
+            loaded.version = data == null ? Versioned.ABSENT : stat.getVersion();
+        } catch (Exception e) {
+            synchronized (cache) {
+                doneLoading(path, loaded);
+                if (!watcher.armed) {
+                    watchers.remove(path, watcher);
+                }
+            }
+            logger.warn("Cluster store key {} not read: {}", key, e.getMessage());
+            throw new ClusterStoreException(key, e instanceof KeeperException ? ((KeeperException) e).code() : KeeperException.Code.CONNECTIONLOSS, e);
+        }
+        Map<String, KeyWatcher> evicted = Map.of();
+        synchronized (cache) {
+            doneLoading(path, loaded);
+            if (watchers.get(path) == watcher) {
+                watcher.armed = true;
+                if (connected && !loaded.invalidated) {
+                    cache.put(path, loaded);
+                    evicted = evictEldest();
+                }
+            }
+        }
+        evicted.forEach(session()::removeWatcher);
+        return loaded;
+    }
+
+    private void doneLoading(String path, CachedValue loaded) {
+        List<CachedValue> loads = loading.get(path);
+        loads.remove(loaded);
+        if (loads.isEmpty()) {
+            loading.remove(path);
+        }
+    }
+
+    /**
+     * drop the cached value of the key, and have reads of it on their way not cached
+     */
+    private void invalidate(String path) {
+        cache.remove(path);
+        loading.getOrDefault(path, List.of()).forEach(loaded -> loaded.invalidated = true);
+    }
+
+    /**
+     * evict the least recently read keys beyond cluster.store.cache.size
+     *
+     * @return watchers of the evicted keys, to be removed from ZooKeeper outside the lock
+     */
+    private Map<String, KeyWatcher> evictEldest() {
+        Map<String, KeyWatcher> evicted = new HashMap<>();
+        Iterator<String> eldest = cache.keySet().iterator();
+        while (cache.size() > cacheSize) {
+            String path = eldest.next();
+            eldest.remove();
+            KeyWatcher watcher = watchers.remove(path);
+            if (watcher != null) {
+                evicted.put(path, watcher);
+            }
+        }
+        return evicted;
+    }
+
+    private synchronized ZooKeeperSession session() {
+        if (session == null) {
+            session = sessions.getObject().open();
+            connectionListener = (client, newState) -> {
+                synchronized (cache) {
+                    connected = newState.isConnected();
+                    if (!connected) {
+                        cache.clear();
+                    }
+                }
+            };
+            session.getClient().getConnectionStateListenable().addListener(connectionListener);
+            synchronized (cache) {
+                connected = session.isConnected();
+            }
+        }
+        return session;
+    }
+
+    private String pathOf(String key) {
+        if (key == null || key.isEmpty() || key.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("Cluster store key must be a non-empty name without slashes, got " + key);
+        }
+        return ZKPaths.makePath(storePath, key);
+    }
+
+    /**
+     * @return number of keys in the near cache
+     */
+    public int getCachedSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return number of keys with a watch left on ZooKeeper
+     */
+    public int getWatchedSize() {
+        synchronized (cache) {
+            return watchers.size();
+        }
+    }
+
+    /**
+     * @return share of get() calls served from the near cache so far, 0 before the first
+     */
+    public double getHitRatio() {
+        synchronized (cache) {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    @Override
+    @PreDestroy
+    /**
+     * forget the cached values, remove the watches and give the session back
+     */
+    public synchronized void close() {
+        Map<String, KeyWatcher> unwatched;
+        synchronized (cache) {
+            cache.clear();
+            unwatched = new HashMap<>(watchers);
+            watchers.clear();
+        }
+        if (session != null) {
+            if (session.isConnected()) {
+                unwatched.forEach(session::removeWatcher);
+            }
+            session.getClient().getConnectionStateListenable().removeListener(connectionListener);
+            session.close();
+            session = null;
+        }
+    }
+
+    /**
+     * the one watch of a key, drops the key on its next change
+     * a notification of the connection state leaves the watch set, ZooKeeper sets it again on reconnect,
+     * unless the session expired
+     */
+    private final class KeyWatcher implements Watcher {
+
+        private final String path;
+
+        private boolean armed = false;
+
+        private KeyWatcher(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void process(WatchedEvent event) {
+            synchronized (cache) {
+                if (event.getType() != Event.EventType.None || event.getState() == Event.KeeperState.Expired) {
+                    watchers.remove(path, this);
+                }
+                invalidate(path);
+            }
+        }
+    }
+
+    /**
+     * raw bytes of one key, decoded per read as the codec is the caller's
+     */
+    private static final class CachedValue {
+
+        private byte[] data;
+
+        private int version;
+
+        private boolean invalidated = false;
+
+        private <T> Versioned<T> decode(Codec<T> codec) {
+            return new Versioned<>(data == null ? null : codec.decode(data), version);
+        }
+    }
+}
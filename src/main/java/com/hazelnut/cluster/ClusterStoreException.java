@@ -0,0 +1,23 @@
+package com.hazelnut.cluster;
+
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * Thrown by the ClusterStore if ZooKeeper could not be asked, e.g. the connection is down or the circuit breaker open
+ * Unlike the startup flow the store has no pessimistic fallback, an unknown value or write outcome is not guessed
+ */
+public class ClusterStoreException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final KeeperException.Code code;
+
+    public ClusterStoreException(String key, KeeperException.Code code, Throwable cause) {
+        super("Cluster store key " + key + " failed with " + code + ".", cause);
+        this.code = code;
+    }
+
+    public KeeperException.Code getCode() {
+        return code;
+    }
+}
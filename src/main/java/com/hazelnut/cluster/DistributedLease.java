@@ -0,0 +1,69 @@
+package com.hazelnut.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Outcome of trying a DistributedReadWriteLock or a DistributedSemaphore
+ * Meant for try with resource blocks, closing it gives the lock or permit back
+ * <pre>
+ * try (DistributedLease lease = semaphore.tryAcquire()) {
+ *     if (lease.isLocked()) ...
+ * }
+ * </pre>
+ */
+public final class DistributedLease implements Closeable {
+
+    /**
+     * gives a held lock or permit back to ZooKeeper
+     */
+    @FunctionalInterface
+    interface Release {
+        void release() throws Exception;
+    }
+
+    private static final DistributedLease NOT_ACQUIRED = new DistributedLease(null);
+
+    private final Release release;
+
+    private final AtomicBoolean held;
+
+    private final Logger logger = LoggerFactory.getLogger(DistributedLease.class);
+
+    private DistributedLease(Release release) {
+        this.release = release;
+        this.held = new AtomicBoolean(release != null);
+    }
+
+    static DistributedLease held(Release release) {
+        return new DistributedLease(release);
+    }
+
+    static DistributedLease notAcquired() {
+        return NOT_ACQUIRED;
+    }
+
+    /**
+     * @return True if the lock or permit is held by this lease
+     */
+    public boolean isLocked() {
+        return held.get();
+    }
+
+    @Override
+    /**
+     * give the lock or permit back, closing it again is a no-op
+     */
+    public void close() {
+        if (held.compareAndSet(true, false)) {
+            try {
+                release.release();
+            } catch (Exception e) {
+                logger.warn(e.getMessage(), e);
+            }
+        }
+    }
+}
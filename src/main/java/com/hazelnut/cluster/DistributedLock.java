@@ -1,20 +1,42 @@
 package com.hazelnut.cluster;
 
-import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
+import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreMutex;
+import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 @Service
 /**
- * Distributed lock is a wrapper service over InterProcessMutex from curator framework
+ * Distributed lock is a wrapper service over InterProcessSemaphoreMutex from curator framework
  * It provides the cluster level locking using Apache ZooKeeper locking service
+ * The service bean guards distributed.lock.path, locks of other resources are handed out by DistributedLockRegistry
+ * <br/>
+ * Threads of this process coalesce on one ZooKeeper acquisition: they queue on a local fair lock, and the
+ * ZooKeeper lock is handed from one local holder to the next, released only once no local thread wants it.
+ * <br/>
+ * The session and the lock recipe are created on first use and kept for the lifetime of the lock.
+ * With distributed.lock.lease.ms > 0 the ZooKeeper lock is kept that long after the last release, so a repeat
+ * acquisition by this node within the lease is local. Other nodes wait for the lease to run out.
+ * <br/>
+ * The znodes of InterProcessSemaphoreMutex are laid out unlike those of InterProcessMutex, used by former releases,
+ * so the two do not exclude each other on one path. distributed.lock.path defaults to a path of its own for that reason,
+ * and nodes of both releases are not to run together: upgrade with a full cluster restart.
  */
 public class DistributedLock implements Closeable {
 
@@ -24,53 +46,212 @@ public class DistributedLock implements Closeable {
     @Value("${distributed.lock.timeout.ms}")
     private long timeoutMillis;
 
+    @Value("${distributed.lock.lease.ms}")
+    private long leaseMillis;
+
     private final ZooKeeperSession session;
 
-    private InterProcessMutex lock = null;
+    private final HazelnutMetrics metrics;
+
+    private InterProcessLock lock = null;
+
+    private final ReentrantLock localLock = new ReentrantLock(true);
+
+    private final AtomicInteger localDemand = new AtomicInteger();
+
+    private ScheduledFuture<?> leaseExpiry = null;
 
     private final Logger logger = LoggerFactory.getLogger(DistributedLock.class);
 
-    public DistributedLock(@Autowired ZooKeeperSession session) {
+    private static final ScheduledExecutorService LEASES = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "hazelnut-lock-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public DistributedLock(@Autowired ZooKeeperSession session, @Autowired HazelnutMetrics metrics) {
         this.session = session;
+        this.metrics = metrics;
+    }
+
+    /**
+     * lock of one resource handed out by DistributedLockRegistry
+     */
+    DistributedLock(ZooKeeperSession session, HazelnutMetrics metrics, String lockPath, long timeoutMillis, long leaseMillis) {
+        this(session, metrics);
+        this.lockPath = lockPath;
+        this.timeoutMillis = timeoutMillis;
+        this.leaseMillis = leaseMillis;
     }
 
     /**
      * try acquiring the distributed lock
      * try times out as per configured time
-     * DistributedLock is reentrant
-     * trylock is idempodent
+     * DistributedLock is reentrant, every successful tryLock() is to be matched by one close()
+     * and the lock is released by the last of them, so nested locks of resources sharing a stripe are safe
      * lock needs zookeeper connection. connection is not closeable in same block, but after releasing lock
      */
     public DistributedLock tryLock() {
+        return tryLock(timeoutMillis);
+    }
+
+    /**
+     * try acquiring the distributed lock, waiting at most the given time
+     * a wait of 0 only checks if the lock is free and never queues on it
+     * threads of this process sharing the lock queue on a local fair lock first, the holder then acquires in ZooKeeper
+     * unless it was handed the ZooKeeper lock by the previous local holder
+     * while the ZooKeeper connection is down or the circuit breaker is open the lock fails fast instead of blocking in retries
+     *
+     * @param waitMillis
+     * @return this lock, check isLocked() for the outcome
+     */
+    public DistributedLock tryLock(long waitMillis) {
+        if (localLock.isHeldByCurrentThread()) {
+            localLock.lock();
+            return this;
+        }
+        long begin = System.nanoTime();
+        boolean acquired = false;
+        localDemand.incrementAndGet();
+        try {
+            if (localLock.tryLock(waitMillis, MILLISECONDS)) {
+                long remainingMillis = Math.max(0, waitMillis - NANOSECONDS.toMillis(System.nanoTime() - begin));
+                InterProcessLock mutex = mutex();
+                if (mutex.isAcquiredInThisProcess()) {
+                    metrics.recordLockHandOff();
+                    acquired = true;
+                } else {
+                    acquired = session.callRecipe(() -> mutex.acquire(remainingMillis, MILLISECONDS));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (KeeperException.ConnectionLossException | CircuitBreakerOpenException e) {
+            logger.warn("ZooKeeper not available, lock {} not acquired: {}", lockPath, e.toString());
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+        } finally {
+            localDemand.decrementAndGet();
+        }
+        if (!acquired) {
+            if (localLock.isHeldByCurrentThread()) {
+                localLock.unlock();
+            }
+            releaseIfUnwanted();
+        }
+        metrics.recordLockWait(begin, acquired);
+        return this;
+    }
+
+    private InterProcessLock mutex() {
         if (lock == null) {
             session.open();
-            lock = new InterProcessMutex(session.getClient(), lockPath);
+            lock = new InterProcessSemaphoreMutex(session.getClient(), lockPath);
         }
-        if (!lock.isAcquiredInThisProcess()) {
+        return lock;
+    }
+
+    /**
+     * a thread giving up waiting may be the one the ZooKeeper lock was kept for
+     * release it then, unless a local thread holds or wants it
+     */
+    private void releaseIfUnwanted() {
+        if (localDemand.get() == 0 && localLock.tryLock()) {
             try {
-                lock.acquire(timeoutMillis, MILLISECONDS);
-            } catch (Exception e) {
-                logger.warn(e.getMessage(), e);
+                if (localDemand.get() == 0) {
+                    releaseMutex();
+                }
+            } finally {
+                localLock.unlock();
             }
         }
-        return this;
     }
 
     /**
-     * release the distributed lock
-     * close the client connection used for lock
+     * @return True if the distributed lock is held by the calling thread
+     */
+    public boolean isLocked() {
+        InterProcessLock mutex = lock;
+        return localLock.isHeldByCurrentThread() && mutex != null && mutex.isAcquiredInThisProcess();
+    }
+
+    /**
+     * release the distributed lock, if held by the calling thread
+     * a reentrant hold is only counted down, the last hold of the thread releases the lock:
+     * the ZooKeeper lock is handed over if another local thread waits for it,
+     * kept for the lease if distributed.lock.lease.ms > 0, otherwise released
      */
     public void releaseIfLocked() {
+        if (!localLock.isHeldByCurrentThread()) {
+            return;
+        }
+        if (localLock.getHoldCount() > 1) {
+            localLock.unlock();
+            return;
+        }
+        try {
+            if (localDemand.get() == 0) {
+                if (leaseMillis > 0) {
+                    keepForLease();
+                } else {
+                    releaseMutex();
+                }
+            }
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private void keepForLease() {
+        if (leaseExpiry != null) {
+            leaseExpiry.cancel(false);
+        }
+        leaseExpiry = LEASES.schedule(this::releaseIfUnwanted, leaseMillis, MILLISECONDS);
+    }
 
+    private void releaseMutex() {
         if (lock != null && lock.isAcquiredInThisProcess()) {
             try {
                 lock.release();
             } catch (Exception e) {
                 logger.warn(e.getMessage(), e);
             }
-            session.close();
         }
-        lock = null;
+    }
+
+    /**
+     * release the ZooKeeper lock, waiting at most distributed.lock.timeout.ms for a local holder, and give the session back
+     * the lock is created again on next use
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            if (!localLock.tryLock(timeoutMillis, MILLISECONDS)) {
+                logger.warn("Lock {} still in use, left to be freed when the connection closes.", lockPath);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            if (leaseExpiry != null) {
+                leaseExpiry.cancel(false);
+                leaseExpiry = null;
+            }
+            if (lock != null) {
+                releaseMutex();
+                session.close();
+                lock = null;
+            }
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    public String getLockPath() {
+        return lockPath;
     }
 
     @Override
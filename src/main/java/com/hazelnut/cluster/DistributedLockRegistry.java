@@ -0,0 +1,148 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.utils.ZKPaths;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+/**
+ * Registry of distributed locks keyed by resource name, e.g. one lock per shard
+ * <br/>
+ * With distributed.lock.stripes > 0 the key space is hashed onto that many lock znodes, so an unbounded number of
+ * resources costs a bounded number of znodes and watches. Resources sharing a stripe exclude each other.
+ * With distributed.lock.stripes = 0 every resource gets its own lock znode, named res- and the resource name so it never
+ * clashes with the read-write and semaphores subtrees.
+ * <br/>
+ * Every lock handle is created once and cached, and has its own session, so different resources are locked
+ * concurrently from many threads. Besides mutual exclusion, read write locks and counting semaphores are available.
+ */
+public class DistributedLockRegistry implements Closeable {
+
+    private static final String READ_WRITE_LOCKS = "read-write";
+
+    private static final String SEMAPHORES = "semaphores";
+
+    @Value("${distributed.lock.registry.path}")
+    private String registryPath;
+
+    @Value("${distributed.lock.stripes}")
+    private int stripes;
+
+    @Value("${distributed.lock.timeout.ms}")
+    private long timeoutMillis;
+
+    @Value("${distributed.lock.lease.ms}")
+    private long leaseMillis;
+
+    private final ObjectProvider<ZooKeeperSession> sessions;
+
+    private final HazelnutMetrics metrics;
+
+    private final Map<String, DistributedLock> locks = new ConcurrentHashMap<>();
+
+    private final Map<String, DistributedReadWriteLock> readWriteLocks = new ConcurrentHashMap<>();
+
+    private final Map<String, DistributedSemaphore> semaphores = new ConcurrentHashMap<>();
+
+    public DistributedLockRegistry(@Autowired ObjectProvider<ZooKeeperSession> sessions, @Autowired HazelnutMetrics metrics) {
+        this.sessions = sessions;
+        this.metrics = metrics;
+    }
+
+    /**
+     * get the lock guarding the resource, use it as the DistributedLock service bean
+     * <pre>
+     * try (DistributedLock lock = registry.getLock("shard-7").tryLock()) {
+     *     if (lock.isLocked()) ...
+     * }
+     * </pre>
+     *
+     * @param resource name of the resource
+     * @return the cached lock of the resource, shared with resources of the same stripe
+     */
+    public DistributedLock getLock(String resource) {
+        return locks.computeIfAbsent(lockNameOf(resource), name ->
+                new DistributedLock(sessions.getObject(), metrics, ZKPaths.makePath(registryPath, name), timeoutMillis, leaseMillis));
+    }
+
+    /**
+     * get the read write lock guarding the resource, striped like getLock()
+     * use it when many nodes only read the resource and few change it
+     *
+     * @param resource name of the resource
+     * @return the cached read write lock of the resource
+     */
+    public DistributedReadWriteLock getReadWriteLock(String resource) {
+        return readWriteLocks.computeIfAbsent(lockNameOf(resource), name ->
+                new DistributedReadWriteLock(sessions.getObject(), metrics, ZKPaths.makePath(registryPath, READ_WRITE_LOCKS, name), timeoutMillis));
+    }
+
+    /**
+     * get the semaphore limiting concurrent use of the resource, semaphores are never striped
+     *
+     * @param resource name of the resource
+     * @param permits  number of leases held at once across the cluster, the same on every node
+     * @return the cached semaphore of the resource
+     * @throws IllegalArgumentException if the semaphore is already in use with another number of permits
+     */
+    public DistributedSemaphore getSemaphore(String resource, int permits) {
+        DistributedSemaphore semaphore = semaphores.computeIfAbsent(resource, name ->
+                new DistributedSemaphore(sessions.getObject(), metrics, ZKPaths.makePath(registryPath, SEMAPHORES, name), permits, timeoutMillis));
+        if (semaphore.getPermits() != permits) {
+            throw new IllegalArgumentException("Semaphore " + resource + " is in use with " + semaphore.getPermits() + " permits.");
+        }
+        return semaphore;
+    }
+
+    /**
+     * @param resource
+     * @return name of the lock znode guarding the resource, the same on every node
+     */
+    public String lockNameOf(String resource) {
+        if (stripes <= 0) {
+            return "res-" + resource;
+        }
+        return "stripe-" + Math.floorMod(spread(resource.hashCode()), stripes);
+    }
+
+    /**
+     * @return number of lock handles created so far
+     */
+    public int size() {
+        return locks.size() + readWriteLocks.size() + semaphores.size();
+    }
+
+    /**
+     * murmur3 finalizer, so similar names like shard-1, shard-2 spread over all stripes
+     */
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    @PreDestroy
+    /**
+     * release every lock, give their sessions back and forget all handles
+     * read write and semaphore leases still held are freed by ZooKeeper once the shared connection closes
+     */
+    public void close() {
+        locks.values().forEach(DistributedLock::shutdown);
+        locks.clear();
+        readWriteLocks.values().forEach(DistributedReadWriteLock::close);
+        readWriteLocks.clear();
+        semaphores.values().forEach(DistributedSemaphore::close);
+        semaphores.clear();
+    }
+}
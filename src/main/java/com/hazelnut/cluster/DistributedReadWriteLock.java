@@ -0,0 +1,106 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.locks.InterProcessReadWriteLock;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Read write lock over InterProcessReadWriteLock from curator framework
+ * Any number of readers across the cluster hold the lock together, a writer excludes readers and other writers.
+ * Both locks are owned by the acquiring thread and are reentrant, a writer may also take the read lock.
+ * Handed out by DistributedLockRegistry
+ */
+public class DistributedReadWriteLock implements Closeable {
+
+    private final ZooKeeperSession session;
+
+    private final HazelnutMetrics metrics;
+
+    private final String lockPath;
+
+    private final long timeoutMillis;
+
+    private InterProcessReadWriteLock lock = null;
+
+    private final Logger logger = LoggerFactory.getLogger(DistributedReadWriteLock.class);
+
+    DistributedReadWriteLock(ZooKeeperSession session, HazelnutMetrics metrics, String lockPath, long timeoutMillis) {
+        this.session = session;
+        this.metrics = metrics;
+        this.lockPath = lockPath;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * try acquiring the shared read lock, waiting at most distributed.lock.timeout.ms
+     */
+    public DistributedLease tryReadLock() {
+        return tryReadLock(timeoutMillis);
+    }
+
+    /**
+     * @param waitMillis
+     * @return lease of the read lock, check isLocked() for the outcome
+     */
+    public DistributedLease tryReadLock(long waitMillis) {
+        return tryLock(readWriteLock().readLock(), waitMillis);
+    }
+
+    /**
+     * try acquiring the exclusive write lock, waiting at most distributed.lock.timeout.ms
+     */
+    public DistributedLease tryWriteLock() {
+        return tryWriteLock(timeoutMillis);
+    }
+
+    /**
+     * @param waitMillis
+     * @return lease of the write lock, check isLocked() for the outcome
+     */
+    public DistributedLease tryWriteLock(long waitMillis) {
+        return tryLock(readWriteLock().writeLock(), waitMillis);
+    }
+
+    private DistributedLease tryLock(InterProcessMutex mutex, long waitMillis) {
+        long begin = System.nanoTime();
+        boolean acquired = false;
+        try {
+            acquired = session.callRecipe(() -> mutex.acquire(waitMillis, MILLISECONDS));
+        } catch (KeeperException.ConnectionLossException | CircuitBreakerOpenException e) {
+            logger.warn("ZooKeeper not available, lock {} not acquired: {}", lockPath, e.toString());
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+        }
+        metrics.recordLockWait(begin, acquired);
+        return acquired ? DistributedLease.held(mutex::release) : DistributedLease.notAcquired();
+    }
+
+    private synchronized InterProcessReadWriteLock readWriteLock() {
+        if (lock == null) {
+            lock = new InterProcessReadWriteLock(session.open().getClient(), lockPath);
+        }
+        return lock;
+    }
+
+    public String getLockPath() {
+        return lockPath;
+    }
+
+    @Override
+    /**
+     * give the session back, leases still held are freed by ZooKeeper once the shared connection closes
+     */
+    public synchronized void close() {
+        if (lock != null) {
+            session.close();
+            lock = null;
+        }
+    }
+}
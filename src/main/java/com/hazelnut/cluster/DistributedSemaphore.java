@@ -0,0 +1,94 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreV2;
+import org.apache.curator.framework.recipes.locks.Lease;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Counting semaphore over InterProcessSemaphoreV2 from curator framework
+ * At most the given number of leases are held at once across the cluster, every node must use the same number.
+ * A lease is not owned by a thread, it may be given back by any thread. Handed out by DistributedLockRegistry
+ */
+public class DistributedSemaphore implements Closeable {
+
+    private final ZooKeeperSession session;
+
+    private final HazelnutMetrics metrics;
+
+    private final String semaphorePath;
+
+    private final int permits;
+
+    private final long timeoutMillis;
+
+    private InterProcessSemaphoreV2 semaphore = null;
+
+    private final Logger logger = LoggerFactory.getLogger(DistributedSemaphore.class);
+
+    DistributedSemaphore(ZooKeeperSession session, HazelnutMetrics metrics, String semaphorePath, int permits, long timeoutMillis) {
+        this.session = session;
+        this.metrics = metrics;
+        this.semaphorePath = semaphorePath;
+        this.permits = permits;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * try acquiring one permit, waiting at most distributed.lock.timeout.ms
+     */
+    public DistributedLease tryAcquire() {
+        return tryAcquire(timeoutMillis);
+    }
+
+    /**
+     * @param waitMillis
+     * @return lease of one permit, check isLocked() for the outcome
+     */
+    public DistributedLease tryAcquire(long waitMillis) {
+        long begin = System.nanoTime();
+        Lease lease = null;
+        try {
+            InterProcessSemaphoreV2 recipe = semaphore();
+            lease = session.callRecipe(() -> recipe.acquire(waitMillis, MILLISECONDS));
+        } catch (KeeperException.ConnectionLossException | CircuitBreakerOpenException e) {
+            logger.warn("ZooKeeper not available, semaphore {} not acquired: {}", semaphorePath, e.toString());
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+        }
+        metrics.recordLockWait(begin, lease != null);
+        return lease != null ? DistributedLease.held(lease::close) : DistributedLease.notAcquired();
+    }
+
+    private synchronized InterProcessSemaphoreV2 semaphore() {
+        if (semaphore == null) {
+            semaphore = new InterProcessSemaphoreV2(session.open().getClient(), semaphorePath, permits);
+        }
+        return semaphore;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    public String getSemaphorePath() {
+        return semaphorePath;
+    }
+
+    @Override
+    /**
+     * give the session back, leases still held are freed by ZooKeeper once the shared connection closes
+     */
+    public synchronized void close() {
+        if (semaphore != null) {
+            session.close();
+            semaphore = null;
+        }
+    }
+}
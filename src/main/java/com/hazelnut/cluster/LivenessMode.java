@@ -0,0 +1,15 @@
+package com.hazelnut.cluster;
+
+/**
+ * How the cluster liveness is tracked in ZooKeeper
+ */
+public enum LivenessMode {
+    /**
+     * every started node keeps refreshing one shared status znode created with a TTL
+     */
+    TTL,
+    /**
+     * every started node registers one ephemeral znode, bound to its session, under the members path
+     */
+    MEMBERSHIP
+}
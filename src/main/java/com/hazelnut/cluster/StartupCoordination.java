@@ -0,0 +1,15 @@
+package com.hazelnut.cluster;
+
+/**
+ * How starting nodes decide which one of them performs the once per cluster startup
+ */
+public enum StartupCoordination {
+    /**
+     * the node holding the distributed lock checks the status again and marks the cluster as started
+     */
+    LOCK,
+    /**
+     * the node whose conditional create succeeds first wins, no lock queue is formed
+     */
+    CREATE
+}
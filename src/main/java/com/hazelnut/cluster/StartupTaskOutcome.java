@@ -0,0 +1,27 @@
+package com.hazelnut.cluster;
+
+/**
+ * How a startup task ended for this node
+ */
+public enum StartupTaskOutcome {
+    /**
+     * this node claimed and ran the task
+     */
+    RAN,
+    /**
+     * the task was done by another node in this generation of the cluster
+     */
+    DONE_BY_OTHER_NODE,
+    /**
+     * this node ran the task and it threw
+     */
+    FAILED,
+    /**
+     * a dependency was not done, the task was not tried
+     */
+    SKIPPED,
+    /**
+     * another node kept its claim on the task longer than distributed.lock.timeout.ms
+     */
+    TIMED_OUT
+}
@@ -0,0 +1,204 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.utils.ClusterStatusRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static com.hazelnut.utils.DataMapper.STATUS_RECORD_LENGTH;
+import static com.hazelnut.utils.DataMapper.STATUS_SCHEMA_VERSION;
+import static com.hazelnut.utils.DataMapper.readStatus;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+@Service
+/**
+ * Local journal of the last observed status of the cluster, kept in a memory-mapped file across restarts of this node
+ * <br/>
+ * Every change of the status znode seen by the near cache is written to the mapped page, i.e. a memory copy and no
+ * system call, so heart beats stay cheap. The file survives the process. A restarting node reads it before it has
+ * connected and can decide at once whether the cluster was up within its TTL, see NodeStartup.
+ * <pre>
+ * 0  magic             4 bytes
+ * 4  observed at       8 bytes, wall clock millis of this node
+ * 12 znode version     4 bytes, -1 if the status was deleted
+ * 16 status record     STATUS_RECORD_LENGTH bytes, as per DataMapper, zeros if deleted
+ * .. CRC32             4 bytes, of the bytes before
+ * </pre>
+ * A torn or foreign file fails the checksum and reads as no observation. node.status.journal.path empty disables it.
+ */
+public class StatusJournal {
+
+    private static final int MAGIC = 0x485a534a;
+
+    private static final int OBSERVED_AT = 4;
+
+    private static final int VERSION = 12;
+
+    private static final int RECORD = 16;
+
+    private static final int CHECKSUM = RECORD + STATUS_RECORD_LENGTH;
+
+    static final int JOURNAL_LENGTH = CHECKSUM + 4;
+
+    @Value("${node.status.journal.path}")
+    private String journalPath;
+
+    @Value("${cluster.status.data.path}")
+    private String statusPath;
+
+    private MappedByteBuffer journal = null;
+
+    private final byte[] entry = new byte[JOURNAL_LENGTH];
+
+    /**
+     * the one view of the entry, reused under the lock so a heart beat allocates nothing
+     */
+    private final ByteBuffer view = ByteBuffer.wrap(entry);
+
+    private final CRC32 checksum = new CRC32();
+
+    private final Logger logger = LoggerFactory.getLogger(StatusJournal.class);
+
+    @PostConstruct
+    public void init() {
+        if (journalPath.isBlank()) {
+            return;
+        }
+        Path path = Path.of(journalPath);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+                journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, JOURNAL_LENGTH);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Status journal {} unavailable, startup decisions wait for ZooKeeper: {}", journalPath, e.getMessage());
+        }
+    }
+
+    /**
+     * @param path of a status znode
+     * @return True if changes of the path are journaled
+     */
+    public boolean isJournaled(String path) {
+        return journal != null && statusPath.equals(path);
+    }
+
+    /**
+     * record the status as observed now, replacing the previous observation
+     *
+     * @param statusData       bytes of the status znode, null if it was deleted
+     * @param version          of the status znode, -1 if it was deleted
+     * @param observedAtMillis wall clock time of the observation
+     */
+    public synchronized void record(byte[] statusData, int version, long observedAtMillis) {
+        if (journal == null) {
+            return;
+        }
+        Arrays.fill(entry, (byte) 0);
+        view.putInt(0, MAGIC).putLong(OBSERVED_AT, observedAtMillis).putInt(VERSION, version);
+        if (statusData != null) {
+            System.arraycopy(statusData, 0, entry, RECORD, Math.min(statusData.length, STATUS_RECORD_LENGTH));
+        }
+        checksum.reset();
+        checksum.update(entry, 0, CHECKSUM);
+        view.putInt(CHECKSUM, (int) checksum.getValue());
+        journal.put(0, entry);
+    }
+
+    /**
+     * @return the last observation, null if there is none, the journal is disabled or its content is not valid
+     */
+    public synchronized Observation read() {
+        if (journal == null) {
+            return null;
+        }
+        journal.get(0, entry);
+        checksum.reset();
+        checksum.update(entry, 0, CHECKSUM);
+        if (view.getInt(0) != MAGIC || view.getInt(CHECKSUM) != (int) checksum.getValue()) {
+            return null;
+        }
+        ClusterStatusRecord record = new ClusterStatusRecord();
+        readStatus(Arrays.copyOfRange(entry, RECORD, CHECKSUM), record);
+        return new Observation(record, view.getInt(VERSION), view.getLong(OBSERVED_AT));
+    }
+
+    /**
+     * @param nowMillis wall clock time of the reader
+     * @return True if the last observation is valid and fresh, see Observation.isFreshAt()
+     */
+    public boolean hasFreshStatusAt(long nowMillis) {
+        Observation last = read();
+        return last != null && last.isFreshAt(nowMillis);
+    }
+
+    /**
+     * write the mapped page to disk, so the last observation survives a crash of the host too
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (journal != null) {
+            journal.force();
+        }
+    }
+
+    /**
+     * The cluster status as last observed by this node
+     */
+    public static final class Observation {
+
+        private final ClusterStatusRecord record;
+
+        private final int version;
+
+        private final long observedAtMillis;
+
+        Observation(ClusterStatusRecord record, int version, long observedAtMillis) {
+            this.record = record;
+            this.version = version;
+            this.observedAtMillis = observedAtMillis;
+        }
+
+        /**
+         * stricter than ClusterStatusRecord.isLiveAt(), which tolerates another TTL of clock skew
+         *
+         * @param nowMillis wall clock time of the reader
+         * @return True if the observed status was started and refreshed within its TTL before nowMillis
+         */
+        public boolean isFreshAt(long nowMillis) {
+            return record.isStarted() && record.getSchemaVersion() >= STATUS_SCHEMA_VERSION && record.getTtlMillis() > 0
+                    && nowMillis - record.getRefreshedAtMillis() <= record.getTtlMillis();
+        }
+
+        public ClusterStatusRecord getRecord() {
+            return record;
+        }
+
+        /**
+         * @return version of the status znode, -1 if it was deleted
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        public long getObservedAtMillis() {
+            return observedAtMillis;
+        }
+    }
+}
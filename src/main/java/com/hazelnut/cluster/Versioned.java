@@ -0,0 +1,54 @@
+package com.hazelnut.cluster;
+
+/**
+ * A value of the ClusterStore together with the znode version it was read at
+ * The version is what compareAndSet() expects to replace this value
+ *
+ * @param <T> type of the value
+ */
+public final class Versioned<T> {
+
+    /**
+     * version of a key that does not exist, compareAndSet() with it creates the key
+     */
+    public static final int ABSENT = -1;
+
+    private final T value;
+
+    private final int version;
+
+    Versioned(T value, int version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    /**
+     * @return the value, null if the key does not exist
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @param defaultValue returned if the key does not exist
+     */
+    public T getValueOr(T defaultValue) {
+        return version == ABSENT ? defaultValue : value;
+    }
+
+    /**
+     * @return version of the znode, ABSENT if the key does not exist
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isPresent() {
+        return version != ABSENT;
+    }
+
+    @Override
+    public String toString() {
+        return isPresent() ? value + "@" + version : "absent";
+    }
+}
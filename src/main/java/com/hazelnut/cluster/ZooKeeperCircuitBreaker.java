@@ -0,0 +1,134 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+@Service
+/**
+ * Process wide circuit breaker around the ZooKeeper operations of this process
+ * It guards the operations of ZooKeeperSession, the lock and semaphore recipes run through
+ * ZooKeeperSession.callRecipe(), and the reads of ClusterMembership through ZooKeeperConnectionManager.admit().
+ * The watches of ClusterStatusCache and ClusterEvents are set up once and then only receive notifications,
+ * they are not failed by the breaker, only their retries stop early while it is open.
+ * <br/>
+ * After client.circuit.breaker.failures operations in a row failed with an error telling the ensemble is overloaded,
+ * e.g. a timeout or a connection lost mid request, the breaker opens: operations fail at once with
+ * CircuitBreakerOpenException and fall back to their pessimistic outcome, without reaching ZooKeeper.
+ * After client.circuit.breaker.open.ms, stretched by a random half of it so nodes do not come back in lockstep,
+ * one operation is let through as a trial. Its success closes the breaker, its failure opens it again.
+ * <br/>
+ * Answers of the ensemble, e.g. NoNode or BadVersion, count as success. Failures while disconnected are left to
+ * the connection state, see ZooKeeperConnectionManager.requireConnection(). 0 failures disables the breaker.
+ */
+public class ZooKeeperCircuitBreaker {
+
+    @Value("${client.circuit.breaker.failures}")
+    private int failureThreshold;
+
+    @Value("${client.circuit.breaker.open.ms}")
+    private long openMillis;
+
+    private final HazelnutMetrics metrics;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * System.nanoTime() the breaker lets the next trial through, 0 while closed
+     */
+    private final AtomicLong openUntilNanos = new AtomicLong();
+
+    private final Logger logger = LoggerFactory.getLogger(ZooKeeperCircuitBreaker.class);
+
+    public ZooKeeperCircuitBreaker(@Autowired HazelnutMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * to be called before an operation is sent, lets it through while closed, and once per open period as a trial
+     *
+     * @throws CircuitBreakerOpenException if the breaker is open
+     */
+    public void acquirePermission() {
+        long until = openUntilNanos.get();
+        if (until == 0 || failureThreshold <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - until < 0 || !openUntilNanos.compareAndSet(until, now + openNanos())) {
+            metrics.recordCircuitBreakerRejection();
+            throw new CircuitBreakerOpenException();
+        }
+        logger.info("ZooKeeper circuit breaker half open, sending a trial operation.");
+    }
+
+    /**
+     * the ensemble answered, closes the breaker
+     * reads before it writes, so the common case of a closed breaker costs no contended write
+     */
+    public void onSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (openUntilNanos.get() != 0 && openUntilNanos.getAndSet(0) != 0) {
+            logger.info("ZooKeeper circuit breaker closed.");
+        }
+    }
+
+    /**
+     * count the failure if it tells the ensemble is overloaded, open the breaker at the threshold
+     * a failing trial opens the breaker again right away
+     *
+     * @param e the failure of an operation let through by acquirePermission()
+     */
+    public void onFailure(Exception e) {
+        if (failureThreshold <= 0 || !isOverload(e)) {
+            return;
+        }
+        long until = openUntilNanos.get();
+        if (until != 0) {
+            openUntilNanos.compareAndSet(until, System.nanoTime() + openNanos());
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold
+                && openUntilNanos.compareAndSet(0, System.nanoTime() + openNanos())) {
+            metrics.recordCircuitBreakerOpened();
+            logger.warn("ZooKeeper circuit breaker opened after {} failures in a row, last {}.", consecutiveFailures.get(), e.toString());
+        }
+    }
+
+    /**
+     * @return True if operations are currently failed without reaching ZooKeeper
+     */
+    public boolean isOpen() {
+        return openUntilNanos.get() != 0;
+    }
+
+    private long openNanos() {
+        return MILLISECONDS.toNanos(openMillis + ThreadLocalRandom.current().nextLong(openMillis / 2 + 1));
+    }
+
+    private static boolean isOverload(Exception e) {
+        if (!(e instanceof KeeperException)) {
+            return false;
+        }
+        switch (((KeeperException) e).code()) {
+            case CONNECTIONLOSS:
+            case OPERATIONTIMEOUT:
+            case REQUESTTIMEOUT:
+            case SESSIONEXPIRED:
+            case SYSTEMERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
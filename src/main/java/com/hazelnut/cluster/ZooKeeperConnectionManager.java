@@ -0,0 +1,227 @@
+package com.hazelnut.cluster;
+
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.curator.framework.CuratorFrameworkFactory.newClient;
+
+@Service
+/**
+ * Process wide owner of the one and only CuratorFramework client
+ * The client is started and connected once, on first use, and then shared by every ZooKeeperSession
+ * Sessions only lease the client, closing a session never closes the underlying connection
+ * <br/>
+ * Connecting waits at most client.connect.budget.ms. If ZooKeeper is not reachable by then, the client is handed out
+ * disconnected and keeps connecting in the background. Callers fail fast with isConnected() instead of blocking in
+ * retries while the connection is SUSPENDED or LOST.
+ * <br/>
+ * Operations losing their connection or timing out are retried as per client.retry.policy. Retries stop early while
+ * the ZooKeeperCircuitBreaker is open, so a struggling ensemble sees the load drop.
+ */
+public class ZooKeeperConnectionManager implements Closeable {
+    @Value("${client.session.timeout.ms}")
+    private int sessionTimeoutMs;
+
+    @Value("${client.connection.timeout.ms}")
+    private int connectionTimeoutMs;
+
+    @Value("${client.connection.string}")
+    private String connectionString;
+
+    @Value("${client.retry.time.ms}")
+    private int retryTimeMs;
+
+    @Value("${client.retry.attempts.count}")
+    private int numberOfTries;
+
+    @Value("${client.retry.max.time.ms}")
+    private int maxRetryTimeMs;
+
+    @Value("${client.retry.policy}")
+    private ClientRetryPolicy retryPolicy;
+
+    @Value("${client.connect.budget.ms}")
+    private long connectBudgetMillis;
+
+    private final Logger logger = LoggerFactory.getLogger(ZooKeeperConnectionManager.class);
+
+    private final AtomicInteger leasedSessions = new AtomicInteger();
+
+    private final HazelnutMetrics metrics;
+
+    private final ZooKeeperCircuitBreaker circuitBreaker;
+
+    private volatile CuratorFramework client;
+
+    private volatile ConnectionState connectionState = null;
+
+    public ZooKeeperConnectionManager(@Autowired HazelnutMetrics metrics, @Autowired ZooKeeperCircuitBreaker circuitBreaker) {
+        this.metrics = metrics;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * lease the shared client, starting and connecting it if this is the first use
+     *
+     * @return the started client
+     */
+    public CuratorFramework acquire() {
+        CuratorFramework started = client;
+        if (started == null) {
+            started = start();
+        }
+        leasedSessions.incrementAndGet();
+        return started;
+    }
+
+    /**
+     * give back a client leased by acquire()
+     * the connection stays open for the next session
+     */
+    public void release() {
+        if (leasedSessions.decrementAndGet() < 0) {
+            leasedSessions.set(0);
+            logger.warn("Released more ZooKeeper sessions than acquired.");
+        }
+    }
+
+    /**
+     * @return number of sessions currently holding the shared client
+     */
+    public int getLeasedSessions() {
+        return leasedSessions.get();
+    }
+
+    private synchronized CuratorFramework start() {
+        if (client == null) {
+            long begin = System.nanoTime();
+            CuratorFramework newClient = newClient(connectionString, sessionTimeoutMs, connectionTimeoutMs, createRetryPolicy());
+            newClient.getConnectionStateListenable().addListener((curator, newState) -> stateChanged(newState));
+            newClient.start();
+            try {
+                if (newClient.blockUntilConnected((int) connectBudgetMillis, MILLISECONDS)) {
+                    metrics.recordConnect(begin);
+                } else {
+                    logger.warn("ZooKeeper not reachable within {} ms, going on disconnected while connecting in the background.", connectBudgetMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            client = newClient;
+        }
+        return client;
+    }
+
+    private RetryPolicy createRetryPolicy() {
+        RetryPolicy policy = retryPolicy.create(numberOfTries, retryTimeMs, maxRetryTimeMs);
+        return (retryCount, elapsedTimeMs, sleeper) -> !circuitBreaker.isOpen() && policy.allowRetry(retryCount, elapsedTimeMs, sleeper);
+    }
+
+    private void stateChanged(ConnectionState newState) {
+        ConnectionState previous = connectionState;
+        connectionState = newState;
+        if (newState.isConnected()) {
+            logger.info("ZooKeeper connection {}.", newState);
+        } else {
+            logger.warn("ZooKeeper connection {}, ZooKeeper calls fail fast until reconnected.", newState);
+            if (previous != null && previous.isConnected()) {
+                metrics.recordConnectionLoss();
+            }
+        }
+    }
+
+    /**
+     * asks the ZooKeeper client itself, so it is current even before Curator's state event reached the listener
+     *
+     * @return True if the shared client is started and its connection is up, i.e. neither SUSPENDED nor LOST
+     */
+    public boolean isConnected() {
+        CuratorFramework started = client;
+        return started != null && started.getZookeeperClient().isConnected();
+    }
+
+    /**
+     * fail fast instead of blocking in Curator's retries while the connection is down
+     * meant to be called inside the try block of an operation, so it falls back to its pessimistic outcome right away
+     *
+     * @throws KeeperException.ConnectionLossException if not connected
+     */
+    public void requireConnection() throws KeeperException.ConnectionLossException {
+        if (!isConnected()) {
+            throw new KeeperException.ConnectionLossException();
+        }
+    }
+
+    /**
+     * requireConnection(), and fail fast as well while the ZooKeeperCircuitBreaker is open
+     * for callers driving the shared client directly instead of through a ZooKeeperSession,
+     * their outcome is to be told with onSuccess() or onFailure() as the session does
+     *
+     * @throws KeeperException.ConnectionLossException if not connected
+     * @throws CircuitBreakerOpenException if the breaker is open
+     */
+    public void admit() throws KeeperException.ConnectionLossException {
+        requireConnection();
+        circuitBreaker.acquirePermission();
+    }
+
+    /**
+     * an operation let through by admit() got its answer from the ensemble
+     */
+    public void onSuccess() {
+        circuitBreaker.onSuccess();
+    }
+
+    /**
+     * an operation let through by admit() failed, counted by the circuit breaker unless the connection is down
+     */
+    public void onFailure(Exception e) {
+        if (isConnected()) {
+            circuitBreaker.onFailure(e);
+        }
+    }
+
+    /**
+     * @return True if the ZooKeeperCircuitBreaker currently fails operations without reaching ZooKeeper
+     */
+    public boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * @return last connection state reported by Curator, null before the first
+     */
+    public ConnectionState getConnectionState() {
+        return connectionState;
+    }
+
+    @Override
+    @PreDestroy
+    /**
+     * close the shared connection and session with ZooKeeper on shutdown
+     */
+    public synchronized void close() {
+        if (leasedSessions.get() > 0) {
+            logger.info("Closing ZooKeeper connection with {} session(s) still leased.", leasedSessions.get());
+        }
+        if (client != null && client.getState() != CuratorFrameworkState.STOPPED) {
+            client.close();
+        }
+        client = null;
+        connectionState = null;
+    }
+}
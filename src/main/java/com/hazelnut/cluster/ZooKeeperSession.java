@@ -1,21 +1,39 @@
 package com.hazelnut.cluster;
 
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.metrics.SessionOperation;
+import com.hazelnut.utils.ClusterStatusRecord;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
-import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import static com.hazelnut.utils.DataMapper.*;
-import static org.apache.curator.framework.CuratorFrameworkFactory.newClient;
 
 @Service
 /**
@@ -23,60 +41,168 @@ import static org.apache.curator.framework.CuratorFrameworkFactory.newClient;
  */
 @Scope("prototype")
 public class ZooKeeperSession implements Closeable {
-    @Value("${client.session.timeout.ms}")
-    private int sessionTimeoutMs;
 
-    @Value("${client.connection.timeout.ms}")
-    private int connectionTimeoutMs;
+    private static final int MAX_BATCH_ROUNDS = 3;
 
-    @Value("${client.connection.string}")
-    private String connectionString;
+    private static final int MAX_RACE_ROUNDS = 3;
 
-    @Value("${client.retry.time.ms}")
-    private int retryTimeMs;
+    private final Logger logger = LoggerFactory.getLogger(ZooKeeperSession.class);
 
-    @Value("${client.retry.attempts.count}")
-    private int numberOfTries;
+    private final ZooKeeperConnectionManager connectionManager;
 
-    private final Logger logger = LoggerFactory.getLogger(ZooKeeperSession.class);
+    private final ClusterStatusCache statusCache;
+
+    private final HazelnutMetrics metrics;
+
+    private final ZooKeeperCircuitBreaker circuitBreaker;
+
+    @Value("${node.id}")
+    private String nodeId;
+
+    private final ClusterStatusRecord statusRecord = new ClusterStatusRecord();
+
+    private final byte[] statusBuffer = new byte[STATUS_RECORD_LENGTH];
+
+    private byte[] statusData = null;
 
     private CuratorFramework client;
 
+    public ZooKeeperSession(@Autowired ZooKeeperConnectionManager connectionManager, @Autowired ClusterStatusCache statusCache,
+                            @Autowired HazelnutMetrics metrics, @Autowired ZooKeeperCircuitBreaker circuitBreaker) {
+        this.connectionManager = connectionManager;
+        this.statusCache = statusCache;
+        this.metrics = metrics;
+        this.circuitBreaker = circuitBreaker;
+    }
 
     /**
-     * Open the session with ZooKeeper and establish connection
+     * Open the session with ZooKeeper over the shared connection
+     * The first session of the process connects it, blocking for at most client.connect.budget.ms
+     * Opening an open session is a no-op
      *
      * @return
      */
     public ZooKeeperSession open() {
-        this.client = newClient(connectionString, sessionTimeoutMs, connectionTimeoutMs, new RetryNTimes(numberOfTries, retryTimeMs));
-        client.start();
-        try {
-            client.blockUntilConnected();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        if (this.client == null) {
+            this.client = connectionManager.acquire();
         }
         return this;
     }
 
 
     /**
-     * Checks the startup status of the cluster from Apache ZooKeeper
+     * Checks the startup status of the cluster from the watch backed near cache
+     * The value may lag ZooKeeper by one watch notification. ZooKeeper is read directly
+     * while the cache is not yet initialized or the connection is suspended
      *
      * @param clusterStatusPath
      * @return True if cluster is already marked as started
      */
     public boolean getClusterStatus(String clusterStatusPath) {
         checkConnectivity();
+        long begin = System.nanoTime();
+        ClusterStatusCache.CachedStatus cached = statusCache.watch(clusterStatusPath);
+        if (cached.isCurrent()) {
+            boolean status = cached.isStarted();
+            metrics.recordOperation(SessionOperation.GET_STATUS, begin);
+            return status;
+        }
+        return readClusterStatus(clusterStatusPath, SessionOperation.GET_STATUS, begin);
+    }
+
+    /**
+     * Checks the startup status of the cluster without waiting for ZooKeeper to answer
+     * Served from the near cache when current, otherwise read by a Curator background operation
+     * The session is to be open already, the first watch of the status path is still set up on the calling thread
+     * In case of network failure the status completes as false
+     *
+     * @param clusterStatusPath
+     * @return future completing with True if cluster is already marked as started
+     */
+    public CompletableFuture<Boolean> getClusterStatusAsync(String clusterStatusPath) {
+        checkConnectivity();
+        ClusterStatusCache.CachedStatus cached = statusCache.watch(clusterStatusPath);
+        if (cached.isCurrent()) {
+            return CompletableFuture.completedFuture(cached.isStarted());
+        }
+        long begin = System.nanoTime();
+        CompletableFuture<Boolean> status = new CompletableFuture<>();
+        try {
+            admit();
+            client.getData().inBackground((curator, event) -> {
+                KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                if (code == KeeperException.Code.OK || code == KeeperException.Code.NONODE) {
+                    succeeded(SessionOperation.GET_STATUS_ASYNC, begin);
+                } else {
+                    failed(SessionOperation.GET_STATUS_ASYNC, KeeperException.create(code, clusterStatusPath));
+                }
+                status.complete(event.getResultCode() == KeeperException.Code.OK.intValue() && isLiveStatus(event.getData(), System.currentTimeMillis()));
+            }).forPath(clusterStatusPath);
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+            failed(SessionOperation.GET_STATUS_ASYNC, e);
+            status.complete(false);
+        }
+        return status;
+    }
+
+    /**
+     * Checks the startup status of the cluster from Apache ZooKeeper, bypassing the near cache
+     * A sync is queued ahead of the read so the server answering is up-to-date with the leader
+     *
+     * @param clusterStatusPath
+     * @return True if cluster is already marked as started
+     */
+    public boolean getSyncedClusterStatus(String clusterStatusPath) {
+        checkConnectivity();
+        return readClusterStatus(clusterStatusPath, SessionOperation.GET_SYNCED_STATUS, System.nanoTime());
+    }
+
+    /**
+     * wait on the status znode watch until the cluster is marked as started
+     * no request is sent to ZooKeeper while waiting, waiters share one watch notification
+     * returns False right away while the connection is down, as no notification can arrive
+     *
+     * @param clusterStatusPath
+     * @param timeoutMillis
+     * @return True if the cluster got marked as started within the timeout
+     */
+    public boolean awaitClusterStatus(String clusterStatusPath, long timeoutMillis) {
+        checkConnectivity();
+        if (!connectionManager.isConnected()) {
+            return false;
+        }
+        return statusCache.watch(clusterStatusPath).awaitStarted(timeoutMillis);
+    }
+
+    /**
+     * how long ago this process saw the cluster status refreshed by any node, served from the near cache only
+     *
+     * @param clusterStatusPath
+     * @return milliseconds since the last seen refresh, empty if unknown
+     */
+    public OptionalLong getClusterStatusAgeMillis(String clusterStatusPath) {
+        checkConnectivity();
+        return statusCache.watch(clusterStatusPath).getRefreshAgeMillis();
+    }
+
+    private boolean readClusterStatus(String clusterStatusPath, SessionOperation operation, long begin) {
         boolean status = false;
         try {
+            admit();
+            if (operation == SessionOperation.GET_SYNCED_STATUS) {
+                client.sync().forPath(clusterStatusPath);
+            }
             byte[] data = client.getData().forPath(clusterStatusPath);
-            status = data != null && bytesToBoolean(data);
+            status = isLiveStatus(data, System.currentTimeMillis());
+            succeeded(operation, begin);
         } catch (KeeperException.NoNodeException e) {
+            succeeded(operation, begin);
             logger.info("Cluster status never reported. Thus unable to fetch status.");
             logger.warn(e.getMessage());
 
         } catch (Exception e) {
+            failed(operation, e);
             logger.warn(e.getMessage(), e);
         }
         return status;
@@ -84,23 +210,705 @@ public class ZooKeeperSession implements Closeable {
 
     /**
      * report the heart beat of this running node to ZooKeeper
+     * <br/>
+     * The status record is refreshed by a write conditional on the znode version, keeping epoch and starter.
+     * The version is taken from the near cache when current, so a heart beat is one write and no read.
+     * A conflicting write means another node refreshed the status meanwhile, which serves as this heart beat too.
+     * A missing, stale or schema version 0 status begins a new epoch started by this node, also when the near cache
+     * had not yet seen the status go away. A status of a newer schema version is only ever refreshed in place.
      *
      * @param nodePath
      * @param ttl      i.e. time to live for this data, after this time the cluster will be considered inactive
      */
     public void markClusterAsActive(String nodePath, long ttl) {
         checkConnectivity();
+        long begin = System.nanoTime();
         try {
-            if (ttl > 0) {
-                client.create().orSetData().withTtl(ttl).creatingParentContainersIfNeeded().withMode(CreateMode.PERSISTENT_WITH_TTL).forPath(nodePath, booleanToBytes(true));
+            admit();
+            synchronized (statusRecord) {
+                long now = System.currentTimeMillis();
+                int version = readStatusRecord(nodePath, statusRecord);
+                if (version < 0) {
+                    createStatus(nodePath, ttl, statusRecord.start(nodeId, now, ttl));
+                } else {
+                    try {
+                        if (isRefreshable(statusRecord, now)) {
+                            client.setData().withVersion(version).forPath(nodePath, refreshedStatus(now, ttl));
+                        } else {
+                            restartStatus(nodePath, ttl, version, now);
+                        }
+                    } catch (KeeperException.NoNodeException e) {
+                        createStatus(nodePath, ttl, statusRecord.start(nodeId, now, ttl));
+                    }
+                }
+            }
+            succeeded(SessionOperation.MARK_ACTIVE, begin);
+        } catch (KeeperException.BadVersionException | KeeperException.NodeExistsException e) {
+            succeeded(SessionOperation.MARK_ACTIVE, begin);
+            logger.debug("Cluster status refreshed concurrently by another node.");
+        } catch (Exception e) {
+            failed(SessionOperation.MARK_ACTIVE, e);
+            logger.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * report the heart beat of many clusters, e.g. the tenants of this process, in one ZooKeeper transaction
+     * <br/>
+     * Every live status is refreshed by a write conditional on its znode version, as in markClusterAsActive(), and
+     * all those writes go out as one multi(). A transaction fails as a whole, so a status refreshed concurrently by
+     * another node is dropped from the batch and the rest is sent again, at most MAX_BATCH_ROUNDS times.
+     * Missing, stale or otherwise failing statuses are marked one by one through markClusterAsActive().
+     *
+     * @param nodePaths status znodes of the clusters
+     * @param ttl       i.e. time to live for this data, after this time the cluster will be considered inactive
+     */
+    public void markClustersAsActive(Collection<String> nodePaths, long ttl) {
+        checkConnectivity();
+        long begin = System.nanoTime();
+        List<String> oneByOne = new ArrayList<>();
+        try {
+            admit();
+            synchronized (statusRecord) {
+                long now = System.currentTimeMillis();
+                Map<String, CuratorOp> refreshes = new LinkedHashMap<>();
+                for (String nodePath : nodePaths) {
+                    int version = readStatusRecord(nodePath, statusRecord);
+                    if (version >= 0 && isRefreshable(statusRecord, now)) {
+                        refreshes.put(nodePath, client.transactionOp().setData().withVersion(version).forPath(nodePath, refreshedStatus(now, ttl).clone()));
+                    } else {
+                        oneByOne.add(nodePath);
+                    }
+                }
+                for (int round = 1; !refreshes.isEmpty(); round++) {
+                    try {
+                        client.transaction().forOperations(new ArrayList<>(refreshes.values()));
+                        refreshes.clear();
+                    } catch (KeeperException e) {
+                        if (e.getResults() == null || round == MAX_BATCH_ROUNDS) {
+                            oneByOne.addAll(refreshes.keySet());
+                            break;
+                        }
+                        dropFailedRefreshes(refreshes, e.getResults(), oneByOne);
+                    }
+                }
+            }
+            succeeded(SessionOperation.MARK_ACTIVE_BATCH, begin);
+        } catch (Exception e) {
+            failed(SessionOperation.MARK_ACTIVE_BATCH, e);
+            logger.warn(e.getMessage(), e);
+            return;
+        }
+        for (String nodePath : oneByOne) {
+            markClusterAsActive(nodePath, ttl);
+        }
+    }
+
+    /**
+     * operations rolled back only because another one failed stay in the batch
+     * a BadVersion means another node refreshed that status meanwhile, which serves as its heart beat too
+     */
+    private static void dropFailedRefreshes(Map<String, CuratorOp> refreshes, List<OpResult> results, List<String> oneByOne) {
+        Iterator<String> nodePaths = refreshes.keySet().iterator();
+        for (OpResult result : results) {
+            String nodePath = nodePaths.next();
+            int error = result instanceof OpResult.ErrorResult ? ((OpResult.ErrorResult) result).getErr() : KeeperException.Code.OK.intValue();
+            if (error == KeeperException.Code.OK.intValue() || error == KeeperException.Code.RUNTIMEINCONSISTENCY.intValue()) {
+                continue;
+            }
+            nodePaths.remove();
+            if (error != KeeperException.Code.BADVERSION.intValue()) {
+                oneByOne.add(nodePath);
+            }
+        }
+    }
+
+    /**
+     * decode the current status into the record, from the near cache when current, otherwise by one read
+     *
+     * @return znode version of the status, -1 if it does not exist
+     */
+    private int readStatusRecord(String nodePath, ClusterStatusRecord record) throws Exception {
+        ClusterStatusCache.CachedStatus cached = statusCache.watch(nodePath);
+        if (cached.isCurrent()) {
+            ChildData node = cached.getNode();
+            if (node == null || node.getStat() == null) {
+                return -1;
+            }
+            statusData = node.getData();
+            readStatus(statusData, record);
+            return node.getStat().getVersion();
+        }
+        Stat stat = new Stat();
+        try {
+            statusData = client.getData().storingStatIn(stat).forPath(nodePath);
+            readStatus(statusData, record);
+        } catch (KeeperException.NoNodeException e) {
+            return -1;
+        }
+        return stat.getVersion();
+    }
+
+    /**
+     * a live status is refreshed, and a status of a newer schema version even if stale, as this node can not
+     * write its further fields and so never restarts it
+     */
+    private static boolean isRefreshable(ClusterStatusRecord record, long now) {
+        return record.getSchemaVersion() > STATUS_SCHEMA_VERSION
+                || record.getSchemaVersion() == STATUS_SCHEMA_VERSION && record.isLiveAt(now);
+    }
+
+    /**
+     * @return the status last read with refreshed times, in statusBuffer unless it is of a newer schema version
+     */
+    private byte[] refreshedStatus(long now, long ttl) {
+        if (statusRecord.getSchemaVersion() > STATUS_SCHEMA_VERSION) {
+            return refreshStatus(statusData.clone(), now, ttl);
+        }
+        writeStatus(statusRecord.refresh(now, ttl), statusBuffer);
+        return statusBuffer;
+    }
+
+    private void createStatus(String nodePath, long ttl, ClusterStatusRecord record) throws Exception {
+        writeStatus(record, statusBuffer);
+        if (ttl > 0) {
+            client.create().withTtl(ttl).creatingParentContainersIfNeeded().withMode(CreateMode.PERSISTENT_WITH_TTL).forPath(nodePath, statusBuffer);
+        } else {
+            client.create().creatingParentContainersIfNeeded().forPath(nodePath, statusBuffer);
+        }
+    }
+
+    /**
+     * replace a stale status by a new epoch started by this node
+     * delete and create are one transaction conditional on the stale version, so one node wins and the status znode
+     * is created anew, i.e. the cluster generation changes as if the TTL had already removed it
+     */
+    private void restartStatus(String nodePath, long ttl, int staleVersion, long now) throws Exception {
+        writeStatus(statusRecord.start(nodeId, now, ttl), statusBuffer);
+        CuratorOp delete = client.transactionOp().delete().withVersion(staleVersion).forPath(nodePath);
+        client.transaction().forOperations(delete, createStatusOp(nodePath, ttl, statusBuffer));
+    }
+
+    private CuratorOp createStatusOp(String nodePath, long ttl, byte[] data) throws Exception {
+        return ttl > 0
+                ? client.transactionOp().create().withTtl(ttl).withMode(CreateMode.PERSISTENT_WITH_TTL).forPath(nodePath, data)
+                : client.transactionOp().create().forPath(nodePath, data);
+    }
+
+    /**
+     * mark the cluster as started only if no other node has done it yet
+     * the decision is a single conditional create on the status znode, its record names this node as starter
+     * a status left stale by a cold cluster is taken over by one conditional transaction, as per restartStatus()
+     * or, if it is of a newer schema version, by a conditional refresh in place keeping its epoch and starter
+     * a status removed meanwhile, e.g. by the TTL reaper, is created again, at most MAX_RACE_ROUNDS times
+     * in case of network failure, the caller is considered the winner so the flow continues pessimistically
+     *
+     * @param nodePath
+     * @param ttl      i.e. time to live for this data, after this time the cluster will be considered inactive
+     * @return False if the cluster was already marked as started by another node
+     */
+    public boolean tryMarkClusterAsActive(String nodePath, long ttl) {
+        checkConnectivity();
+        long begin = System.nanoTime();
+        try {
+            admit();
+            synchronized (statusRecord) {
+                for (int round = 1; ; round++) {
+                    long now = System.currentTimeMillis();
+                    try {
+                        createStatus(nodePath, ttl, statusRecord.start(nodeId, now, ttl));
+                        break;
+                    } catch (KeeperException.NodeExistsException e) {
+                        try {
+                            if (!takeOverStaleStatus(nodePath, ttl, now)) {
+                                succeeded(SessionOperation.TRY_MARK_ACTIVE, begin);
+                                return false;
+                            }
+                            break;
+                        } catch (KeeperException.NoNodeException gone) {
+                            if (round == MAX_RACE_ROUNDS) {
+                                throw gone;
+                            }
+                            logger.debug("Cluster status removed meanwhile, creating it again.");
+                        }
+                    }
+                }
+            }
+            succeeded(SessionOperation.TRY_MARK_ACTIVE, begin);
+        } catch (Exception e) {
+            failed(SessionOperation.TRY_MARK_ACTIVE, e);
+            logger.warn(e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /**
+     * @return False if the status is live, or another node took it over first
+     * @throws KeeperException.NoNodeException if the status was removed meanwhile, e.g. by the TTL reaper
+     */
+    private boolean takeOverStaleStatus(String nodePath, long ttl, long now) throws Exception {
+        Stat stat = new Stat();
+        statusData = client.getData().storingStatIn(stat).forPath(nodePath);
+        readStatus(statusData, statusRecord);
+        if (statusRecord.isLiveAt(now)) {
+            return false;
+        }
+        try {
+            if (isRefreshable(statusRecord, now)) {
+                client.setData().withVersion(stat.getVersion()).forPath(nodePath, refreshedStatus(now, ttl));
             } else {
-                client.create().orSetData().creatingParentContainersIfNeeded().forPath(nodePath, booleanToBytes(true));
+                restartStatus(nodePath, ttl, stat.getVersion(), now);
+            }
+        } catch (KeeperException.BadVersionException | KeeperException.NodeExistsException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * the generation of the cluster, i.e. the zxid that created the znode the cluster liveness is tracked by
+     * it is new every time the cluster starts again after going cold, and stays the same while the cluster runs
+     *
+     * @param livenessPath the status znode
+     * @return the creation zxid, 0 if the znode does not exist or ZooKeeper is unreachable
+     */
+    public long getGeneration(String livenessPath) {
+        checkConnectivity();
+        long begin = System.nanoTime();
+        try {
+            admit();
+            Stat stat = client.checkExists().forPath(livenessPath);
+            succeeded(SessionOperation.GET_GENERATION, begin);
+            return stat == null ? 0 : stat.getCzxid();
+        } catch (Exception e) {
+            failed(SessionOperation.GET_GENERATION, e);
+            logger.warn(e.getMessage(), e);
+        }
+        return 0;
+    }
+
+    /**
+     * the generation of the cluster in membership mode, i.e. the zxid the generation marker was last written in
+     * the members path is a container, which outlives its last member for a while, so unlike the status znode its
+     * creation zxid does not tell a restart apart. The marker is written anew by the node starting a cold cluster,
+     * see ClusterMembership
+     *
+     * @param generationPath the generation marker
+     * @return the modification zxid, 0 if the marker does not exist or ZooKeeper is unreachable
+     */
+    public long getMarkedGeneration(String generationPath) {
+        checkConnectivity();
+        long begin = System.nanoTime();
+        try {
+            admit();
+            Stat stat = client.checkExists().forPath(generationPath);
+            succeeded(SessionOperation.GET_GENERATION, begin);
+            return stat == null ? 0 : stat.getMzxid();
+        } catch (Exception e) {
+            failed(SessionOperation.GET_GENERATION, e);
+            logger.warn(e.getMessage(), e);
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if the marker znode was created in the given generation of the cluster
+     * in case of network failure, the marker is considered absent so the flow continues pessimistically
+     *
+     * @param markerPath
+     * @param generation as per getGeneration() or getMarkedGeneration()
+     * @return True if the marker exists and was created after the generation began
+     */
+    public boolean isMarkedSince(String markerPath, long generation) {
+        checkConnectivity();
+        try {
+            admit();
+            Stat stat = client.checkExists().forPath(markerPath);
+            return stat != null && stat.getCzxid() > generation;
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * claim a piece of once-per-cluster work by creating an ephemeral znode
+     * the claim goes away with the session of the claiming node, so work of a dead node can be claimed again
+     * in case of network failure, the caller is considered the owner so the flow continues pessimistically
+     *
+     * @param claimPath
+     * @return False if another node holds the claim
+     */
+    public boolean tryClaim(String claimPath) {
+        checkConnectivity();
+        long begin = System.nanoTime();
+        try {
+            admit();
+            client.create().creatingParentContainersIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(claimPath);
+            succeeded(SessionOperation.CLAIM_TASK, begin);
+        } catch (KeeperException.NodeExistsException e) {
+            succeeded(SessionOperation.CLAIM_TASK, begin);
+            return false;
+        } catch (Exception e) {
+            failed(SessionOperation.CLAIM_TASK, e);
+            logger.warn(e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /**
+     * give back a claim taken by tryClaim()
+     *
+     * @param claimPath
+     */
+    public void releaseClaim(String claimPath) {
+        checkConnectivity();
+        try {
+            admit();
+            client.delete().quietly().forPath(claimPath);
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * create the marker znode anew, so it belongs to the current generation of the cluster
+     * a marker left by an earlier generation is replaced in one transaction, so the marker is never missing meanwhile
+     * if another node replaces or creates the marker at the same time, its marker is as fresh and is kept
+     *
+     * @param markerPath
+     */
+    public void mark(String markerPath) {
+        checkConnectivity();
+        long begin = System.nanoTime();
+        try {
+            admit();
+            client.createContainers(ZKPaths.getPathAndNode(markerPath).getPath());
+            for (int round = 0; round < MAX_RACE_ROUNDS; round++) {
+                Stat stat = client.checkExists().forPath(markerPath);
+                try {
+                    if (stat == null) {
+                        client.create().forPath(markerPath);
+                    } else {
+                        client.transaction().forOperations(
+                                client.transactionOp().delete().withVersion(stat.getVersion()).forPath(markerPath),
+                                client.transactionOp().create().forPath(markerPath));
+                    }
+                    break;
+                } catch (KeeperException.NodeExistsException | KeeperException.BadVersionException e) {
+                    logger.debug("Marker {} replaced by another node meanwhile.", markerPath);
+                    break;
+                } catch (KeeperException.NoNodeException e) {
+                    logger.debug("Marker {} deleted meanwhile, marking again.", markerPath);
+                }
+            }
+            succeeded(SessionOperation.MARK_TASK_DONE, begin);
+        } catch (Exception e) {
+            failed(SessionOperation.MARK_TASK_DONE, e);
+            logger.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * watch the znode without blocking the caller
+     * completes once the znode is deleted or changed, or right away if it does not exist
+     * in case of network failure, it completes right away too so the caller checks again
+     *
+     * @param path
+     * @return future completing on the first change of the znode
+     */
+    public CompletableFuture<Void> watch(String path) {
+        checkConnectivity();
+        CompletableFuture<Void> changed = new CompletableFuture<>();
+        try {
+            admit();
+            if (client.checkExists().usingWatcher((Watcher) event -> changed.complete(null)).forPath(path) == null) {
+                changed.complete(null);
             }
         } catch (Exception e) {
             logger.warn(e.getMessage(), e);
+            changed.complete(null);
         }
+        return changed;
     }
 
+    /**
+     * read the znode and leave a one-shot watch on it, fired on its next create, change or delete
+     * one round trip if the znode exists, otherwise an exists watch is left in a second one,
+     * and the znode read once more if it was created in between
+     * unlike the status reads there is no pessimistic fallback, a failure is thrown to the caller
+     *
+     * @param stat    filled with the stat of the znode if it exists
+     * @param watcher notified once of the next change, null to leave no watch
+     * @param synced  True to queue a sync ahead of the read, so the answer is up-to-date with the leader
+     * @return the data, null if the znode does not exist
+     * @throws Exception as thrown by Curator, a ConnectionLossException while the connection is down
+     */
+    public byte[] getWatchedData(String path, Stat stat, Watcher watcher, boolean synced) throws Exception {
+        checkConnectivity();
+        long begin = System.nanoTime();
+        try {
+            admit();
+            if (synced) {
+                client.sync().forPath(path);
+            }
+            if (watcher == null) {
+                byte[] data = client.getData().storingStatIn(stat).forPath(path);
+                succeeded(SessionOperation.GET_VALUE, begin);
+                return data;
+            }
+            byte[] data = null;
+            try {
+                data = client.getData().storingStatIn(stat).usingWatcher(watcher).forPath(path);
+            } catch (KeeperException.NoNodeException e) {
+                if (client.checkExists().usingWatcher(watcher).forPath(path) != null) {
+                    data = client.getData().storingStatIn(stat).forPath(path);
+                }
+            }
+            succeeded(SessionOperation.GET_VALUE, begin);
+            return data;
+        } catch (KeeperException.NoNodeException e) {
+            succeeded(SessionOperation.GET_VALUE, begin);
+            return null;
+        } catch (Exception e) {
+            failed(SessionOperation.GET_VALUE, e);
+            throw e;
+        }
+    }
+
+    /**
+     * remove a watch left by getWatchedData(), in the background as it is not waited for
+     * a watch fired meanwhile is gone already, that is not an error
+     *
+     * @param path
+     * @param watcher as passed to getWatchedData()
+     */
+    public void removeWatcher(String path, Watcher watcher) {
+        checkConnectivity();
+        try {
+            admit();
+            client.watchers().remove(watcher).ofType(Watcher.WatcherType.Any).quietly().inBackground().forPath(path);
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * create the znode and its missing parents as containers, which ZooKeeper removes once their children are gone
+     * in case of network failure nothing is created, a later create below the path fails with NONODE
+     *
+     * @param path
+     */
+    public void createContainers(String path) {
+        checkConnectivity();
+        try {
+            admit();
+            client.createContainers(path);
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * start a batch of operations sent to ZooKeeper as one multi(), i.e. in one round trip, all or nothing
+     *
+     * @return an empty batch on this session
+     */
+    public Batch batch() {
+        checkConnectivity();
+        return new Batch();
+    }
+
+    /**
+     * Steps of one ZooKeeper transaction, sent by commit()
+     * <pre>
+     * BatchResult result = session.batch()
+     *         .markClusterAsActive(statusPath, ttl)
+     *         .create(registryPath + "/" + nodeId, data, CreateMode.EPHEMERAL)
+     *         .commit();
+     * </pre>
+     * A transaction can not create parent znodes, they must exist. A step that can not be added, e.g. as the status
+     * could not be read, fails the whole batch on commit. Steps keep their index in the result either way.
+     */
+    public final class Batch {
+
+        private final List<CuratorOp> operations = new ArrayList<>();
+
+        private final List<Integer> stepEnds = new ArrayList<>();
+
+        private Exception failure;
+
+        private Batch() {
+        }
+
+        /**
+         * fail the transaction unless the znode exists
+         *
+         * @param version expected znode version, -1 for any
+         */
+        public Batch check(String path, int version) {
+            return step(() -> List.of(client.transactionOp().check().withVersion(version).forPath(path)));
+        }
+
+        public Batch create(String path, byte[] data, CreateMode mode) {
+            return step(() -> List.of(client.transactionOp().create().withMode(mode).forPath(path, data)));
+        }
+
+        /**
+         * create a znode removed by ZooKeeper once it has no children and was not modified for the ttl
+         */
+        public Batch createWithTtl(String path, byte[] data, long ttl) {
+            return step(() -> List.of(client.transactionOp().create().withTtl(ttl).withMode(CreateMode.PERSISTENT_WITH_TTL).forPath(path, data)));
+        }
+
+        /**
+         * @param version expected znode version, -1 for any
+         */
+        public Batch setData(String path, byte[] data, int version) {
+            return step(() -> List.of(client.transactionOp().setData().withVersion(version).forPath(path, data)));
+        }
+
+        /**
+         * @param version expected znode version, -1 for any
+         */
+        public Batch delete(String path, int version) {
+            return step(() -> List.of(client.transactionOp().delete().withVersion(version).forPath(path)));
+        }
+
+        /**
+         * report the heart beat of this node as one step, as markClusterAsActive() does on its own
+         * a live status is refreshed by a write conditional on the version it was read at, so the step fails with
+         * BADVERSION if another node refreshed it meanwhile. A missing or stale status begins a new epoch started
+         * by this node, and the step fails with NODEEXISTS or BADVERSION if another node did so first.
+         *
+         * @param nodePath status znode, its parent must exist
+         * @param ttl      i.e. time to live for this data, after this time the cluster will be considered inactive
+         */
+        public Batch markClusterAsActive(String nodePath, long ttl) {
+            return step(() -> {
+                admit();
+                synchronized (statusRecord) {
+                    long now = System.currentTimeMillis();
+                    int version = readStatusRecord(nodePath, statusRecord);
+                    if (version >= 0 && isRefreshable(statusRecord, now)) {
+                        return List.of(client.transactionOp().setData().withVersion(version).forPath(nodePath, refreshedStatus(now, ttl).clone()));
+                    }
+                    writeStatus(statusRecord.start(nodeId, now, ttl), statusBuffer);
+                    CuratorOp create = createStatusOp(nodePath, ttl, statusBuffer.clone());
+                    return version < 0
+                            ? List.of(create)
+                            : List.of(client.transactionOp().delete().withVersion(version).forPath(nodePath), create);
+                }
+            });
+        }
+
+        private Batch step(BatchStep step) {
+            if (failure == null) {
+                try {
+                    operations.addAll(step.operations());
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+            stepEnds.add(operations.size());
+            return this;
+        }
+
+        /**
+         * send all steps in one multi() request, an empty batch sends nothing
+         * in case of network failure no step is applied, the result is not committed and reports the error
+         *
+         * @return per step results
+         */
+        public BatchResult commit() {
+            long begin = System.nanoTime();
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (operations.isEmpty()) {
+                    return BatchResult.committed(List.of(), stepEnds);
+                }
+                admit();
+                List<CuratorTransactionResult> results = client.transaction().forOperations(operations);
+                succeeded(SessionOperation.COMMIT_BATCH, begin);
+                return BatchResult.committed(results, stepEnds);
+            } catch (KeeperException e) {
+                if (e.getResults() != null) {
+                    succeeded(SessionOperation.COMMIT_BATCH, begin);
+                    logger.debug("Batch of {} steps rolled back: {}", stepEnds.size(), e.getMessage());
+                    return BatchResult.rolledBack(e.getResults(), stepEnds);
+                }
+                failed(SessionOperation.COMMIT_BATCH, e);
+                logger.warn(e.getMessage(), e);
+                return BatchResult.failed(e.code(), stepEnds.size());
+            } catch (Exception e) {
+                failed(SessionOperation.COMMIT_BATCH, e);
+                logger.warn(e.getMessage(), e);
+                return BatchResult.failed(KeeperException.Code.CONNECTIONLOSS, stepEnds.size());
+            }
+        }
+    }
+
+    /**
+     * the ZooKeeper operations of one batch step
+     */
+    private interface BatchStep {
+        List<CuratorOp> operations() throws Exception;
+    }
+
+    /**
+     * fail fast while the connection is down or the circuit breaker is open
+     * meant to be called inside the try block of an operation, so it falls back to its pessimistic outcome right away
+     */
+    private void admit() throws KeeperException.ConnectionLossException {
+        connectionManager.requireConnection();
+        circuitBreaker.acquirePermission();
+    }
+
+    private void succeeded(SessionOperation operation, long begin) {
+        metrics.recordOperation(operation, begin);
+        circuitBreaker.onSuccess();
+    }
+
+    private void failed(SessionOperation operation, Exception e) {
+        metrics.recordFailure(operation, e);
+        if (connectionManager.isConnected()) {
+            circuitBreaker.onFailure(e);
+        }
+    }
+
+    /**
+     * run one call of a Curator recipe on the client of this session, e.g. acquiring a lock,
+     * under the rules of the session operations: it fails fast while the connection is down or the circuit breaker
+     * is open, and its failure counts towards the breaker
+     *
+     * @param call
+     * @return what the call returned
+     * @throws KeeperException.ConnectionLossException if not connected
+     * @throws CircuitBreakerOpenException if the breaker is open
+     */
+    public <T> T callRecipe(Callable<T> call) throws Exception {
+        checkConnectivity();
+        admit();
+        try {
+            T result = call.call();
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (Exception e) {
+            if (connectionManager.isConnected()) {
+                circuitBreaker.onFailure(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return True if the shared connection to ZooKeeper is up, i.e. neither SUSPENDED nor LOST
+     */
+    public boolean isConnected() {
+        return connectionManager.isConnected();
+    }
 
     /**
      * checks if the connection is established with ZooKeeper
@@ -117,11 +925,12 @@ public class ZooKeeperSession implements Closeable {
 
     @Override
     /**
-     * close connection and session with ZooKeeper
+     * close the session, giving the shared connection back to the connection manager
      */
     public void close() {
-        if (this.client != null && client.getState() != CuratorFrameworkState.STOPPED) {
-            this.client.close();
+        if (this.client != null) {
+            this.client = null;
+            connectionManager.release();
         }
     }
 
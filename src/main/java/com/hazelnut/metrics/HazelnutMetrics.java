@@ -0,0 +1,285 @@
+package com.hazelnut.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@Service
+/**
+ * Hot path metrics of sessions, locks and heart beats
+ * Recording on the success path is allocation-free: lock-free histograms and counters are created upfront.
+ * Exposed over JMX, and to Micrometer when a MeterRegistry is present (e.g. with Spring Boot actuator)
+ */
+public class HazelnutMetrics implements HazelnutMetricsMXBean, MeterBinder {
+
+    @Value("${node.id}")
+    private String nodeId;
+
+    private final Map<SessionOperation, LatencyHistogram> sessionOperations = new EnumMap<>(SessionOperation.class);
+
+    private final Map<String, LongAdder> sessionFailures = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+
+    private final LongAdder lockAcquisitions = new LongAdder();
+
+    private final LongAdder lockTimeouts = new LongAdder();
+
+    private final LongAdder lockHandOffs = new LongAdder();
+
+    private final LatencyHistogram heartBeatLatency = new LatencyHistogram();
+
+    private final LatencyHistogram heartBeatDrift = new LatencyHistogram();
+
+    private final LongAdder missedHeartBeats = new LongAdder();
+
+    private final LongAdder suppressedHeartBeats = new LongAdder();
+
+    private final LongAdder pausedHeartBeats = new LongAdder();
+
+    private final LongAdder connectionLosses = new LongAdder();
+
+    private final LongAdder circuitBreakerOpenings = new LongAdder();
+
+    private final LongAdder circuitBreakerRejections = new LongAdder();
+
+    private volatile long connectTimeNanos = 0;
+
+    private ObjectName objectName = null;
+
+    private final Logger logger = LoggerFactory.getLogger(HazelnutMetrics.class);
+
+    public HazelnutMetrics() {
+        for (SessionOperation operation : SessionOperation.values()) {
+            sessionOperations.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public void recordConnect(long beginNanos) {
+        connectTimeNanos = System.nanoTime() - beginNanos;
+    }
+
+    public void recordOperation(SessionOperation operation, long beginNanos) {
+        sessionOperations.get(operation).recordSince(beginNanos);
+    }
+
+    /**
+     * count a failed operation by the ZooKeeper error code, or by exception class for other failures
+     */
+    public void recordFailure(SessionOperation operation, Exception e) {
+        String type = e instanceof KeeperException ? ((KeeperException) e).code().name() : e.getClass().getSimpleName();
+        sessionFailures.computeIfAbsent(operation.name() + ":" + type, key -> new LongAdder()).increment();
+    }
+
+    public void recordLockWait(long beginNanos, boolean acquired) {
+        lockWait.recordSince(beginNanos);
+        if (acquired) {
+            lockAcquisitions.increment();
+        } else {
+            lockTimeouts.increment();
+        }
+    }
+
+    /**
+     * count a lock acquisition served by a local hand over, without any ZooKeeper round trip
+     */
+    public void recordLockHandOff() {
+        lockHandOffs.increment();
+    }
+
+    /**
+     * @param beginNanos  System.nanoTime() when the heart beat write began
+     * @param driftNanos  how late the heart beat began compared to its schedule
+     * @param missed      number of whole intervals skipped since the previous heart beat
+     */
+    public void recordHeartBeat(long beginNanos, long driftNanos, long missed) {
+        heartBeatLatency.recordSince(beginNanos);
+        heartBeatDrift.record(driftNanos);
+        if (missed > 0) {
+            missedHeartBeats.add(missed);
+        }
+    }
+
+    /**
+     * count a heart beat skipped because another node refreshed the status recently
+     */
+    public void recordHeartBeatSuppressed() {
+        suppressedHeartBeats.increment();
+    }
+
+    /**
+     * count a heart beat skipped because the connection to ZooKeeper is suspended or lost
+     */
+    public void recordHeartBeatPaused() {
+        pausedHeartBeats.increment();
+    }
+
+    /**
+     * count a connection to ZooKeeper going from connected to suspended or lost
+     */
+    public void recordConnectionLoss() {
+        connectionLosses.increment();
+    }
+
+    /**
+     * count the circuit breaker opening after failures in a row
+     */
+    public void recordCircuitBreakerOpened() {
+        circuitBreakerOpenings.increment();
+    }
+
+    /**
+     * count an operation failed by the open circuit breaker without reaching ZooKeeper
+     */
+    public void recordCircuitBreakerRejection() {
+        circuitBreakerRejections.increment();
+    }
+
+    @Override
+    public long getConnectTimeMillis() {
+        return NANOSECONDS.toMillis(connectTimeNanos);
+    }
+
+    @Override
+    public Map<String, LatencySummary> getSessionOperations() {
+        Map<String, LatencySummary> summaries = new TreeMap<>();
+        sessionOperations.forEach((operation, histogram) -> summaries.put(operation.name(), LatencySummary.of(histogram)));
+        return summaries;
+    }
+
+    @Override
+    public Map<String, Long> getSessionFailures() {
+        Map<String, Long> failures = new TreeMap<>();
+        sessionFailures.forEach((type, count) -> failures.put(type, count.sum()));
+        return failures;
+    }
+
+    @Override
+    public LatencySummary getLockWait() {
+        return LatencySummary.of(lockWait);
+    }
+
+    @Override
+    public long getLockAcquisitions() {
+        return lockAcquisitions.sum();
+    }
+
+    @Override
+    public long getLockTimeouts() {
+        return lockTimeouts.sum();
+    }
+
+    @Override
+    public long getLockHandOffs() {
+        return lockHandOffs.sum();
+    }
+
+    @Override
+    public LatencySummary getHeartBeatLatency() {
+        return LatencySummary.of(heartBeatLatency);
+    }
+
+    @Override
+    public LatencySummary getHeartBeatDrift() {
+        return LatencySummary.of(heartBeatDrift);
+    }
+
+    @Override
+    public long getMissedHeartBeats() {
+        return missedHeartBeats.sum();
+    }
+
+    @Override
+    public long getSuppressedHeartBeats() {
+        return suppressedHeartBeats.sum();
+    }
+
+    @Override
+    public long getPausedHeartBeats() {
+        return pausedHeartBeats.sum();
+    }
+
+    @Override
+    public long getConnectionLosses() {
+        return connectionLosses.sum();
+    }
+
+    @Override
+    public long getCircuitBreakerOpenings() {
+        return circuitBreakerOpenings.sum();
+    }
+
+    @Override
+    public long getCircuitBreakerRejections() {
+        return circuitBreakerRejections.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("hazelnut.session.connect.time", this, metrics -> metrics.connectTimeNanos).baseUnit("nanoseconds").register(registry);
+        sessionOperations.forEach((operation, histogram) -> bindHistogram(registry, "hazelnut.session.operation", histogram, "operation", operation.name()));
+        bindHistogram(registry, "hazelnut.lock.wait", lockWait);
+        FunctionCounter.builder("hazelnut.lock.acquisitions", lockAcquisitions, LongAdder::sum).register(registry);
+        FunctionCounter.builder("hazelnut.lock.timeouts", lockTimeouts, LongAdder::sum).register(registry);
+        FunctionCounter.builder("hazelnut.lock.handoffs", lockHandOffs, LongAdder::sum).register(registry);
+        bindHistogram(registry, "hazelnut.heartbeat.latency", heartBeatLatency);
+        bindHistogram(registry, "hazelnut.heartbeat.drift", heartBeatDrift);
+        FunctionCounter.builder("hazelnut.heartbeat.missed", missedHeartBeats, LongAdder::sum).register(registry);
+        FunctionCounter.builder("hazelnut.heartbeat.suppressed", suppressedHeartBeats, LongAdder::sum).register(registry);
+        FunctionCounter.builder("hazelnut.heartbeat.paused", pausedHeartBeats, LongAdder::sum).register(registry);
+        FunctionCounter.builder("hazelnut.session.connection.losses", connectionLosses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("hazelnut.session.circuit.openings", circuitBreakerOpenings, LongAdder::sum).register(registry);
+        FunctionCounter.builder("hazelnut.session.circuit.rejections", circuitBreakerRejections, LongAdder::sum).register(registry);
+    }
+
+    private void bindHistogram(MeterRegistry registry, String name, LatencyHistogram histogram, String... tags) {
+        FunctionCounter.builder(name + ".count", histogram, LatencyHistogram::getCount).tags(tags).register(registry);
+        Gauge.builder(name + ".p50", histogram, h -> h.getPercentileNanos(50)).tags(tags).baseUnit("nanoseconds").register(registry);
+        Gauge.builder(name + ".p99", histogram, h -> h.getPercentileNanos(99)).tags(tags).baseUnit("nanoseconds").register(registry);
+        Gauge.builder(name + ".max", histogram, LatencyHistogram::getMaxNanos).tags(tags).baseUnit("nanoseconds").register(registry);
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.hazelnut:type=Metrics,node=" + ObjectName.quote(nodeId));
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn(e.getMessage(), e);
+            objectName = null;
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn(e.getMessage(), e);
+            }
+            objectName = null;
+        }
+    }
+}
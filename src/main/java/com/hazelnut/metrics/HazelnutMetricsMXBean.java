@@ -0,0 +1,39 @@
+package com.hazelnut.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the Hazelnut hot path metrics, registered as com.hazelnut:type=Metrics,node=&lt;node.id&gt;
+ */
+public interface HazelnutMetricsMXBean {
+
+    long getConnectTimeMillis();
+
+    Map<String, LatencySummary> getSessionOperations();
+
+    Map<String, Long> getSessionFailures();
+
+    LatencySummary getLockWait();
+
+    long getLockAcquisitions();
+
+    long getLockTimeouts();
+
+    long getLockHandOffs();
+
+    LatencySummary getHeartBeatLatency();
+
+    LatencySummary getHeartBeatDrift();
+
+    long getMissedHeartBeats();
+
+    long getSuppressedHeartBeats();
+
+    long getPausedHeartBeats();
+
+    long getConnectionLosses();
+
+    long getCircuitBreakerOpenings();
+
+    long getCircuitBreakerRejections();
+}
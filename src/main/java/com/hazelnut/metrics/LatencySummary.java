@@ -0,0 +1,54 @@
+package com.hazelnut.metrics;
+
+import java.beans.ConstructorProperties;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Point in time summary of a LatencyHistogram as exposed over JMX
+ */
+public final class LatencySummary {
+
+    private final long count;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    @ConstructorProperties({"count", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+    public LatencySummary(long count, long meanMicros, long p50Micros, long p99Micros, long maxMicros) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public static LatencySummary of(LatencyHistogram histogram) {
+        return new LatencySummary(histogram.getCount(),
+                NANOSECONDS.toMicros(histogram.getMeanNanos()),
+                NANOSECONDS.toMicros(histogram.getPercentileNanos(50)),
+                NANOSECONDS.toMicros(histogram.getPercentileNanos(99)),
+                NANOSECONDS.toMicros(histogram.getMaxNanos()));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+}
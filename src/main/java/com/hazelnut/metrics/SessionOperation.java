@@ -0,0 +1,18 @@
+package com.hazelnut.metrics;
+
+/**
+ * ZooKeeper operations of ZooKeeperSession whose latency and failures are recorded
+ */
+public enum SessionOperation {
+    GET_STATUS,
+    GET_STATUS_ASYNC,
+    GET_SYNCED_STATUS,
+    MARK_ACTIVE,
+    MARK_ACTIVE_BATCH,
+    COMMIT_BATCH,
+    TRY_MARK_ACTIVE,
+    GET_GENERATION,
+    CLAIM_TASK,
+    MARK_TASK_DONE,
+    GET_VALUE
+}
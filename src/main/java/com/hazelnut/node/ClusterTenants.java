@@ -0,0 +1,177 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.utils.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+@Service
+/**
+ * Multi-tenant mode: startup and liveness of many logical clusters coordinated by this one process
+ * <br/>
+ * A tenant is a cluster id with its own status znode, cluster.tenants.status.path with {cluster.id} replaced by the id.
+ * All tenants share the one ZooKeeper connection of the process. A tenant is started as a cluster in ttl mode with
+ * create coordination: it is joined if its status is live, otherwise one conditional create decides the starting node.
+ * <br/>
+ * The heart beats of all tenants due in an interval go out through one ZooKeeperSession.markClustersAsActive(), i.e.
+ * one multi() per cluster.tenants.batch.size tenants instead of one request per tenant. As in NodeLivenessReporter,
+ * a tenant whose status another node was seen refreshing within the interval is skipped.
+ * <br/>
+ * The tenants of cluster.tenants are started by startTenants(), more can be started and stopped at runtime.
+ */
+public class ClusterTenants implements SchedulingConfigurer {
+
+    private static final String CLUSTER_ID = "{cluster.id}";
+
+    @Value("${cluster.tenants}")
+    private String[] configuredTenants;
+
+    @Value("${cluster.tenants.status.path}")
+    private String statusPathPattern;
+
+    @Value("${cluster.tenants.batch.size}")
+    private int batchSize;
+
+    @Value("${cluster.nodes.liveness.ttl.ms}")
+    private long ttl;
+
+    @Value("${node.liveness.reporting.time.ms}")
+    private long reportingIntervalMillis;
+
+    @Value("${node.liveness.reporting.jitter}")
+    private double reportingJitter;
+
+    private final ObjectProvider<ZooKeeperSession> sessions;
+
+    private final HazelnutMetrics metrics;
+
+    private final Map<String, String> statusPaths = new ConcurrentSkipListMap<>();
+
+    private HeartBeatSchedule schedule;
+
+    private final Logger logger = LoggerFactory.getLogger(ClusterTenants.class);
+
+    public ClusterTenants(@Autowired ObjectProvider<ZooKeeperSession> sessions, @Autowired HazelnutMetrics metrics) {
+        this.sessions = sessions;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        schedule = new HeartBeatSchedule(ttl, reportingIntervalMillis, reportingJitter);
+    }
+
+    @Override
+    /**
+     * schedule the heart beats of the tenants, a no-op while there are none
+     */
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addTriggerTask(this::updateTenantStatuses,
+                triggerContext -> new Date(System.currentTimeMillis() + schedule.nextDelayMillis()));
+    }
+
+    /**
+     * start every tenant of cluster.tenants
+     *
+     * @return outcome per tenant, in the configured order
+     */
+    public Map<String, StartupOutcome> startTenants() {
+        Map<String, StartupOutcome> outcomes = new LinkedHashMap<>();
+        for (String clusterId : configuredTenants) {
+            if (!clusterId.isBlank()) {
+                outcomes.put(clusterId.trim(), startTenant(clusterId.trim()));
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * join the tenant cluster if it is up, otherwise try to start it, then keep reporting its heart beat
+     * in case of network failure the tenant is started pessimistically, as a node would be
+     *
+     * @param clusterId of the tenant
+     * @return STARTED_CLUSTER if this node started the tenant cluster
+     * @throws IllegalArgumentException if the cluster id does not make a valid znode path
+     */
+    public StartupOutcome startTenant(String clusterId) {
+        String statusPath = statusPathPattern.replace(CLUSTER_ID, clusterId);
+        PathUtils.validatePath(statusPath);
+        StartupOutcome outcome = StartupOutcome.JOINED_CLUSTER;
+        try (ZooKeeperSession session = sessions.getObject().open()) {
+            if (!session.getClusterStatus(statusPath) && session.tryMarkClusterAsActive(statusPath, ttl)) {
+                outcome = StartupOutcome.STARTED_CLUSTER;
+                logger.info("Tenant cluster {} started by this node.", clusterId);
+            }
+        }
+        statusPaths.put(clusterId, statusPath);
+        return outcome;
+    }
+
+    /**
+     * stop reporting the heart beat of the tenant, its status goes stale unless another node keeps it
+     *
+     * @param clusterId of the tenant
+     */
+    public void stopTenant(String clusterId) {
+        statusPaths.remove(clusterId);
+    }
+
+    /**
+     * @return cluster ids of the started tenants
+     */
+    public Set<String> getTenants() {
+        return statusPaths.keySet();
+    }
+
+    /**
+     * Report the heart beat of every tenant not recently refreshed by another node, batched into multi() transactions
+     * While the connection is SUSPENDED or LOST heart beats pause, as in NodeLivenessReporter
+     */
+    public void updateTenantStatuses() {
+        if (statusPaths.isEmpty()) {
+            return;
+        }
+        long begin = System.nanoTime();
+        try (ZooKeeperSession session = sessions.getObject().open()) {
+            if (!session.isConnected()) {
+                metrics.recordHeartBeatPaused();
+                logger.debug("ZooKeeper connection is down, paused the tenant heart beats.");
+                return;
+            }
+            List<String> due = new ArrayList<>(statusPaths.size());
+            for (String statusPath : statusPaths.values()) {
+                OptionalLong refreshedMillisAgo = session.getClusterStatusAgeMillis(statusPath);
+                if (refreshedMillisAgo.isPresent() && schedule.isRecentlyRefreshed(refreshedMillisAgo.getAsLong())) {
+                    metrics.recordHeartBeatSuppressed();
+                } else {
+                    due.add(statusPath);
+                }
+            }
+            int batch = Math.max(1, batchSize);
+            for (int from = 0; from < due.size(); from += batch) {
+                session.markClustersAsActive(due.subList(from, Math.min(due.size(), from + batch)), ttl);
+            }
+            if (!due.isEmpty()) {
+                schedule.recordWriteLatency(System.nanoTime() - begin);
+            }
+            logger.debug("Updated status of {} of {} tenants as active.", due.size(), statusPaths.size());
+        }
+    }
+}
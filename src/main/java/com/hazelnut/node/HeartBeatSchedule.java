@@ -0,0 +1,76 @@
+package com.hazelnut.node;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Decides when the next heart beat is due and whether it can be skipped
+ * <br/>
+ * The interval is node.liveness.reporting.time.ms, shortened if needed so that two intervals plus the write latency
+ * still fit in the TTL. Every delay is jittered down by up to the jitter fraction so that nodes restarted together
+ * don't keep writing in aligned bursts.
+ * <br/>
+ * A heart beat is skipped if another node was seen refreshing the status within the current interval, so one write
+ * per interval is enough for the whole cluster, writes are then at most two intervals plus the write latency apart.
+ */
+class HeartBeatSchedule {
+
+    private static final long MIN_INTERVAL_MILLIS = 100;
+
+    private final long ttlMillis;
+
+    private final long maxIntervalMillis;
+
+    private final double jitter;
+
+    private volatile long writeLatencyMillis = 0;
+
+    HeartBeatSchedule(long ttlMillis, long maxIntervalMillis, double jitter) {
+        this.ttlMillis = ttlMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.jitter = Math.min(Math.max(jitter, 0), 1);
+    }
+
+    /**
+     * moving average of the write latency, rising at once on a slower write and decaying slowly
+     *
+     * @param nanos latency of the last heart beat write
+     */
+    void recordWriteLatency(long nanos) {
+        long millis = NANOSECONDS.toMillis(nanos);
+        long current = writeLatencyMillis;
+        writeLatencyMillis = millis > current ? millis : (current * 7 + millis) / 8;
+    }
+
+    long getWriteLatencyMillis() {
+        return writeLatencyMillis;
+    }
+
+    /**
+     * @return the interval between two heart beats of the cluster
+     */
+    long intervalMillis() {
+        long interval = maxIntervalMillis;
+        if (ttlMillis > 0) {
+            interval = Math.min(interval, (ttlMillis - writeLatencyMillis) / 3);
+        }
+        return Math.max(interval, MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @return the delay before the next heart beat of this node, the interval jittered down
+     */
+    long nextDelayMillis() {
+        long interval = intervalMillis();
+        return interval - (long) (interval * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @param ageMillis time since a refresh of the status was last seen
+     * @return True if the refresh is recent enough to skip this heart beat
+     */
+    boolean isRecentlyRefreshed(long ageMillis) {
+        return ageMillis + writeLatencyMillis < intervalMillis();
+    }
+}
@@ -1,43 +1,112 @@
 package com.hazelnut.node;
 
+import com.hazelnut.cluster.LivenessMode;
 import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Date;
+import java.util.OptionalLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 @Service
-public class NodeLivenessReporter {
+/**
+ * Reports the heart beat of this node on an adaptive, jittered schedule
+ * see HeartBeatSchedule for how the interval is derived and when a heart beat is skipped
+ */
+public class NodeLivenessReporter implements SchedulingConfigurer {
     @Value("${cluster.nodes.liveness.ttl.ms}")
     private long ttl;
 
     @Value("${cluster.status.data.path}")
     private String clusterActivityTimeRefPath;
 
+    @Value("${cluster.liveness.mode}")
+    private LivenessMode livenessMode;
+
+    @Value("${node.liveness.reporting.time.ms}")
+    private long reportingIntervalMillis;
+
+    @Value("${node.liveness.reporting.jitter}")
+    private double reportingJitter;
+
     private final ZooKeeperSession zooKeeperSession;
     private final NodeStartup node;
+    private final HazelnutMetrics metrics;
+
+    private HeartBeatSchedule schedule;
+
+    private volatile long nextHeartBeatNanos = 0;
 
     Logger logger = LoggerFactory.getLogger(NodeLivenessReporter.class);
 
-    public NodeLivenessReporter(@Autowired ZooKeeperSession zooKeeperSession, @Autowired NodeStartup node) {
+    public NodeLivenessReporter(@Autowired ZooKeeperSession zooKeeperSession, @Autowired NodeStartup node, @Autowired HazelnutMetrics metrics) {
         this.zooKeeperSession = zooKeeperSession;
         this.node = node;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        schedule = new HeartBeatSchedule(ttl, reportingIntervalMillis, reportingJitter);
     }
 
-    @Scheduled(fixedDelayString = "${node.liveness.reporting.time.ms}")
-    @Async
+    @Override
     /**
-     * Report the heart beat to ZooKeeper after every fixed delay
+     * schedule the heart beat, the delay before each one is computed once the previous one completed
+     */
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addTriggerTask(this::updateClusterStatus, triggerContext -> {
+            long delay = schedule.nextDelayMillis();
+            nextHeartBeatNanos = System.nanoTime() + MILLISECONDS.toNanos(delay);
+            return new Date(System.currentTimeMillis() + delay);
+        });
+    }
+
+    /**
+     * Report the heart beat to ZooKeeper, unless another node was seen refreshing the cluster status recently enough
+     * While the connection is SUSPENDED or LOST heart beats pause instead of blocking the scheduler thread in retries
+     * In MEMBERSHIP mode the ephemeral member znode is the heart beat, nothing is written
      */
     public void updateClusterStatus() {
-        if (node.isNodeStarted()) {
+        if (node.isNodeStarted() && livenessMode == LivenessMode.TTL) {
+            long begin = System.nanoTime();
             try (ZooKeeperSession session = zooKeeperSession.open()) {
-                session.markClusterAsActive(clusterActivityTimeRefPath, ttl);
-                logger.info("Updated cluster status as active.");
+                OptionalLong refreshedMillisAgo = session.getClusterStatusAgeMillis(clusterActivityTimeRefPath);
+                if (!session.isConnected()) {
+                    metrics.recordHeartBeatPaused();
+                    logger.debug("ZooKeeper connection is down, paused the heart beat.");
+                } else if (refreshedMillisAgo.isPresent() && schedule.isRecentlyRefreshed(refreshedMillisAgo.getAsLong())) {
+                    metrics.recordHeartBeatSuppressed();
+                    logger.debug("Cluster status refreshed {} ms ago, skipped the heart beat.", refreshedMillisAgo.getAsLong());
+                } else {
+                    session.markClusterAsActive(clusterActivityTimeRefPath, ttl);
+                    schedule.recordWriteLatency(System.nanoTime() - begin);
+                    logger.info("Updated cluster status as active.");
+                }
             }
+            recordHeartBeat(begin);
+        }
+    }
+
+    /**
+     * drift is how much later than scheduled the heart beat began
+     */
+    private void recordHeartBeat(long begin) {
+        long driftNanos = 0;
+        long missed = 0;
+        if (nextHeartBeatNanos != 0) {
+            driftNanos = Math.max(0, begin - nextHeartBeatNanos);
+            missed = driftNanos / MILLISECONDS.toNanos(schedule.intervalMillis());
         }
+        metrics.recordHeartBeat(begin, driftNanos, missed);
     }
 }
@@ -1,13 +1,26 @@
 package com.hazelnut.node;
 
+import com.hazelnut.cluster.ClusterMembership;
+import com.hazelnut.cluster.ClusterStartupTasks;
 import com.hazelnut.cluster.DistributedLock;
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.cluster.StartupCoordination;
+import com.hazelnut.cluster.StatusJournal;
 import com.hazelnut.cluster.ZooKeeperSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 @Service
 
 /**
@@ -16,7 +29,9 @@ import org.springframework.stereotype.Service;
  */
 public class NodeStartup {
 
-    private boolean nodeStarted = false;
+    private volatile boolean nodeStarted = false;
+
+    private volatile CompletableFuture<StartupOutcome> confirmedOutcome = new CompletableFuture<>();
 
     @Value("${cluster.status.data.path}")
     private String clusterActivityTimeRefPath;
@@ -24,15 +39,38 @@ public class NodeStartup {
     @Value("${cluster.nodes.liveness.ttl.ms}")
     private long ttl;
 
-    private final ZooKeeperSession clusterData;
+    @Value("${cluster.liveness.mode}")
+    private LivenessMode livenessMode;
+
+    @Value("${distributed.startup.coordination}")
+    private StartupCoordination startupCoordination;
+
+    @Value("${distributed.lock.timeout.ms}")
+    private long startupWaitMillis;
+
+    @Value("${node.startup.budget.ms}")
+    private long startupBudgetMillis;
+
+    private final ObjectProvider<ZooKeeperSession> sessions;
 
     private final DistributedLock distributedLock;
 
+    private final ClusterMembership membership;
+
+    private final ClusterStartupTasks startupTasks;
+
+    private final StatusJournal journal;
+
     private final Logger logger = LoggerFactory.getLogger(NodeStartup.class);
 
-    public NodeStartup(@Autowired ZooKeeperSession zooKeeperSession, @Autowired DistributedLock distributedLock) {
-        this.clusterData = zooKeeperSession;
+    public NodeStartup(@Autowired ObjectProvider<ZooKeeperSession> sessions, @Autowired DistributedLock distributedLock,
+                       @Autowired ClusterMembership membership, @Autowired ClusterStartupTasks startupTasks,
+                       @Autowired StatusJournal journal) {
+        this.sessions = sessions;
         this.distributedLock = distributedLock;
+        this.membership = membership;
+        this.startupTasks = startupTasks;
+        this.journal = journal;
     }
 
 
@@ -43,28 +81,306 @@ public class NodeStartup {
      * It do the welcome job if:<br/>
      * (1) Cluster is never marked as started<br/>
      * (2) Cluster is marked as started already but now no other node is connected. Thus getting this node up is kind of restart<br/>
-     * (3) the node is unable to connect to cluster due to network issue
+     * (3) the node is unable to connect to cluster due to network issue, decided within client.connect.budget.ms
+     * as every ZooKeeper call fails fast while the connection is down
      * <br/>
      * <br/>
      * Please note that in case of network failure or lock failure, we want to proceed with startup message
      * Thus ideally taking lock and checking status first, but in case of problems proceeding to print
+     * <br/>
+     * The first check is served from the near cache, the double check under the lock is a synced read
+     * <br/>
+     * With distributed.startup.coordination=create no lock is taken, one conditional create decides the winner
+     * <br/>
+     * Once the cluster is up, the ClusterStartupTask beans not yet done are run, spread over the starting nodes
+     * <br/>
+     * Every phase is emitted as a com.hazelnut.StartupPhase JFR event, and summed up in one log line at the end
+     * <br/>
+     * In TTL mode a restarting node first reads its StatusJournal. If the cluster status it last observed is still
+     * within its TTL, the node joins without reading ZooKeeper, see getConfirmedOutcome() for the reconciliation
+     *
+     * @return outcome of the startup, the caller bootstraps again on NOT_STARTED
+     */
+    public StartupOutcome bootStrapNodeAndCluster() {
+        renewConfirmedOutcome();
+        StartupTimeline timeline = new StartupTimeline(membership.getNodeId());
+        if (timeline.measure(StartupPhase.JOURNAL_READ, this::isClusterUpAsJournaled)) {
+            ExecutorService executor = startupExecutor();
+            reconcileJournaledStartup(timeline, executor).whenComplete((result, e) -> executor.shutdown());
+            return StartupOutcome.JOINED_CLUSTER;
+        }
+        try (ZooKeeperSession session = timeline.measure(StartupPhase.CONNECT, this::openSession)) {
+            return completeStartup(session, timeline.measure(StartupPhase.FIRST_STATUS_READ, () -> isClusterUp(session, false)), timeline);
+        }
+    }
+
+    /**
+     * Non-blocking variant of bootStrapNodeAndCluster()
+     * Connecting runs on a dedicated startup thread, which blocks for at most client.connect.budget.ms on first use
+     * of the shared client. The first status check is then served from the near cache or read by a Curator background
+     * operation, lock or create coordination, if needed, runs on the startup thread again.
+     * The caller is never blocked, the future completes as TIMED_OUT if coordination exceeds
+     * node.startup.budget.ms, in which case it goes on in the background until the node is started
+     *
+     * @return future of the startup outcome of this node, never NOT_STARTED
+     */
+    public CompletableFuture<StartupOutcome> bootStrapNodeAndClusterAsync() {
+        renewConfirmedOutcome();
+        ExecutorService executor = startupExecutor();
+        StartupTimeline timeline = new StartupTimeline(membership.getNodeId());
+        if (timeline.measure(StartupPhase.JOURNAL_READ, this::isClusterUpAsJournaled)) {
+            reconcileJournaledStartup(timeline, executor).whenComplete((result, e) -> executor.shutdown());
+            return CompletableFuture.completedFuture(StartupOutcome.JOINED_CLUSTER);
+        }
+        ZooKeeperSession session = sessions.getObject();
+        CompletableFuture<StartupOutcome> coordination = CompletableFuture.supplyAsync(() -> timeline.measure(StartupPhase.CONNECT, session::open), executor)
+                .thenCompose(opened -> {
+                    StartupTimeline.Phase firstRead = timeline.begin(StartupPhase.FIRST_STATUS_READ);
+                    return isClusterUpAsync(opened).whenComplete((clusterUp, e) -> firstRead.close());
+                })
+                .thenApplyAsync(clusterUp -> completeStartupInBackground(session, clusterUp, timeline), executor)
+                .whenComplete((result, e) -> {
+                    session.close();
+                    executor.shutdown();
+                });
+        return coordination.copy().completeOnTimeout(StartupOutcome.TIMED_OUT, startupBudgetMillis, MILLISECONDS);
+    }
+
+    /**
+     * a bootstrap again after NOT_STARTED keeps the pending future, so callers already waiting on it are not stranded
+     */
+    private void renewConfirmedOutcome() {
+        if (confirmedOutcome.isDone()) {
+            confirmedOutcome = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * every startup path gets a session of its own, so the journal reconciliation never shares one with a later startup
+     */
+    private ZooKeeperSession openSession() {
+        return sessions.getObject().open();
+    }
+
+    private static ExecutorService startupExecutor() {
+        return Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "hazelnut-startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * in TTL mode only, the members of MEMBERSHIP mode are ephemeral and have no TTL to judge a journaled view by
+     *
+     * @return True if the journaled cluster status was refreshed within its TTL
+     */
+    private boolean isClusterUpAsJournaled() {
+        if (livenessMode != LivenessMode.TTL) {
+            return false;
+        }
+        return journal.hasFreshStatusAt(System.currentTimeMillis());
+    }
+
+    /**
+     * confirm the journaled decision by a synced read, and welcome after all if the cluster went down meanwhile
+     * heart beats wait for the confirmation, so a stale journal never keeps an expired status alive
+     * if ZooKeeper is not reachable the journaled decision stands, as any decision is taken without ZooKeeper then
+     */
+    private CompletableFuture<StartupOutcome> reconcileJournaledStartup(StartupTimeline timeline, ExecutorService executor) {
+        logger.info("Joining the cluster as per the status journal, confirming with ZooKeeper in the background.");
+        return CompletableFuture.supplyAsync(() -> {
+            try (ZooKeeperSession session = timeline.measure(StartupPhase.CONNECT, this::openSession)) {
+                boolean clusterUp = true;
+                if (session.isConnected()) {
+                    clusterUp = timeline.measure(StartupPhase.SECOND_STATUS_READ, () -> isClusterUp(session, true));
+                } else {
+                    logger.warn("ZooKeeper not reachable, keeping the startup decision taken from the status journal.");
+                }
+                if (!clusterUp) {
+                    logger.warn("Status journal was outdated, the cluster is not up.");
+                }
+                return completeStartupInBackground(session, clusterUp, timeline);
+            }
+        }, executor).whenComplete((result, e) -> {
+            if (e != null) {
+                logger.warn("Confirming the journaled startup failed.", e);
+                confirmedOutcome.completeExceptionally(e);
+            }
+        });
+    }
+
+    private StartupOutcome completeStartup(ZooKeeperSession session, boolean clusterUp, StartupTimeline timeline) {
+        StartupOutcome outcome = StartupOutcome.JOINED_CLUSTER;
+        if (!clusterUp) {
+            if (startupCoordination == StartupCoordination.CREATE) {
+                outcome = bootStrapClusterByCreate(session, timeline) ? StartupOutcome.STARTED_CLUSTER : StartupOutcome.JOINED_CLUSTER;
+            } else {
+                outcome = bootStrapClusterByLock(session, timeline);
+            }
+        }
+        if (outcome == StartupOutcome.NOT_STARTED) {
+            logger.info("Startup timeline: {}", timeline.summary(outcome));
+            return outcome;
+        }
+        if (livenessMode == LivenessMode.MEMBERSHIP) {
+            timeline.run(StartupPhase.REGISTER, membership::register);
+        }
+        timeline.run(StartupPhase.STARTUP_TASKS, startupTasks::runPending);
+        nodeStarted = true;
+        logger.info("Startup timeline: {}", timeline.summary(outcome));
+        confirmedOutcome.complete(outcome);
+        return outcome;
+    }
+
+    /**
+     * background coordination has no caller to bootstrap again, so it does so itself until the node is started
+     */
+    private StartupOutcome completeStartupInBackground(ZooKeeperSession session, boolean clusterUp, StartupTimeline timeline) {
+        StartupOutcome outcome = completeStartup(session, clusterUp, timeline);
+        while (outcome == StartupOutcome.NOT_STARTED && !Thread.currentThread().isInterrupted()) {
+            logger.warn("Node is not started, bootstrapping again.");
+            outcome = completeStartup(session, timeline.measure(StartupPhase.FIRST_STATUS_READ, () -> isClusterUp(session, true)), timeline);
+        }
+        return outcome;
+    }
+
+    /**
+     * lock, check the status again and mark the cluster as started
+     * <br/>
+     * Only the node finding the lock free goes on, the others don't queue on the lock but wait on a watch
+     * and are all woken by the one notification of the cluster being marked as started.
+     * If no notification arrives in time they fall back to queueing on the lock, and check the status once more
+     * if that times out too. These rounds repeat until the cluster is up or the lock is taken, so a dead holder
+     * whose lock znode lives until its session expired delays the start but does not block it.
+     * The node is NOT_STARTED only once node.startup.budget.ms ran out.
+     * Only while ZooKeeper is not reachable the node starts the cluster without the lock, pessimistically.
      */
-    public void bootStrapNodeAndCluster() {
-
-        try (ZooKeeperSession session = clusterData.open()) {
-            if (!session.getClusterStatus(clusterActivityTimeRefPath)) {
-                try (DistributedLock lock = distributedLock.tryLock()) {
-                    if (!session.getClusterStatus(clusterActivityTimeRefPath)) {
-                        logger.info("We are started!");
-                        session.markClusterAsActive(clusterActivityTimeRefPath, ttl);
-                    }
+    private StartupOutcome bootStrapClusterByLock(ZooKeeperSession session, StartupTimeline timeline) {
+        long deadline = System.nanoTime() + MILLISECONDS.toNanos(startupBudgetMillis);
+        DistributedLock lock = timeline.measure(StartupPhase.LOCK_ACQUIRE, () -> distributedLock.tryLock(0));
+        try {
+            if (lock.isLocked()) {
+                return welcomeIfClusterIsNotUp(session, timeline) ? StartupOutcome.STARTED_CLUSTER : StartupOutcome.JOINED_CLUSTER;
+            }
+        } finally {
+            timeline.run(StartupPhase.LOCK_RELEASE, lock::close);
+        }
+        long roundBegin;
+        do {
+            roundBegin = System.nanoTime();
+            if (timeline.measure(StartupPhase.AWAIT_STATUS, () -> awaitClusterUp(session))) {
+                return StartupOutcome.JOINED_CLUSTER;
+            }
+            lock = timeline.measure(StartupPhase.LOCK_ACQUIRE, distributedLock::tryLock);
+            try {
+                if (lock.isLocked()) {
+                    return welcomeIfClusterIsNotUp(session, timeline) ? StartupOutcome.STARTED_CLUSTER : StartupOutcome.JOINED_CLUSTER;
                 }
+            } finally {
+                timeline.run(StartupPhase.LOCK_RELEASE, lock::close);
+            }
+            if (!session.isConnected()) {
+                logger.warn("ZooKeeper not reachable, starting the cluster pessimistically without the lock.");
+                return welcomeIfClusterIsNotUp(session, timeline) ? StartupOutcome.STARTED_CLUSTER : StartupOutcome.JOINED_CLUSTER;
+            }
+            if (timeline.measure(StartupPhase.SECOND_STATUS_READ, () -> isClusterUp(session, true))) {
+                return StartupOutcome.JOINED_CLUSTER;
+            }
+        } while (awaitNextRound(roundBegin, deadline));
+        logger.warn("Cluster is not up and the startup lock was not acquired within node.startup.budget.ms, this node is not started.");
+        return StartupOutcome.NOT_STARTED;
+    }
+
+    /**
+     * a round ending early, e.g. as every call fails fast while the circuit breaker is open, is padded
+     * to distributed.lock.timeout.ms so rounds never spin
+     *
+     * @return True if there is budget left for another round
+     */
+    private boolean awaitNextRound(long roundBegin, long deadline) {
+        long pause = Math.min(roundBegin + MILLISECONDS.toNanos(startupWaitMillis), deadline) - System.nanoTime();
+        try {
+            if (pause > 0) {
+                NANOSECONDS.sleep(pause);
             }
-            nodeStarted = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return System.nanoTime() - deadline < 0;
+    }
+
+    private boolean welcomeIfClusterIsNotUp(ZooKeeperSession session, StartupTimeline timeline) {
+        if (!timeline.measure(StartupPhase.SECOND_STATUS_READ, () -> isClusterUp(session, true))) {
+            logger.info("We are started!");
+            timeline.run(StartupPhase.MARK_ACTIVE, () -> markClusterAsUp(session));
+            return true;
+        }
+        return false;
+    }
+
+    private boolean awaitClusterUp(ZooKeeperSession session) {
+        if (livenessMode == LivenessMode.MEMBERSHIP) {
+            return membership.awaitLiveMembers(startupWaitMillis);
+        }
+        return session.awaitClusterStatus(clusterActivityTimeRefPath, startupWaitMillis);
+    }
+
+    /**
+     * decide the winner by one conditional create, losers don't wait for anything
+     * in TTL mode the status znode is created only if absent
+     * in MEMBERSHIP mode the oldest of the sequential member znodes wins
+     */
+    private boolean bootStrapClusterByCreate(ZooKeeperSession session, StartupTimeline timeline) {
+        boolean won = timeline.measure(StartupPhase.CONDITIONAL_CREATE, () -> livenessMode == LivenessMode.MEMBERSHIP
+                ? membership.registerAndCheckIfFirst()
+                : session.tryMarkClusterAsActive(clusterActivityTimeRefPath, ttl));
+        if (won) {
+            logger.info("We are started!");
+        }
+        return won;
+    }
+
+    /**
+     * in TTL mode the cluster is up while the status znode lives
+     * in MEMBERSHIP mode the cluster is up while any node is registered as member
+     */
+    private boolean isClusterUp(ZooKeeperSession session, boolean synced) {
+        if (livenessMode == LivenessMode.MEMBERSHIP) {
+            return membership.hasLiveMembers(synced);
+        }
+        return synced ? session.getSyncedClusterStatus(clusterActivityTimeRefPath) : session.getClusterStatus(clusterActivityTimeRefPath);
+    }
+
+    private CompletableFuture<Boolean> isClusterUpAsync(ZooKeeperSession session) {
+        if (livenessMode == LivenessMode.MEMBERSHIP) {
+            return membership.hasLiveMembersAsync();
+        }
+        return session.getClusterStatusAsync(clusterActivityTimeRefPath);
+    }
+
+    private void markClusterAsUp(ZooKeeperSession session) {
+        if (livenessMode == LivenessMode.MEMBERSHIP) {
+            membership.registerAsFirst();
+        } else {
+            session.markClusterAsActive(clusterActivityTimeRefPath, ttl);
         }
     }
 
     public boolean isNodeStarted() {
         return nodeStarted;
     }
+
+    /**
+     * outcome of the startup as confirmed by ZooKeeper
+     * the same as returned by bootStrapNodeAndClusterAsync(), unless that was decided from the status journal
+     * a journaled JOINED_CLUSTER is confirmed, or turns into STARTED_CLUSTER if the cluster went down meanwhile
+     *
+     * @return future completing once startup is complete, isNodeStarted() is True by then
+     * it stays pending while the node is NOT_STARTED, and completes with the outcome of the bootstrap that started it
+     */
+    public CompletableFuture<StartupOutcome> getConfirmedOutcome() {
+        return confirmedOutcome;
+    }
 }
@@ -0,0 +1,24 @@
+package com.hazelnut.node;
+
+/**
+ * Outcome of bootstrapping this node as seen by the caller
+ */
+public enum StartupOutcome {
+    /**
+     * this node found the cluster down and did the welcome job
+     */
+    STARTED_CLUSTER,
+    /**
+     * the cluster was already up or was started by another node
+     */
+    JOINED_CLUSTER,
+    /**
+     * the cluster is down and this node could not take the lock within node.startup.budget.ms to start it,
+     * the node is not started and the caller of bootStrapNodeAndCluster() bootstraps again
+     */
+    NOT_STARTED,
+    /**
+     * coordination did not complete within node.startup.budget.ms, it goes on in the background
+     */
+    TIMED_OUT
+}
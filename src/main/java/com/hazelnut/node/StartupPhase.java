@@ -0,0 +1,51 @@
+package com.hazelnut.node;
+
+/**
+ * Steps of bootstrapping a node, in the order they can happen
+ */
+public enum StartupPhase {
+    /**
+     * read the local status journal, a fresh entry makes the ZooKeeper reads below a background confirmation
+     */
+    JOURNAL_READ,
+    /**
+     * open the session over the shared ZooKeeper connection
+     */
+    CONNECT,
+    /**
+     * first, possibly cached, check of the cluster status
+     */
+    FIRST_STATUS_READ,
+    /**
+     * take the startup lock, either without waiting or queueing on it
+     */
+    LOCK_ACQUIRE,
+    /**
+     * wait on the status watch for another node to start the cluster
+     */
+    AWAIT_STATUS,
+    /**
+     * synced check of the cluster status while holding the lock
+     */
+    SECOND_STATUS_READ,
+    /**
+     * mark the cluster as started, by the welcoming node only
+     */
+    MARK_ACTIVE,
+    /**
+     * conditional create deciding the welcoming node without a lock
+     */
+    CONDITIONAL_CREATE,
+    /**
+     * give the startup lock back
+     */
+    LOCK_RELEASE,
+    /**
+     * register this node as live member
+     */
+    REGISTER,
+    /**
+     * run the once-per-cluster startup tasks together with the other starting nodes
+     */
+    STARTUP_TASKS
+}
@@ -0,0 +1,26 @@
+package com.hazelnut.node;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.hazelnut.StartupPhase")
+@Label("Startup Phase")
+@Category({"Hazelnut", "Startup"})
+@Description("One step of bootstrapping a node and the cluster")
+@StackTrace(false)
+/**
+ * JFR event timing one startup phase, the duration is the event duration
+ * Disabled unless a recording enables it, then begin() and commit() are close to free
+ */
+class StartupPhaseEvent extends Event {
+
+    @Label("Node")
+    String nodeId;
+
+    @Label("Phase")
+    String phase;
+}
@@ -0,0 +1,112 @@
+package com.hazelnut.node;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Per phase timeline of one node startup
+ * Every phase is emitted as a StartupPhaseEvent to Java Flight Recorder, and summed up for the summary log line.
+ * Phases run one after the other but may end on another thread than they began on.
+ */
+class StartupTimeline {
+
+    private final String nodeId;
+
+    private final long beginNanos = System.nanoTime();
+
+    private final Map<StartupPhase, Long> phaseNanos = new EnumMap<>(StartupPhase.class);
+
+    StartupTimeline(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * begin timing a phase, the phase ends when closed
+     *
+     * @param phase
+     * @return the running phase
+     */
+    Phase begin(StartupPhase phase) {
+        return new Phase(phase);
+    }
+
+    /**
+     * time a step returning a value
+     */
+    <T> T measure(StartupPhase phase, Supplier<T> step) {
+        Phase running = begin(phase);
+        try {
+            return step.get();
+        } finally {
+            running.close();
+        }
+    }
+
+    /**
+     * time a step returning nothing
+     */
+    void run(StartupPhase phase, Runnable step) {
+        Phase running = begin(phase);
+        try {
+            step.run();
+        } finally {
+            running.close();
+        }
+    }
+
+    /**
+     * @return time spent in the phase, summed up if it ran more than once, or -1 if it never ran
+     */
+    synchronized long getPhaseNanos(StartupPhase phase) {
+        return phaseNanos.getOrDefault(phase, -1L);
+    }
+
+    /**
+     * @param outcome
+     * @return one line key=value summary of the phases that ran, in milliseconds
+     */
+    synchronized String summary(StartupOutcome outcome) {
+        StringJoiner line = new StringJoiner(" ");
+        line.add("outcome=" + outcome);
+        line.add("total_ms=" + NANOSECONDS.toMillis(System.nanoTime() - beginNanos));
+        phaseNanos.forEach((phase, nanos) -> line.add(phase.name().toLowerCase() + "_ms=" + NANOSECONDS.toMillis(nanos)));
+        return line.toString();
+    }
+
+    private synchronized void add(StartupPhase phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * One running phase
+     */
+    final class Phase implements AutoCloseable {
+
+        private final StartupPhase phase;
+
+        private final StartupPhaseEvent event = new StartupPhaseEvent();
+
+        private final long phaseBeginNanos;
+
+        private Phase(StartupPhase phase) {
+            this.phase = phase;
+            event.begin();
+            this.phaseBeginNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            add(phase, System.nanoTime() - phaseBeginNanos);
+            event.end();
+            if (event.shouldCommit()) {
+                event.nodeId = nodeId;
+                event.phase = phase.name();
+                event.commit();
+            }
+        }
+    }
+}
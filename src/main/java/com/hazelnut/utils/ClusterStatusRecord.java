@@ -0,0 +1,125 @@
+package com.hazelnut.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Content of the cluster status znode: who started the cluster, when, and when it was last refreshed
+ * <br/>
+ * Instances are mutable so one can be reused for every encode and decode by DataMapper, without allocation
+ * Not thread safe
+ */
+public final class ClusterStatusRecord {
+
+    /**
+     * longest starter node id kept, longer ids are cut at the last whole character
+     */
+    public static final int MAX_NODE_ID_BYTES = 64;
+
+    private int schemaVersion = DataMapper.STATUS_SCHEMA_VERSION;
+
+    private boolean started;
+
+    private long epochMillis;
+
+    private long refreshedAtMillis;
+
+    private long ttlMillis;
+
+    private final byte[] starterNodeId = new byte[MAX_NODE_ID_BYTES];
+
+    private int starterNodeIdLength;
+
+    /**
+     * begin a new epoch of the cluster, started by the given node
+     *
+     * @param nodeId    id of the starting node
+     * @param nowMillis wall clock time of the start
+     * @param ttlMillis time after the last refresh the status is considered gone, 0 for never
+     * @return this record
+     */
+    public ClusterStatusRecord start(String nodeId, long nowMillis, long ttlMillis) {
+        byte[] id = nodeId.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(id.length, MAX_NODE_ID_BYTES);
+        while (length < id.length && (id[length] & 0xc0) == 0x80) {
+            length--;
+        }
+        starterNodeIdLength = length;
+        System.arraycopy(id, 0, starterNodeId, 0, starterNodeIdLength);
+        schemaVersion = DataMapper.STATUS_SCHEMA_VERSION;
+        started = true;
+        epochMillis = nowMillis;
+        return refresh(nowMillis, ttlMillis);
+    }
+
+    /**
+     * mark the status as refreshed by a heart beat, keeping epoch and starter
+     *
+     * @return this record
+     */
+    public ClusterStatusRecord refresh(long nowMillis, long ttlMillis) {
+        this.refreshedAtMillis = nowMillis;
+        this.ttlMillis = ttlMillis;
+        return this;
+    }
+
+    /**
+     * a record counts as live until it was not refreshed for its ttl plus another ttl of tolerance for clock skew
+     * between nodes. Records of schema version 0, i.e. the plain boolean, carry no time and are live while started.
+     *
+     * @param nowMillis wall clock time of the reader
+     * @return True if the cluster is started and its status not stale
+     */
+    public boolean isLiveAt(long nowMillis) {
+        return started && (ttlMillis <= 0 || nowMillis - refreshedAtMillis <= 2 * ttlMillis);
+    }
+
+    void set(int schemaVersion, boolean started, long epochMillis, long refreshedAtMillis, long ttlMillis) {
+        this.schemaVersion = schemaVersion;
+        this.started = started;
+        this.epochMillis = epochMillis;
+        this.refreshedAtMillis = refreshedAtMillis;
+        this.ttlMillis = ttlMillis;
+    }
+
+    byte[] starterNodeIdBuffer() {
+        return starterNodeId;
+    }
+
+    void setStarterNodeIdLength(int length) {
+        this.starterNodeIdLength = length;
+    }
+
+    int getStarterNodeIdLength() {
+        return starterNodeIdLength;
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return wall clock time the current epoch of the cluster began, 0 if unknown
+     */
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public long getRefreshedAtMillis() {
+        return refreshedAtMillis;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * @return id of the node that started the current epoch, empty if unknown
+     */
+    public String getStarterNodeId() {
+        return new String(starterNodeId, 0, starterNodeIdLength, StandardCharsets.UTF_8);
+    }
+}
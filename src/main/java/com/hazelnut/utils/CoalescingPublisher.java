@@ -0,0 +1,213 @@
+package com.hazelnut.utils;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Flow.Publisher that holds at most one pending item per key for each subscriber
+ * <br/>
+ * An item submitted while an older one of the same key still waits for demand replaces it, merged as per the merge
+ * function, and goes to the end of the queue. So a slow subscriber gets the latest item of each key instead of every
+ * intermediate one, and its buffer is bounded by the number of distinct keys, however bursty the items.
+ * <br/>
+ * Items are delivered on the executor, in order and one at a time per subscriber, only as requested.
+ * submit() never blocks, it is safe to call from a ZooKeeper event thread.
+ *
+ * @param <T> type of the items
+ */
+public class CoalescingPublisher<T> implements Flow.Publisher<T>, Closeable {
+
+    private final Executor executor;
+
+    private final Function<? super T, ?> keyOf;
+
+    private final BinaryOperator<T> merge;
+
+    private final Set<CoalescingSubscription> subscriptions = new CopyOnWriteArraySet<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param executor to deliver items on
+     * @param keyOf    items of equal keys are coalesced
+     * @param merge    combines a pending item, the first argument, with the newer one replacing it
+     */
+    public CoalescingPublisher(Executor executor, Function<? super T, ?> keyOf, BinaryOperator<T> merge) {
+        this.executor = executor;
+        this.keyOf = keyOf;
+        this.merge = merge;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        subscribe(subscriber, () -> null);
+    }
+
+    /**
+     * subscribe and queue an item for this subscriber only, e.g. the current state for a late subscriber
+     * the item is taken once the subscriber already gets submitted items, so no item in between is missed
+     *
+     * @param initial supplies the first item of the subscriber, null for none
+     */
+    public void subscribe(Flow.Subscriber<? super T> subscriber, Supplier<? extends T> initial) {
+        CoalescingSubscription subscription = new CoalescingSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        T item = initial.get();
+        if (item != null) {
+            subscription.offer(item);
+        }
+        if (closed) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * offer the item to every current subscriber
+     *
+     * @param item to be published
+     */
+    public void submit(T item) {
+        if (closed) {
+            return;
+        }
+        for (CoalescingSubscription subscription : subscriptions) {
+            subscription.offer(item);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * complete every subscriber once it got the items still pending, later items are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (CoalescingSubscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    private final class CoalescingSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final Map<Object, T> pending = new LinkedHashMap<>();
+
+        private long demand = 0;
+
+        private boolean done = false;
+
+        private boolean scheduled = false;
+
+        private Throwable failure = null;
+
+        private CoalescingSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void offer(T item) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                Object key = keyOf.apply(item);
+                T older = pending.remove(key);
+                pending.put(key, older == null ? item : merge.apply(older, item));
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    failure = new IllegalArgumentException("Non-positive request of " + n + " items.");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                done = true;
+                pending.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (scheduled || done) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                cancel();
+            }
+        }
+
+        /**
+         * deliver while there are demand and items, then the terminal signal if due
+         */
+        @Override
+        public void run() {
+            while (true) {
+                T next = null;
+                Throwable error;
+                boolean complete = false;
+                synchronized (this) {
+                    error = failure;
+                    if (done) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (error == null && demand > 0 && !pending.isEmpty()) {
+                        Iterator<T> items = pending.values().iterator();
+                        next = items.next();
+                        items.remove();
+                        demand--;
+                    } else if (error == null && closed && pending.isEmpty()) {
+                        complete = true;
+                    } else if (error == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                if (next != null) {
+                    try {
+                        subscriber.onNext(next);
+                    } catch (RuntimeException e) {
+                        cancel();
+                    }
+                    continue;
+                }
+                cancel();
+                if (complete) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(error);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.hazelnut.utils;
+
+import java.util.function.Function;
+
+/**
+ * Conversion of values to and from the bytes of a znode, see DataMapper for the stock codecs
+ *
+ * @param <T> type of the values
+ */
+public interface Codec<T> {
+
+    /**
+     * @param value to be converted, never null
+     * @return the bytes stored in ZooKeeper
+     */
+    byte[] encode(T value);
+
+    /**
+     * @param bytes as read from ZooKeeper, never null
+     * @return the value
+     * @throws IllegalArgumentException if the bytes are no value of this codec
+     */
+    T decode(byte[] bytes);
+
+    static <T> Codec<T> of(Function<? super T, byte[]> encoder, Function<byte[], ? extends T> decoder) {
+        return new Codec<>() {
+            @Override
+            public byte[] encode(T value) {
+                return encoder.apply(value);
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                return decoder.apply(bytes);
+            }
+        };
+    }
+}
@@ -1,11 +1,46 @@
 package com.hazelnut.utils;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Utility class to convert other data types to and from byte array
  * byte array is required format to send data over network to ZooKeeper
+ * <br/>
+ * The cluster status is a fixed layout record, big endian:
+ * <pre>
+ * 0  schema version  1 byte
+ * 1  flags           1 byte, bit 0 = started
+ * 2  epoch millis    8 bytes
+ * 10 refreshed at    8 bytes
+ * 18 ttl millis      8 bytes
+ * 26 node id length  1 byte
+ * 27 starter node id 64 bytes, UTF-8, zero padded
+ * </pre>
+ * A single byte status, as written by booleanToBytes(), is read as schema version 0
+ * Newer schema versions only append fields, so their known prefix is read as above and the rest is kept as is
+ * <br/>
+ * The codecs below store values of the ClusterStore, other types plug in their own Codec
  */
 public class DataMapper {
 
+    public static final int STATUS_SCHEMA_VERSION = 1;
+
+    public static final int STATUS_RECORD_LENGTH = 27 + ClusterStatusRecord.MAX_NODE_ID_BYTES;
+
+    private static final int STARTED = 1;
+
+    public static final Codec<Boolean> BOOLEAN = Codec.of(DataMapper::booleanToBytes, DataMapper::bytesToBoolean);
+
+    /**
+     * 8 bytes, big endian
+     */
+    public static final Codec<Long> LONG = Codec.of(DataMapper::longToBytes, DataMapper::bytesToLong);
+
+    public static final Codec<String> STRING = Codec.of(value -> value.getBytes(StandardCharsets.UTF_8),
+            bytes -> new String(bytes, StandardCharsets.UTF_8));
+
+    public static final Codec<byte[]> BYTES = Codec.of(byte[]::clone, byte[]::clone);
+
     private DataMapper() {
     }
 
@@ -29,4 +64,139 @@ public class DataMapper {
         return bytes.length == 1 && (byte) 1 == bytes[0];
     }
 
+    /**
+     * Convert long to byte array, big endian
+     *
+     * @param value to be converted
+     * @return the converted as 8 bytes
+     */
+    public static byte[] longToBytes(long value) {
+        byte[] bytes = new byte[8];
+        writeLong(bytes, 0, value);
+        return bytes;
+    }
+
+    /**
+     * convert byte array to long
+     *
+     * @param bytes as written by longToBytes()
+     * @return converted long
+     * @throws IllegalArgumentException if the bytes are not 8 long
+     */
+    public static long bytesToLong(byte[] bytes) {
+        if (bytes.length != 8) {
+            throw new IllegalArgumentException("Long needs 8 bytes, got " + bytes.length);
+        }
+        return readLong(bytes, 0);
+    }
+
+    /**
+     * encode the status record into the caller's buffer, allocation free
+     *
+     * @param record to be converted
+     * @param buffer at least STATUS_RECORD_LENGTH long
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the buffer is too small
+     */
+    public static int writeStatus(ClusterStatusRecord record, byte[] buffer) {
+        if (buffer.length < STATUS_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Status buffer needs " + STATUS_RECORD_LENGTH + " bytes, got " + buffer.length);
+        }
+        buffer[0] = (byte) STATUS_SCHEMA_VERSION;
+        buffer[1] = (byte) (record.isStarted() ? STARTED : 0);
+        writeLong(buffer, 2, record.getEpochMillis());
+        writeLong(buffer, 10, record.getRefreshedAtMillis());
+        writeLong(buffer, 18, record.getTtlMillis());
+        int length = record.getStarterNodeIdLength();
+        buffer[26] = (byte) length;
+        System.arraycopy(record.starterNodeIdBuffer(), 0, buffer, 27, length);
+        for (int i = 27 + length; i < STATUS_RECORD_LENGTH; i++) {
+            buffer[i] = 0;
+        }
+        return STATUS_RECORD_LENGTH;
+    }
+
+    /**
+     * decode the status into the caller's record, allocation free
+     * a single byte status is decoded as schema version 0 without epoch, times or starter
+     * a status of a newer schema version is decoded as far as this layout goes, the record keeps its schema version
+     *
+     * @param bytes  as read from the status znode
+     * @param record to be filled
+     * @return False if the bytes are no status at all, the record is then not started
+     */
+    public static boolean readStatus(byte[] bytes, ClusterStatusRecord record) {
+        record.setStarterNodeIdLength(0);
+        if (bytes != null && bytes.length == 1) {
+            record.set(0, bytesToBoolean(bytes), 0, 0, 0);
+            return true;
+        }
+        if (!isStatusRecord(bytes)) {
+            record.set(0, false, 0, 0, 0);
+            return false;
+        }
+        record.set(bytes[0] & 0xff, (bytes[1] & STARTED) != 0, readLong(bytes, 2), readLong(bytes, 10), readLong(bytes, 18));
+        int length = Math.min(bytes[26] & 0xff, ClusterStatusRecord.MAX_NODE_ID_BYTES);
+        System.arraycopy(bytes, 27, record.starterNodeIdBuffer(), 0, length);
+        record.setStarterNodeIdLength(length);
+        return true;
+    }
+
+    /**
+     * check the status without decoding it into a record
+     *
+     * @param bytes     as read from the status znode
+     * @param nowMillis wall clock time of the reader
+     * @return True if the status is started and not stale, as per ClusterStatusRecord.isLiveAt()
+     */
+    public static boolean isLiveStatus(byte[] bytes, long nowMillis) {
+        if (bytes == null) {
+            return false;
+        }
+        if (bytes.length == 1) {
+            return bytesToBoolean(bytes);
+        }
+        if (!isStatusRecord(bytes) || (bytes[1] & STARTED) == 0) {
+            return false;
+        }
+        long ttlMillis = readLong(bytes, 18);
+        return ttlMillis <= 0 || nowMillis - readLong(bytes, 10) <= 2 * ttlMillis;
+    }
+
+    /**
+     * refresh a status in place, keeping epoch, starter and any fields of a newer schema version
+     *
+     * @param bytes             status record of schema version 1 or newer, as read from the status znode
+     * @param refreshedAtMillis wall clock time of the heart beat
+     * @param ttlMillis         time after the refresh the status is considered gone, 0 for never
+     * @return the bytes
+     */
+    public static byte[] refreshStatus(byte[] bytes, long refreshedAtMillis, long ttlMillis) {
+        if (!isStatusRecord(bytes)) {
+            throw new IllegalArgumentException("Status to refresh needs schema version 1 or newer.");
+        }
+        writeLong(bytes, 10, refreshedAtMillis);
+        writeLong(bytes, 18, ttlMillis);
+        return bytes;
+    }
+
+    private static boolean isStatusRecord(byte[] bytes) {
+        return bytes != null && bytes.length >= STATUS_RECORD_LENGTH && (bytes[0] & 0xff) >= STATUS_SCHEMA_VERSION;
+    }
+
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
 }
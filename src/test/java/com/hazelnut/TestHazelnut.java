@@ -0,0 +1,56 @@
+package com.hazelnut;
+
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.node.StartupOutcome;
+import com.hazelnut.node.preps.RecordingStartupTask;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestHazelnut {
+
+    private static Hazelnut.Builder unreachableZooKeeper() {
+        return Hazelnut.builder()
+                .connectString("127.0.0.1:1")
+                .clusterId("embedded")
+                .property("client.connect.budget.ms", 300);
+    }
+
+    @Test
+    //The builder wires a working node without Spring Boot, with ZooKeeper down it starts the cluster pessimistically
+    void testBuilderStartsNodeWithoutSpringBoot() {
+        List<String> runs = new CopyOnWriteArrayList<>();
+
+        try (Hazelnut hazelnut = unreachableZooKeeper()
+                .nodeId("embedded-1")
+                .livenessMode(LivenessMode.TTL)
+                .startupTask(new RecordingStartupTask("schema", Set.of(), runs, List.of()))
+                .start()) {
+
+            assertTrue(hazelnut.getStartup().isDone());
+            assertEquals(StartupOutcome.STARTED_CLUSTER, hazelnut.getStartup().join());
+            assertTrue(hazelnut.getNodeStartup().isNodeStarted());
+            assertEquals(List.of("schema"), runs);
+            assertFalse(hazelnut.getLockRegistry().getLock("orders").tryLock(100).isLocked());
+        }
+    }
+
+    @Test
+    //Properties are bound as in the application, e.g. enums in lower case, and startup may complete in the background
+    void testBuilderTakesApplicationPropertiesAndAsyncStartup() {
+        try (Hazelnut hazelnut = unreachableZooKeeper()
+                .property("cluster.liveness.mode", "membership")
+                .property("distributed.startup.coordination", "create")
+                .asyncStartup(true)
+                .start()) {
+
+            assertEquals(StartupOutcome.STARTED_CLUSTER, hazelnut.getStartup().join());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.hazelnut.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestLatencyHistogram {
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 3, 4, 7, 8, 1000, 999_999, 1L << 40, Long.MAX_VALUE})
+    void testValueFallsInItsBucket(long value) {
+        int index = LatencyHistogram.indexOf(value);
+        assertTrue(LatencyHistogram.lowerBoundOf(index) <= value);
+        assertTrue(value < LatencyHistogram.lowerBoundOf(index + 1) || index == LatencyHistogram.indexOf(Long.MAX_VALUE));
+        assertTrue(LatencyHistogram.lowerBoundOf(index) >= value - value / 4);
+    }
+
+    @Test
+    void testPercentilesAreWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_500, histogram.getMeanNanos());
+        assertBetween(histogram.getPercentileNanos(50), 375_000, 500_000);
+        assertBetween(histogram.getPercentileNanos(99), 742_500, 990_000);
+        assertEquals(1_000_000, histogram.getPercentileNanos(100), 250_000);
+    }
+
+    @Test
+    void testEmptyAndNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0, histogram.getMeanNanos());
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    private void assertBetween(long actual, long low, long high) {
+        assertTrue(actual >= low && actual <= high, actual + " not in [" + low + ", " + high + "]");
+    }
+}
@@ -0,0 +1,208 @@
+package com.hazelnut.node;
+
+import com.hazelnut.Hazelnut;
+import com.hazelnut.cluster.ClusterEvent;
+import com.hazelnut.cluster.ClusterEventType;
+import com.hazelnut.cluster.ClusterEvents;
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.node.preps.CommonTestUtils;
+import com.hazelnut.utils.DataMapper;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cluster events driven by the watches of nodes on an in-process ZooKeeper server
+ */
+class TestClusterEvents extends CommonTestUtils {
+
+    private static final String STATUS_PATH = "/events/startup_status";
+
+    private static final long SHORT_TTL_MILLIS = 100;
+
+    private TestingServer server;
+
+    private CuratorFramework zooKeeper;
+
+    private final List<Hazelnut> running = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        System.setProperty("zookeeper.extendedTypesEnabled", "true");
+        server = new TestingServer(true);
+        zooKeeper = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        zooKeeper.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        running.forEach(Hazelnut::close);
+        running.clear();
+        zooKeeper.close();
+        server.close();
+    }
+
+    @Test
+    //A subscriber first gets the cluster as started, then its expiry once no heart beat refreshed it in time
+    void testStatusStartedAndExpiredInTtlMode() throws Exception {
+        ClusterEvents events = startNode("node-1", LivenessMode.TTL).getEvents();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        events.subscribe(subscriber);
+
+        ClusterEvent started = subscriber.next(ClusterEventType.CLUSTER_STARTED);
+        assertEquals("node-1", started.getNodeId());
+        assertTrue(events.isClusterUp());
+
+        shortenStatusTtl();
+        events.checkStatusExpiry();
+        subscriber.next(ClusterEventType.CLUSTER_EXPIRED);
+        assertFalse(events.isClusterUp());
+    }
+
+    @Test
+    //A subscriber coming after the cluster started is told so first
+    void testLateSubscriberGetsTheCurrentState() throws Exception {
+        ClusterEvents events = startNode("node-1", LivenessMode.TTL).getEvents();
+        RecordingSubscriber first = new RecordingSubscriber();
+        events.subscribe(first);
+        first.next(ClusterEventType.CLUSTER_STARTED);
+
+        RecordingSubscriber late = new RecordingSubscriber();
+        events.subscribe(late);
+
+        assertEquals("node-1", late.next(ClusterEventType.CLUSTER_STARTED).getNodeId());
+    }
+
+    @Test
+    //Without subscribers the expiry is not polled, the cluster stays up as last seen
+    void testExpiryIsNotPolledWithoutSubscribers() throws Exception {
+        ClusterEvents events = startNode("node-1", LivenessMode.TTL).getEvents();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        events.subscribe(subscriber);
+        subscriber.next(ClusterEventType.CLUSTER_STARTED);
+        subscriber.subscription.cancel();
+        assertEquals(0, events.getSubscriberCount());
+
+        shortenStatusTtl();
+        events.checkStatusExpiry();
+
+        assertTrue(events.isClusterUp());
+    }
+
+    @Test
+    //Members joining and leaving are published one by one
+    void testMembersJoinAndLeaveInMembershipMode() throws Exception {
+        ClusterEvents events = startNode("watcher", LivenessMode.MEMBERSHIP).getEvents();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        events.subscribe(subscriber);
+        subscriber.next(ClusterEventType.CLUSTER_STARTED);
+
+        Hazelnut member = startNode("member-1", LivenessMode.MEMBERSHIP);
+        assertEquals("member-1", subscriber.next(ClusterEventType.NODE_JOINED).getNodeId());
+
+        member.close();
+        running.remove(member);
+        assertEquals("member-1", subscriber.next(ClusterEventType.NODE_LEFT).getNodeId());
+        assertTrue(events.isClusterUp());
+    }
+
+    @Test
+    //The connection to ZooKeeper is lost once the server is down for the session timeout, and restored with it
+    void testConnectionLostAndRestored() throws Exception {
+        ClusterEvents events = startNode("node-1", LivenessMode.TTL).getEvents();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        events.subscribe(subscriber);
+        subscriber.next(ClusterEventType.CLUSTER_STARTED);
+
+        server.stop();
+        subscriber.next(ClusterEventType.CONNECTION_LOST);
+
+        server.restart();
+        subscriber.next(ClusterEventType.CONNECTION_RESTORED);
+    }
+
+    private Hazelnut startNode(String nodeId, LivenessMode livenessMode) {
+        Hazelnut node = Hazelnut.builder()
+                .connectString(server.getConnectString())
+                .clusterId("events")
+                .nodeId(nodeId)
+                .livenessMode(livenessMode)
+                .property("cluster.nodes.liveness.ttl.ms", 60_000)
+                .property("node.liveness.reporting.time.ms", 60_000)
+                .property("client.session.timeout.ms", 2000)
+                .property("client.connection.timeout.ms", 1000)
+                .property("client.connect.budget.ms", 5000)
+                .property("client.retry.max.time.ms", 500)
+                .start();
+        running.add(node);
+        return node;
+    }
+
+    /**
+     * as if the last heart beat had been given a short ttl, and wait until it ran out without a watch notification
+     */
+    private void shortenStatusTtl() throws Exception {
+        byte[] status = zooKeeper.getData().forPath(STATUS_PATH);
+        zooKeeper.setData().forPath(STATUS_PATH, DataMapper.refreshStatus(status, System.currentTimeMillis(), SHORT_TTL_MILLIS));
+        Thread.sleep(3 * SHORT_TTL_MILLIS);
+    }
+
+    /**
+     * requests every event, and hands them out to the test thread as they arrive
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<ClusterEvent> {
+
+        private final BlockingQueue<ClusterEvent> events = new LinkedBlockingQueue<>();
+
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ClusterEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        /**
+         * @return the next event of the type, events of other types before it are skipped
+         */
+        private ClusterEvent next(ClusterEventType type) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (true) {
+                ClusterEvent event = events.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                assertNotNull(event, "No " + type + " event within 10 seconds.");
+                if (event.getType() == type) {
+                    return event;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.hazelnut.node;
+
+import com.hazelnut.Hazelnut;
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.cluster.StartupCoordination;
+import com.hazelnut.node.preps.CommonTestUtils;
+import com.hazelnut.node.preps.RecordingStartupTask;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Startup tasks run once per cluster start in membership mode, against an in-process ZooKeeper server
+ */
+class TestClusterGenerations extends CommonTestUtils {
+
+    private static TestingServer server;
+
+    private final List<String> runs = new CopyOnWriteArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        System.setProperty("zookeeper.extendedTypesEnabled", "true");
+        server = new TestingServer(true);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    //A node joining the running cluster finds the tasks done
+    void testJoiningNodeDoesNotRunTasksAgain() {
+        try (Hazelnut first = startNode("joined", StartupCoordination.LOCK);
+             Hazelnut second = startNode("joined", StartupCoordination.LOCK)) {
+
+            assertEquals(StartupOutcome.STARTED_CLUSTER, first.getStartup().join());
+            assertEquals(StartupOutcome.JOINED_CLUSTER, second.getStartup().join());
+            assertEquals(List.of("schema"), runs);
+        }
+    }
+
+    @Test
+    //The members container outlives the last member for a while, a cluster started again meanwhile still runs its tasks
+    void testRestartWhileMembersContainerExistsRunsTasksAgain() throws Exception {
+        startNode("restarted", StartupCoordination.LOCK).close();
+        assertMembersContainerExists("restarted");
+
+        try (Hazelnut restarted = startNode("restarted", StartupCoordination.LOCK)) {
+            assertEquals(StartupOutcome.STARTED_CLUSTER, restarted.getStartup().join());
+        }
+        assertEquals(List.of("schema", "schema"), runs);
+    }
+
+    @Test
+    //The same with the winner decided by the oldest member znode instead of the lock
+    void testRestartWhileMembersContainerExistsRunsTasksAgainByCreate() throws Exception {
+        startNode("recreated", StartupCoordination.CREATE).close();
+        assertMembersContainerExists("recreated");
+
+        try (Hazelnut restarted = startNode("recreated", StartupCoordination.CREATE)) {
+            assertEquals(StartupOutcome.STARTED_CLUSTER, restarted.getStartup().join());
+        }
+        assertEquals(List.of("schema", "schema"), runs);
+    }
+
+    private Hazelnut startNode(String clusterId, StartupCoordination coordination) {
+        return Hazelnut.builder()
+                .connectString(server.getConnectString())
+                .clusterId(clusterId)
+                .livenessMode(LivenessMode.MEMBERSHIP)
+                .startupCoordination(coordination)
+                .startupTask(new RecordingStartupTask("schema", Set.of(), runs, List.of()))
+                .property("client.session.timeout.ms", 10000)
+                .property("client.connection.timeout.ms", 5000)
+                .property("client.connect.budget.ms", 5000)
+                .property("client.retry.max.time.ms", 500)
+                .start();
+    }
+
+    private static void assertMembersContainerExists(String clusterId) throws Exception {
+        try (CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100))) {
+            client.start();
+            assertNotNull(client.checkExists().forPath("/" + clusterId + "/members"));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.cluster.StartupCoordination;
+import com.hazelnut.node.preps.ClusterStartupLoadTestUtils;
+import com.hazelnut.node.preps.SimulatedNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hundreds of nodes, each with its own session, starting against a local ZooKeeper ensemble
+ * Run with ./gradlew loadTest, size it with -Dhazelnut.load.nodes and -Dhazelnut.load.ensemble
+ */
+@Tag("load")
+class TestClusterStartupAtScale extends ClusterStartupLoadTestUtils {
+
+    private final List<SimulatedNode> running = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        startEnsemble();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        stopEnsemble();
+    }
+
+    @AfterEach
+    void stopAllNodes() {
+        stopNodes(running);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"TTL, LOCK", "TTL, CREATE", "MEMBERSHIP, LOCK", "MEMBERSHIP, CREATE"})
+        //All nodes start at the exact same time
+    void testSimultaneousStartWelcomesExactlyOnce(LivenessMode livenessMode, StartupCoordination coordination) throws Exception {
+        long packets = packetsReceivedByEnsemble();
+
+        List<Decision> decisions = startNodes(NODES, clusterProperties(livenessMode, coordination), 0, running);
+
+        report("simultaneous " + livenessMode + "/" + coordination, decisions, packetsReceivedByEnsemble() - packets);
+        verifyThatClusterIsStarted(EXACTLY_ONCE, decisions);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"TTL, LOCK", "TTL, CREATE", "MEMBERSHIP, LOCK", "MEMBERSHIP, CREATE"})
+        //Nodes start seconds apart from each other
+    void testStaggeredStartWelcomesExactlyOnce(LivenessMode livenessMode, StartupCoordination coordination) throws Exception {
+        long packets = packetsReceivedByEnsemble();
+
+        List<Decision> decisions = startNodes(NODES, clusterProperties(livenessMode, coordination), STAGGER_MILLIS, running);
+
+        report("staggered " + livenessMode + "/" + coordination, decisions, packetsReceivedByEnsemble() - packets);
+        verifyThatClusterIsStarted(EXACTLY_ONCE, decisions);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"TTL, LOCK", "TTL, CREATE", "MEMBERSHIP, LOCK", "MEMBERSHIP, CREATE"})
+        //Some nodes restart while others keep running, then the whole cluster restarts
+    void testRestartsWelcomeOncePerClusterLifetime(LivenessMode livenessMode, StartupCoordination coordination) throws Exception {
+        Map<String, Object> cluster = clusterProperties(livenessMode, coordination);
+        List<SimulatedNode> restarted = new ArrayList<>();
+
+        verifyThatClusterIsStarted(EXACTLY_ONCE, startNodes(NODES / 2, cluster, 0, running));
+        verifyThatClusterIsStarted(NEVER, startNodes(NODES / 4, cluster, 0, restarted));
+
+        long packets = packetsReceivedByEnsemble();
+        stopNodes(restarted);
+        List<Decision> partialRestart = startNodes(NODES / 4, cluster, STAGGER_MILLIS / 5, restarted);
+        report("partial restart " + livenessMode + "/" + coordination, partialRestart, packetsReceivedByEnsemble() - packets);
+        verifyThatClusterIsStarted(NEVER, partialRestart);
+
+        stopNodes(restarted);
+        stopNodes(running);
+        sleepQuietly(livenessMode == LivenessMode.TTL ? 3 * TTL_MILLIS : 0);
+
+        packets = packetsReceivedByEnsemble();
+        List<Decision> fullRestart = startNodes(NODES / 2, cluster, 0, running);
+        report("full restart " + livenessMode + "/" + coordination, fullRestart, packetsReceivedByEnsemble() - packets);
+        verifyThatClusterIsStarted(EXACTLY_ONCE, fullRestart);
+    }
+}
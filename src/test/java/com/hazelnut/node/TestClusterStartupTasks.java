@@ -0,0 +1,152 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.ClusterStartupTask;
+import com.hazelnut.cluster.ClusterStartupTasks;
+import com.hazelnut.cluster.StartupTaskOutcome;
+import com.hazelnut.node.preps.ClusterStartupTasksTestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+class TestClusterStartupTasks extends ClusterStartupTasksTestUtils {
+
+    @Autowired
+    private ObjectProvider<ClusterStartupTask> declaredTasks;
+
+    @BeforeEach
+    public void setUp() {
+        mockThatNoTaskIsDone();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ReflectionTestUtils.setField(startupTasks, "taskProvider", declaredTasks);
+        startupTasks.init();
+    }
+
+    @Test
+    void testTasksAreOrderedByDependencies() {
+        assertEquals(List.of("schema", "cache", "index", "announce"), startupTasks.getTaskNames());
+    }
+
+    @Test
+    void testEveryTaskRunsAfterItsDependencies() {
+        Map<String, StartupTaskOutcome> outcomes = startupTasks.runPending();
+
+        assertEquals(Map.of("schema", StartupTaskOutcome.RAN, "cache", StartupTaskOutcome.RAN,
+                "index", StartupTaskOutcome.RAN, "announce", StartupTaskOutcome.RAN), outcomes);
+        assertRanBefore("schema", "cache");
+        assertRanBefore("schema", "index");
+        assertRanBefore("cache", "announce");
+        assertRanBefore("index", "announce");
+        verifyThatTaskIsMarkedDone("announce", EXACTLY_ONCE);
+        verifyThatClaimIsReleased("announce", EXACTLY_ONCE);
+    }
+
+    @Test
+    void testTasksDoneByOtherNodesAreNotRunAgain() {
+        mockThatTaskIsDoneByOtherNode("schema");
+        mockThatTaskIsDoneByOtherNode("index");
+
+        Map<String, StartupTaskOutcome> outcomes = startupTasks.runPending();
+
+        assertEquals(StartupTaskOutcome.DONE_BY_OTHER_NODE, outcomes.get("schema"));
+        assertEquals(StartupTaskOutcome.DONE_BY_OTHER_NODE, outcomes.get("index"));
+        assertEquals(List.of("cache", "announce"), TASKS_RUN);
+        verifyThatTaskIsMarkedDone("schema", NEVER);
+    }
+
+    @Test
+    void testNodeWaitsForTaskClaimedByOtherNode() {
+        mockThatTaskIsClaimedByOtherNodeUntilDone("cache");
+
+        Map<String, StartupTaskOutcome> outcomes = startupTasks.runPending();
+
+        assertEquals(StartupTaskOutcome.DONE_BY_OTHER_NODE, outcomes.get("cache"));
+        assertEquals(StartupTaskOutcome.RAN, outcomes.get("announce"));
+        verifyThatClaimIsReleased("cache", NEVER);
+    }
+
+    @Test
+    void testTaskDoneByOtherNodeBetweenCheckAndClaimIsNotRunAgain() {
+        mockThatTaskIsDoneByOtherNodeRightBeforeClaim("index");
+
+        Map<String, StartupTaskOutcome> outcomes = startupTasks.runPending();
+
+        assertEquals(StartupTaskOutcome.DONE_BY_OTHER_NODE, outcomes.get("index"));
+        assertEquals(StartupTaskOutcome.RAN, outcomes.get("announce"));
+        assertEquals(List.of("schema", "cache", "announce"), TASKS_RUN);
+        verifyThatTaskIsMarkedDone("index", NEVER);
+        verifyThatClaimIsReleased("index", EXACTLY_ONCE);
+    }
+
+    @Test
+    void testTasksDependingOnFailedTaskAreSkipped() {
+        mockThatTaskFails("cache");
+
+        Map<String, StartupTaskOutcome> outcomes = startupTasks.runPending();
+
+        assertEquals(StartupTaskOutcome.FAILED, outcomes.get("cache"));
+        assertEquals(StartupTaskOutcome.RAN, outcomes.get("index"));
+        assertEquals(StartupTaskOutcome.SKIPPED, outcomes.get("announce"));
+        verifyThatTaskIsMarkedDone("cache", NEVER);
+        verifyThatClaimIsReleased("cache", EXACTLY_ONCE);
+    }
+
+    @Test
+    void testCyclicOrUnknownDependenciesAreRejected() {
+        mockThatTasksAre(task("a", "b"), task("b", "a"));
+        assertThrows(IllegalStateException.class, startupTasks::init);
+
+        mockThatTasksAre(task("a", "unknown"));
+        assertThrows(IllegalStateException.class, startupTasks::init);
+
+        mockThatTasksAre(task("a"), task("a"));
+        assertThrows(IllegalStateException.class, startupTasks::init);
+    }
+
+    @Configuration
+    @Import(ClusterStartupTasks.class)
+    static class Config {
+
+        @Bean
+        ClusterStartupTask schema() {
+            return task("schema");
+        }
+
+        @Bean
+        ClusterStartupTask cache() {
+            return task("cache", "schema");
+        }
+
+        @Bean
+        ClusterStartupTask index() {
+            return task("index", "schema");
+        }
+
+        @Bean
+        ClusterStartupTask announce() {
+            return task("announce", "cache", "index");
+        }
+    }
+}
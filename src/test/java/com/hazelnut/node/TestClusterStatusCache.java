@@ -0,0 +1,124 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.ClusterStatusCache;
+import com.hazelnut.cluster.StatusJournal;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.node.preps.ZooKeeperConnectionTestUtils;
+import com.hazelnut.utils.ClusterStatusRecord;
+import com.hazelnut.utils.DataMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Watch backed ClusterStatusCache against an in-process ZooKeeper server
+ */
+class TestClusterStatusCache extends ZooKeeperConnectionTestUtils {
+
+    private static final String STATUS_PATH = "/cache/startup_status";
+
+    private static final long TTL_MILLIS = 60_000;
+
+    private ClusterStatusCache cache = null;
+
+    @AfterEach
+    public void closeCache() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    //A status written by another node is served from the cache once its notification arrived
+    void testCacheFollowsTheWatchedStatus() throws Exception {
+        server.start();
+        ClusterStatusCache.CachedStatus status = watch();
+        waitUntil(status::isCurrent, "Cache initialized");
+        assertFalse(status.isStarted());
+
+        markClusterAsStarted();
+
+        waitUntil(status::isStarted, "Started status seen");
+    }
+
+    @Test
+    //The cache is not served while the connection is down, and again once the watch is back
+    void testCacheIsInvalidatedOnDisconnect() throws Exception {
+        server.start();
+        markClusterAsStarted();
+        ClusterStatusCache.CachedStatus status = watch();
+        waitUntil(status::isCurrent, "Cache initialized");
+
+        server.stop();
+        waitUntil(() -> !status.isCurrent(), "Cache invalidated");
+        assertFalse(status.getRefreshAgeMillis().isPresent());
+
+        server.restart();
+        waitUntil(status::isCurrent, "Cache current again");
+        assertTrue(status.isStarted());
+    }
+
+    @Test
+    //A watch set up while ZooKeeper is unreachable starts out disconnected, not as connected by default
+    void testCacheStartsWithTheActualConnectionState() throws Exception {
+        ClusterStatusCache.CachedStatus status = watch();
+
+        assertEquals(false, ReflectionTestUtils.getField(status, "connected"));
+        assertFalse(status.isCurrent());
+
+        server.start();
+        waitUntil(status::isCurrent, "Cache initialized once connected");
+    }
+
+    @Test
+    //Nodes watching the same path at once share one entry, started once and outside of the map's mapping function
+    void testConcurrentWatchersShareOneStartedEntry() throws Exception {
+        server.start();
+        ZooKeeperConnectionManager manager = newConnectionManager();
+        cache = new ClusterStatusCache(manager, mock(StatusJournal.class));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ClusterStatusCache.CachedStatus>> watches = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                watches.add(executor.submit(() -> cache.watch(STATUS_PATH)));
+            }
+            ClusterStatusCache.CachedStatus status = cache.watch(STATUS_PATH);
+            for (Future<ClusterStatusCache.CachedStatus> watch : watches) {
+                assertSame(status, watch.get());
+            }
+            assertEquals(EXACTLY_ONCE, manager.getLeasedSessions());
+            waitUntil(status::isCurrent, "Cache initialized");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ClusterStatusCache.CachedStatus watch() {
+        ZooKeeperConnectionManager manager = newConnectionManager();
+        cache = new ClusterStatusCache(manager, mock(StatusJournal.class));
+        return cache.watch(STATUS_PATH);
+    }
+
+    /**
+     * write the status the way a starting node does, through a connection of its own
+     */
+    private void markClusterAsStarted() throws Exception {
+        byte[] data = new byte[DataMapper.STATUS_RECORD_LENGTH];
+        DataMapper.writeStatus(new ClusterStatusRecord().start("other", System.currentTimeMillis(), TTL_MILLIS), data);
+        ZooKeeperConnectionManager other = newConnectionManager();
+        other.acquire().create().creatingParentContainersIfNeeded().forPath(STATUS_PATH, data);
+        other.release();
+    }
+}
@@ -0,0 +1,217 @@
+package com.hazelnut.node;
+
+import com.hazelnut.Hazelnut;
+import com.hazelnut.cluster.ClusterStore;
+import com.hazelnut.cluster.ClusterStoreException;
+import com.hazelnut.cluster.Versioned;
+import com.hazelnut.node.preps.CommonTestUtils;
+import com.hazelnut.utils.DataMapper;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Nodes sharing one ClusterStore through an in-process ZooKeeper server
+ */
+class TestClusterStore extends CommonTestUtils {
+
+    private static TestingServer server;
+
+    private final List<Hazelnut> running = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        System.setProperty("zookeeper.extendedTypesEnabled", "true");
+        server = new TestingServer(true);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        server.close();
+    }
+
+    @AfterEach
+    void stopAllNodes() {
+        running.forEach(Hazelnut::close);
+        running.clear();
+    }
+
+    @Test
+    //Values round trip through their codec, a node reads its own writes at once and hot reads are served locally
+    void testNodeReadsItsOwnWritesAndServesHotReadsLocally() {
+        ClusterStore store = startNode("round-trip", 16);
+
+        assertFalse(store.get("epoch", DataMapper.LONG).isPresent());
+        assertEquals(0, store.put("epoch", DataMapper.LONG, 41L));
+        assertEquals(1, store.put("epoch", DataMapper.LONG, 42L));
+
+        Versioned<Long> epoch = store.get("epoch", DataMapper.LONG);
+        assertEquals(42L, epoch.getValue());
+        assertEquals(1, epoch.getVersion());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(42L, store.get("epoch", DataMapper.LONG).getValue());
+        }
+        assertEquals(0.8, store.getHitRatio(), 0.001);
+
+        assertTrue(store.delete("epoch", 1));
+        assertEquals(Versioned.ABSENT, store.get("epoch", DataMapper.LONG).getVersion());
+    }
+
+    @Test
+    //Two nodes race on one version, exactly one write applies and the other node retries on what it reads then
+    void testCompareAndSetAppliesOnlyAtExpectedVersion() {
+        ClusterStore first = startNode("cas", 16);
+        ClusterStore second = startNode("cas", 16);
+
+        assertTrue(first.compareAndSet("toggle", DataMapper.BOOLEAN, Versioned.ABSENT, false));
+        assertFalse(second.compareAndSet("toggle", DataMapper.BOOLEAN, Versioned.ABSENT, true));
+
+        Versioned<Boolean> seenByFirst = first.get("toggle", DataMapper.BOOLEAN);
+        Versioned<Boolean> seenBySecond = second.get("toggle", DataMapper.BOOLEAN);
+        assertTrue(second.compareAndSet("toggle", DataMapper.BOOLEAN, seenBySecond.getVersion(), true));
+        assertFalse(first.compareAndSet("toggle", DataMapper.BOOLEAN, seenByFirst.getVersion(), false));
+
+        assertEquals(true, first.getSynced("toggle", DataMapper.BOOLEAN).getValue());
+        assertFalse(first.delete("toggle", seenByFirst.getVersion()));
+    }
+
+    @Test
+    //A write of another node drops the cached value on its watch notification
+    void testCachedValueIsInvalidatedByWritesOfOtherNodes() throws Exception {
+        ClusterStore reader = startNode("watch", 16);
+        ClusterStore writer = startNode("watch", 16);
+        writer.put("owner", DataMapper.STRING, "node-1");
+
+        assertEquals("node-1", reader.get("owner", DataMapper.STRING).getValue());
+        assertEquals(1, reader.getCachedSize());
+        writer.put("owner", DataMapper.STRING, "node-2");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reader.getCachedSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("node-2", reader.get("owner", DataMapper.STRING).getValue());
+    }
+
+    @Test
+    //The near cache holds the most recently read keys only
+    void testLeastRecentlyReadKeyIsEvicted() {
+        ClusterStore store = startNode("lru", 2);
+        store.put("a", DataMapper.LONG, 1L);
+        store.put("b", DataMapper.LONG, 2L);
+        store.put("c", DataMapper.LONG, 3L);
+
+        store.get("a", DataMapper.LONG);
+        store.get("b", DataMapper.LONG);
+        store.get("a", DataMapper.LONG);
+        store.get("c", DataMapper.LONG);
+        assertEquals(2, store.getCachedSize());
+        assertEquals(1.0 / 4, store.getHitRatio(), 0.001);
+
+        store.get("a", DataMapper.LONG);
+        store.get("b", DataMapper.LONG);
+        assertEquals(2.0 / 6, store.getHitRatio(), 0.001);
+    }
+
+    @Test
+    //Reads leave at most one watch per key, evicted keys are no longer watched
+    void testEveryKeyIsWatchedOnceAtMost() throws Exception {
+        ClusterStore reader = startNode("watches", 2);
+        ClusterStore writer = startNode("watches", 2);
+        writer.put("a", DataMapper.LONG, 1L);
+        writer.put("b", DataMapper.LONG, 2L);
+        writer.put("c", DataMapper.LONG, 3L);
+
+        for (int i = 0; i < 8; i++) {
+            reader.getSynced("a", DataMapper.LONG);
+            reader.get("a", DataMapper.LONG);
+        }
+        assertEquals(1, reader.getWatchedSize());
+
+        reader.get("b", DataMapper.LONG);
+        reader.get("c", DataMapper.LONG);
+        assertEquals(2, reader.getCachedSize());
+        assertEquals(2, reader.getWatchedSize());
+
+        writer.put("c", DataMapper.LONG, 4L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reader.getWatchedSize() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, reader.getWatchedSize());
+        assertEquals(4L, reader.getSynced("c", DataMapper.LONG).getValue());
+        assertEquals(2, reader.getWatchedSize());
+    }
+
+    @Test
+    //Nothing is guessed without ZooKeeper, and keys are plain names
+    void testFailuresAreThrown() throws Exception {
+        ClusterStore store = startNode("failures", 16);
+        store.put("epoch", DataMapper.LONG, 1L);
+        store.put("owner", DataMapper.STRING, "node-1");
+
+        assertThrows(IllegalArgumentException.class, () -> store.get("a/b", DataMapper.LONG));
+        assertThrows(IllegalArgumentException.class, () -> store.get("owner", DataMapper.LONG));
+
+        server.stop();
+        try {
+            ClusterStoreException e = assertThrows(ClusterStoreException.class, () -> store.getSynced("epoch", DataMapper.LONG));
+            assertEquals(KeeperException.Code.CONNECTIONLOSS, e.getCode());
+            assertThrows(ClusterStoreException.class, () -> store.put("epoch", DataMapper.LONG, 2L));
+        } finally {
+            server.restart();
+        }
+    }
+
+    @Test
+    //A store first used while ZooKeeper is unreachable starts out disconnected, not as connected by default
+    void testStoreStartsWithTheActualConnectionState() throws Exception {
+        ClusterStore store = startNode("connection", 16);
+        Hazelnut node = running.get(0);
+
+        server.stop();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (node.getMetrics().getConnectionLosses() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThrows(ClusterStoreException.class, () -> store.get("epoch", DataMapper.LONG));
+            assertEquals(false, ReflectionTestUtils.getField(store, "connected"));
+        } finally {
+            server.restart();
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Boolean.TRUE.equals(ReflectionTestUtils.getField(store, "connected")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        store.get("epoch", DataMapper.LONG);
+        assertEquals(1, store.getCachedSize());
+    }
+
+    private ClusterStore startNode(String clusterId, int cacheSize) {
+        Hazelnut node = Hazelnut.builder()
+                .connectString(server.getConnectString())
+                .clusterId(clusterId)
+                .property("cluster.store.cache.size", cacheSize)
+                .property("client.session.timeout.ms", 10000)
+                .property("client.connection.timeout.ms", 5000)
+                .property("client.connect.budget.ms", 5000)
+                .property("client.retry.max.time.ms", 500)
+                .start();
+        running.add(node);
+        return node.getStore();
+    }
+}
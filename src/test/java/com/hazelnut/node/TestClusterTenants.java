@@ -0,0 +1,113 @@
+package com.hazelnut.node;
+
+import com.hazelnut.node.preps.ClusterTenantsTestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = "cluster.tenants=shipping, returns")
+class TestClusterTenants extends ClusterTenantsTestUtils {
+
+    @BeforeEach
+    public void setUp() {
+        mockZooKeeperSession();
+        mockThatBatchSizeIs(200);
+    }
+
+    @Test
+    //Each tenant is joined if up, otherwise started by the conditional create
+    void testTenantsAreStartedOrJoinedIndependently() {
+        mockThatTenantClusterIs("orders", STARTED);
+        mockThatTenantClusterIs("billing", NOT_STARTED);
+
+        assertEquals(StartupOutcome.JOINED_CLUSTER, tenants.startTenant("orders"));
+        assertEquals(StartupOutcome.STARTED_CLUSTER, tenants.startTenant("billing"));
+
+        verifyThatTenantIsMarkedAsStarted("orders", NEVER);
+        verifyThatTenantIsMarkedAsStarted("billing", EXACTLY_ONCE);
+        assertEquals(Set.of("orders", "billing"), tenants.getTenants());
+    }
+
+    @Test
+    //The configured tenants are started in order
+    void testConfiguredTenantsAreStarted() {
+        mockThatTenantClusterIs("shipping", STARTED);
+
+        Map<String, StartupOutcome> outcomes = tenants.startTenants();
+
+        assertEquals(List.of("shipping", "returns"), List.copyOf(outcomes.keySet()));
+        assertEquals(StartupOutcome.JOINED_CLUSTER, outcomes.get("shipping"));
+        assertEquals(StartupOutcome.STARTED_CLUSTER, outcomes.get("returns"));
+    }
+
+    @Test
+    //The heart beats of all tenants go out as one batch, not one request per tenant
+    void testHeartBeatsOfAllTenantsAreBatched() {
+        startTenants("a", "b", "c");
+
+        tenants.updateTenantStatuses();
+
+        List<Collection<String>> batches = verifyBatchedHeartBeatCallsAreMade(EXACTLY_ONCE);
+        assertEquals(List.of(statusPathOf("a"), statusPathOf("b"), statusPathOf("c")), batches.get(0));
+        verifySingleHeartBeatCallIsMade(NEVER);
+    }
+
+    @Test
+    //Tenants refreshed recently by other nodes are skipped, the rest is split by the batch size
+    void testBatchesSkipRecentlyRefreshedTenantsAndAreCapped() {
+        mockThatBatchSizeIs(2);
+        startTenants("a", "b", "c", "d", "e");
+        mockThatTenantStatusWasRefreshedMillisAgo("c", 10);
+
+        tenants.updateTenantStatuses();
+
+        List<Collection<String>> batches = verifyBatchedHeartBeatCallsAreMade(TWICE);
+        assertEquals(List.of(statusPathOf("a"), statusPathOf("b")), batches.get(0));
+        assertEquals(List.of(statusPathOf("d"), statusPathOf("e")), batches.get(1));
+    }
+
+    @Test
+    //Stopped tenants and a down connection send no heart beats
+    void testNoHeartBeatsForStoppedTenantsOrWhileDisconnected() {
+        startTenants("a");
+        mockThatZooKeeperIsConnected(false);
+
+        tenants.updateTenantStatuses();
+        verifyHeartBeatIsPaused(EXACTLY_ONCE);
+
+        mockThatZooKeeperIsConnected(true);
+        tenants.stopTenant("a");
+        tenants.updateTenantStatuses();
+
+        verifyNoBatchedHeartBeatCallIsMade();
+    }
+
+    @Test
+    void testTenantIdMustMakeAValidPath() {
+        assertThrows(IllegalArgumentException.class, () -> tenants.startTenant("bad/../id"));
+        assertEquals(Set.of(), tenants.getTenants());
+    }
+
+    @Configuration
+    @Import(ClusterTenants.class)
+    static class Config {
+    }
+}
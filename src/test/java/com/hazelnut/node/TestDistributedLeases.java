@@ -0,0 +1,134 @@
+package com.hazelnut.node;
+
+import com.hazelnut.Hazelnut;
+import com.hazelnut.cluster.DistributedLease;
+import com.hazelnut.cluster.DistributedLock;
+import com.hazelnut.cluster.DistributedLockRegistry;
+import com.hazelnut.cluster.DistributedSemaphore;
+import com.hazelnut.node.preps.CommonTestUtils;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Read write locks, semaphores and lock leases shared by nodes through an in-process ZooKeeper server
+ */
+class TestDistributedLeases extends CommonTestUtils {
+
+    private static final long SHORT_WAIT_MILLIS = 200;
+
+    private static final long LEASE_MILLIS = 500;
+
+    private static TestingServer server;
+
+    private final List<Hazelnut> running = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        System.setProperty("zookeeper.extendedTypesEnabled", "true");
+        server = new TestingServer(true);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        server.close();
+    }
+
+    @AfterEach
+    void stopAllNodes() {
+        running.forEach(Hazelnut::close);
+        running.clear();
+    }
+
+    @Test
+    //Readers on different nodes hold the read lock together
+    void testReadersDoNotBlockEachOther() {
+        DistributedLockRegistry first = startNode("readers", 0);
+        DistributedLockRegistry second = startNode("readers", 0);
+
+        try (DistributedLease read = first.getReadWriteLock("catalog").tryReadLock(SHORT_WAIT_MILLIS)) {
+            assertTrue(read.isLocked());
+            try (DistributedLease otherRead = second.getReadWriteLock("catalog").tryReadLock(SHORT_WAIT_MILLIS)) {
+                assertTrue(otherRead.isLocked());
+            }
+        }
+    }
+
+    @Test
+    //A writer keeps readers of other nodes out until it gives the lock back
+    void testWriterExcludesReaders() {
+        DistributedLockRegistry writer = startNode("writer", 0);
+        DistributedLockRegistry reader = startNode("writer", 0);
+
+        try (DistributedLease write = writer.getReadWriteLock("catalog").tryWriteLock(SHORT_WAIT_MILLIS)) {
+            assertTrue(write.isLocked());
+            try (DistributedLease read = reader.getReadWriteLock("catalog").tryReadLock(SHORT_WAIT_MILLIS)) {
+                assertFalse(read.isLocked());
+            }
+        }
+        try (DistributedLease read = reader.getReadWriteLock("catalog").tryReadLock(SHORT_WAIT_MILLIS)) {
+            assertTrue(read.isLocked());
+        }
+    }
+
+    @Test
+    //No more leases than permits are held across the cluster, a lease given back lets the next holder in
+    void testSemaphoreCapsConcurrentHolders() {
+        DistributedSemaphore first = startNode("semaphore", 0).getSemaphore("imports", 2);
+        DistributedSemaphore second = startNode("semaphore", 0).getSemaphore("imports", 2);
+
+        DistributedLease one = first.tryAcquire(SHORT_WAIT_MILLIS);
+        try (DistributedLease two = second.tryAcquire(SHORT_WAIT_MILLIS)) {
+            assertTrue(one.isLocked());
+            assertTrue(two.isLocked());
+            try (DistributedLease three = second.tryAcquire(SHORT_WAIT_MILLIS)) {
+                assertFalse(three.isLocked());
+            }
+            one.close();
+            try (DistributedLease three = second.tryAcquire(SHORT_WAIT_MILLIS)) {
+                assertTrue(three.isLocked());
+            }
+        }
+    }
+
+    @Test
+    //The node keeps the lock for the lease after its last release, other nodes get it once the lease expired
+    void testLockLeaseExpires() throws Exception {
+        DistributedLock leased = startNode("lease", LEASE_MILLIS).getLock("shard-1");
+        DistributedLock other = startNode("lease", LEASE_MILLIS).getLock("shard-1");
+
+        try (DistributedLock locked = leased.tryLock()) {
+            assertTrue(locked.isLocked());
+        }
+        try (DistributedLock locked = other.tryLock(0)) {
+            assertFalse(locked.isLocked());
+        }
+
+        Thread.sleep(LEASE_MILLIS);
+        try (DistributedLock locked = other.tryLock(LEASE_MILLIS)) {
+            assertTrue(locked.isLocked());
+        }
+    }
+
+    private DistributedLockRegistry startNode(String clusterId, long leaseMillis) {
+        Hazelnut node = Hazelnut.builder()
+                .connectString(server.getConnectString())
+                .clusterId(clusterId)
+                .property("distributed.lock.lease.ms", leaseMillis)
+                .property("client.session.timeout.ms", 10000)
+                .property("client.connection.timeout.ms", 5000)
+                .property("client.connect.budget.ms", 5000)
+                .property("client.retry.max.time.ms", 500)
+                .start();
+        running.add(node);
+        return node.getLockRegistry();
+    }
+}
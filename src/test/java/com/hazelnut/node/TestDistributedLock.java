@@ -15,8 +15,12 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 @SpringBootTest
 @RunWith(SpringRunner.class)
 @ExtendWith(SpringExtension.class)
@@ -28,6 +32,7 @@ class TestDistributedLock extends DistributedLockTestUtils {
     @BeforeEach
     public void setUp() {
         ReflectionTestUtils.setField(lock, "lock", mutex);
+        mockThatZooKeeperIsConnected(true);
     }
 
     @Test
@@ -36,6 +41,22 @@ class TestDistributedLock extends DistributedLockTestUtils {
         verifyDistributedLockIsTried(EXACTLY_ONCE);
     }
 
+    @Test
+    void testLockFailsFastWhileDisconnected() {
+        mockThatZooKeeperIsConnected(false);
+
+        assertFalse(lock.tryLock().isLocked());
+        verifyDistributedLockIsTried(NEVER);
+    }
+
+    @Test
+    void testLockFailsFastWhileCircuitBreakerIsOpen() {
+        mockThatCircuitBreakerIsOpen();
+
+        assertFalse(lock.tryLock().isLocked());
+        verifyDistributedLockIsTried(NEVER);
+    }
+
     @Test
     void testAcquiringAlreadyAcquiredLock() {
         mockThatLockIsAlreadyAcquired();
@@ -46,10 +67,22 @@ class TestDistributedLock extends DistributedLockTestUtils {
     @Test
     void testReleasingTheLock() {
         mockThatLockIsAlreadyAcquired();
+        lock.tryLock();
         lock.releaseIfLocked();
         verifyReleaseLockCallIsMade(EXACTLY_ONCE);
     }
 
+    @Test
+    void testReleasingTheLockHeldByAnotherThread() throws Exception {
+        mockThatLockIsAlreadyAcquired();
+        lock.tryLock();
+        Thread other = new Thread(lock::releaseIfLocked);
+        other.start();
+        other.join();
+        verifyReleaseLockCallIsMade(NEVER);
+        lock.releaseIfLocked();
+    }
+
     @Test
     void testReleasingTheLockNotAcquired() {
         lock.releaseIfLocked();
@@ -57,6 +90,57 @@ class TestDistributedLock extends DistributedLockTestUtils {
     }
 
 
+    @Test
+    void testLockIsHandedOverToQueuedThreadWithoutZooKeeper() throws Exception {
+        mockThatLockIsAlreadyAcquired();
+        lock.tryLock();
+        AtomicBoolean lockedByOther = new AtomicBoolean();
+        Thread other = anotherThreadQueuesOn(lock, lockedByOther);
+
+        lock.releaseIfLocked();
+
+        other.join();
+        assertTrue(lockedByOther.get());
+        verifyDistributedLockIsTried(NEVER);
+        verifyReleaseLockCallIsMade(EXACTLY_ONCE);
+    }
+
+    @Test
+    void testSessionIsKeptAcrossLockCycles() {
+        mockThatLockIsAlreadyAcquired();
+        lock.tryLock().close();
+        lock.tryLock().close();
+
+        verifyReleaseLockCallIsMade(TWICE);
+        verifyThatSessionIsClosed(NEVER);
+    }
+
+    @Test
+    void testLockIsKeptForTheLeaseAfterRelease() {
+        mockThatLockIsLeasedFor(lock, 200);
+        try {
+            mockThatLockIsAlreadyAcquired();
+            lock.tryLock().close();
+            verifyReleaseLockCallIsMade(NEVER);
+
+            lock.tryLock().close();
+            verifyDistributedLockIsTried(NEVER);
+
+            verifyReleaseLockCallIsMadeWithin(2000);
+        } finally {
+            mockThatLockIsLeasedFor(lock, 0);
+        }
+    }
+
+    @Test
+    void testShutdownReleasesTheLockAndTheSession() {
+        mockThatLockIsAlreadyAcquired();
+        lock.shutdown();
+
+        verifyReleaseLockCallIsMade(EXACTLY_ONCE);
+        verifyThatSessionIsClosed(EXACTLY_ONCE);
+    }
+
     @Configuration
     @Import(DistributedLock.class)
     static class Config {
@@ -0,0 +1,118 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.DistributedLock;
+import com.hazelnut.cluster.DistributedLockRegistry;
+import com.hazelnut.cluster.DistributedReadWriteLock;
+import com.hazelnut.cluster.DistributedSemaphore;
+import com.hazelnut.node.preps.DistributedLockTestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+class TestDistributedLockRegistry extends DistributedLockTestUtils {
+
+    @Autowired
+    protected DistributedLockRegistry registry;
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+        ReflectionTestUtils.setField(registry, "stripes", 64);
+    }
+
+    @Test
+    void testSameResourceGetsSameLock() {
+        DistributedLock lock = registry.getLock("shard-1");
+
+        assertSame(lock, registry.getLock("shard-1"));
+        assertTrue(lock.getLockPath().startsWith("/hazelnut_cluster_1032548/locks/stripe-"));
+    }
+
+    @Test
+    void testResourcesAreStripedOntoBoundedLocks() {
+        for (int shard = 0; shard < 1000; shard++) {
+            registry.getLock("shard-" + shard);
+        }
+
+        assertEquals(64, registry.size());
+    }
+
+    @Test
+    void testEveryResourceGetsItsOwnLockWithoutStripes() {
+        ReflectionTestUtils.setField(registry, "stripes", 0);
+
+        DistributedLock lock = registry.getLock("shard-1");
+
+        assertNotSame(lock, registry.getLock("shard-2"));
+        assertEquals("/hazelnut_cluster_1032548/locks/res-shard-1", lock.getLockPath());
+    }
+
+    @Test
+    void testResourcesNamedLikeTheSubtreesKeepApartWithoutStripes() {
+        ReflectionTestUtils.setField(registry, "stripes", 0);
+
+        assertEquals("/hazelnut_cluster_1032548/locks/res-read-write", registry.getLock("read-write").getLockPath());
+        assertEquals("/hazelnut_cluster_1032548/locks/res-semaphores", registry.getLock("semaphores").getLockPath());
+    }
+
+    @Test
+    void testNestedLocksOfResourcesSharingAStripeKeepTheOuterLock() {
+        String outerResource = "shard-1";
+        String innerResource = IntStream.range(2, 10000).mapToObj(shard -> "shard-" + shard)
+                .filter(resource -> registry.lockNameOf(resource).equals(registry.lockNameOf(outerResource)))
+                .findFirst().orElseThrow();
+        ReflectionTestUtils.setField(registry.getLock(outerResource), "lock", mutex);
+        mockThatZooKeeperIsConnected(true);
+        mockThatLockIsAlreadyAcquired();
+
+        try (DistributedLock outer = registry.getLock(outerResource).tryLock()) {
+            try (DistributedLock inner = registry.getLock(innerResource).tryLock()) {
+                assertTrue(inner.isLocked());
+            }
+            assertTrue(outer.isLocked());
+            verifyReleaseLockCallIsMade(NEVER);
+        }
+        verifyReleaseLockCallIsMade(EXACTLY_ONCE);
+    }
+
+    @Test
+    void testReadWriteLocksAreStripedApartFromMutexes() {
+        DistributedReadWriteLock lock = registry.getReadWriteLock("shard-1");
+
+        assertSame(lock, registry.getReadWriteLock("shard-1"));
+        assertEquals("/hazelnut_cluster_1032548/locks/read-write/" + registry.lockNameOf("shard-1"), lock.getLockPath());
+    }
+
+    @Test
+    void testSemaphoreKeepsItsPermits() {
+        DistributedSemaphore semaphore = registry.getSemaphore("imports", 3);
+
+        assertSame(semaphore, registry.getSemaphore("imports", 3));
+        assertEquals("/hazelnut_cluster_1032548/locks/semaphores/imports", semaphore.getSemaphorePath());
+        assertThrows(IllegalArgumentException.class, () -> registry.getSemaphore("imports", 4));
+    }
+
+    @Configuration
+    @Import(DistributedLockRegistry.class)
+    static class Config {
+    }
+}
@@ -0,0 +1,46 @@
+package com.hazelnut.node;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestHeartBeatSchedule {
+
+    @RepeatedTest(20)
+    void testDelayIsJitteredDownWithinTheInterval() {
+        HeartBeatSchedule schedule = new HeartBeatSchedule(7000, 2000, 0.2);
+        long delay = schedule.nextDelayMillis();
+        assertTrue(delay >= 1600 && delay <= 2000, String.valueOf(delay));
+    }
+
+    @Test
+    void testIntervalShrinksToFitTheTtl() {
+        HeartBeatSchedule schedule = new HeartBeatSchedule(3000, 2000, 0);
+        assertEquals(1000, schedule.intervalMillis());
+
+        schedule.recordWriteLatency(MILLISECONDS.toNanos(300));
+        assertEquals(300, schedule.getWriteLatencyMillis());
+        assertEquals(900, schedule.intervalMillis());
+
+        schedule.recordWriteLatency(MILLISECONDS.toNanos(100));
+        assertEquals(275, schedule.getWriteLatencyMillis());
+    }
+
+    @Test
+    void testNoTtlKeepsTheConfiguredInterval() {
+        HeartBeatSchedule schedule = new HeartBeatSchedule(0, 2000, 0);
+        assertEquals(2000, schedule.intervalMillis());
+    }
+
+    @Test
+    void testRefreshWithinTheIntervalIsRecent() {
+        HeartBeatSchedule schedule = new HeartBeatSchedule(7000, 2000, 0.2);
+        assertTrue(schedule.isRecentlyRefreshed(0));
+        assertTrue(schedule.isRecentlyRefreshed(1999));
+        assertFalse(schedule.isRecentlyRefreshed(2000));
+    }
+}
@@ -1,6 +1,7 @@
 package com.hazelnut.node;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.hazelnut.cluster.LivenessMode;
 import com.hazelnut.node.preps.NodeLivenessReporterTestUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -50,4 +51,60 @@ class TestNodeLivenessReporter extends NodeLivenessReporterTestUtils {
         verifyHeartBeatCallIsMade(EXACTLY_ONCE);
 
     }
+
+    @Test
+        //Another node refreshed the status within this interval, so this node skips its write
+    void testTheNodeSkipsHeartBeatIfStatusWasRefreshedRecently() {
+        mockZooKeeperSession();
+
+        mockThatNodeIs(STARTED);
+        mockThatClusterStatusWasRefreshedMillisAgo(10);
+
+        reporter.updateClusterStatus();
+
+        verifyHeartBeatCallIsMade(NEVER);
+        verifyHeartBeatIsSuppressed(EXACTLY_ONCE);
+    }
+
+    @Test
+        //The last seen refresh is older than one interval, so this node writes
+    void testTheNodeReportsLivenessIfStatusWasRefreshedLongAgo() {
+        mockZooKeeperSession();
+
+        mockThatNodeIs(STARTED);
+        mockThatClusterStatusWasRefreshedMillisAgo(5000);
+
+        reporter.updateClusterStatus();
+
+        verifyHeartBeatCallIsMade(EXACTLY_ONCE);
+        verifyHeartBeatIsSuppressed(NEVER);
+    }
+
+    @Test
+        //In membership mode the ephemeral member znode is the heart beat, nothing is written
+    void testTheNodeDontWriteHeartBeatInMembershipMode() {
+        mockZooKeeperSession();
+
+        mockThatNodeIs(STARTED);
+        mockThatLivenessIsTrackedBy(LivenessMode.MEMBERSHIP);
+
+        reporter.updateClusterStatus();
+
+        verifyHeartBeatCallIsMade(NEVER);
+
+        mockThatLivenessIsTrackedBy(LivenessMode.TTL);
+    }
+
+    @Test
+        //While ZooKeeper is unreachable the heart beat pauses instead of blocking in retries
+    void testTheNodePausesHeartBeatWhileDisconnected() {
+        mockZooKeeperSession();
+        mockThatZooKeeperIsConnected(false);
+        mockThatNodeIs(STARTED);
+
+        reporter.updateClusterStatus();
+
+        verifyHeartBeatCallIsMade(NEVER);
+        verifyHeartBeatIsPaused(EXACTLY_ONCE);
+    }
 }
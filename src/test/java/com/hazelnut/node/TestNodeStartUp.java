@@ -1,7 +1,10 @@
 package com.hazelnut.node;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.cluster.StartupCoordination;
 import com.hazelnut.node.preps.NodeStartUpTestUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.runner.RunWith;
@@ -11,13 +14,30 @@ import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 @SpringBootTest
 @RunWith(SpringRunner.class)
 @ExtendWith(SpringExtension.class)
 class TestNodeStartUp extends NodeStartUpTestUtils {
 
+    @AfterEach
+    public void tearDown() {
+        mockThatJournaledStatusIsFresh(false);
+        mockThatLivenessIsTrackedBy(LivenessMode.TTL);
+        mockThatStartupIsCoordinatedBy(StartupCoordination.LOCK);
+        mockThatStartupBudgetIs(startupBudgetMillis);
+        mockThatStartupWaitIs(startupWaitMillis);
+        mockThatNodeIsNotStartedYet();
+    }
+
     @Test
     //Cluster starting first time and this node gets lock to bootstrap
     void testNodeAcquiresDistributedLockAndPerformsStartup() {
@@ -32,10 +52,39 @@ class TestNodeStartUp extends NodeStartUpTestUtils {
         verifyThatLogsWrite("We are started!", EXACTLY_ONCE, logsWritten);
 
         verifyThatClusterStartedFlagIsUpdated(EXACTLY_ONCE);
-        verifyThatClusterStatusIsChecked(TWICE);
+        verifyThatClusterStatusIsChecked(EXACTLY_ONCE);
+        verifyThatClusterStatusIsSynced(EXACTLY_ONCE);
         verifyThatLockIsReleased();
     }
 
+    @Test
+    //Every startup ends with one summary line of its phase timeline
+    void testNodeLogsStartupTimelineOnce() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockTheDistributedLock();
+        mockThatClusterStatusIs(NOT_STARTED, AND_AGAIN_NOT_STARTED);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatLogsWrite("Startup timeline: {}", EXACTLY_ONCE, logsWritten);
+    }
+
+    @Test
+    //Startup tasks run once the cluster is up, whether this node welcomed it or joined it
+    void testStartupTasksRunOnWelcomeAndOnJoin() {
+        mockZooKeeperSession();
+        mockTheDistributedLock();
+        mockThatClusterStatusIs(NOT_STARTED, AND_AGAIN_NOT_STARTED);
+        service.bootStrapNodeAndCluster();
+
+        mockThatClusterStatusIs(STARTED);
+        service.bootStrapNodeAndCluster();
+
+        verifyThatStartupTasksAreRun(TWICE);
+    }
+
     @Test
     //Cluster starting first time and this node gets lock to bootstrap
     void testNodeAcquiresDistributedLockAndPerformsStartup1() {
@@ -50,7 +99,8 @@ class TestNodeStartUp extends NodeStartUpTestUtils {
         verifyThatLogsWrite("We are started!", NEVER, logsWritten);
 
         verifyThatClusterStartedFlagIsUpdated(NEVER);
-        verifyThatClusterStatusIsChecked(TWICE);
+        verifyThatClusterStatusIsChecked(EXACTLY_ONCE);
+        verifyThatClusterStatusIsSynced(EXACTLY_ONCE);
         verifyThatLockIsReleased();
     }
 
@@ -68,10 +118,272 @@ class TestNodeStartUp extends NodeStartUpTestUtils {
 
         verifyThatLogsWrite("We are started!", NEVER, logsWritten);
         verifyThatClusterStatusIsChecked(EXACTLY_ONCE);
+        verifyThatClusterStatusIsSynced(NEVER);
         verifyThatClusterStartedFlagIsUpdated(NEVER);
         verifyThatLockWasNotRequiredOrTried();
     }
 
+    @Test
+    //Cluster starting first time, lock is taken by another node which marks the cluster started while this node waits on the watch
+    void testNodeWaitsOnWatchInsteadOfQueueingOnLock() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockTheDistributedLockIsFree(false);
+        mockThatClusterStatusIs(NOT_STARTED);
+        mockThatStatusWatchNotifiesStarted(true);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+        verifyThatClusterStatusIsSynced(NEVER);
+        verifyThatNodeQueuedOnLock(NEVER);
+        verifyThatLockIsReleased(EXACTLY_ONCE);
+    }
+
+    @Test
+    //Cluster starting first time, lock holder never marks the cluster started so this node queues on the lock
+    void testNodeQueuesOnLockIfWatchNeverNotifies() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockTheDistributedLockIsFree(false, true);
+        mockThatClusterStatusIs(NOT_STARTED);
+        mockThatStatusWatchNotifiesStarted(false);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatLogsWrite("We are started!", EXACTLY_ONCE, logsWritten);
+        verifyThatClusterStatusIsSynced(EXACTLY_ONCE);
+        verifyThatNodeQueuedOnLock(EXACTLY_ONCE);
+        verifyThatLockIsReleased(TWICE);
+    }
+
+    @Test
+    //Cluster starting first time, the lock holder died and its lock outlives the first round, this node still starts the cluster once it is gone
+    void testNodeStartsClusterOnceTheStuckLockHolderIsGone() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockThatZooKeeperIsReachable(true);
+        mockThatStartupWaitIs(10);
+        mockTheDistributedLockIsFree(false, false, true);
+        mockThatClusterStatusIs(NOT_STARTED);
+        mockThatStatusWatchNotifiesStarted(false);
+
+        assertEquals(StartupOutcome.STARTED_CLUSTER, service.bootStrapNodeAndCluster());
+
+        verifyThatLogsWrite("We are started!", EXACTLY_ONCE, logsWritten);
+        verifyThatClusterStartedFlagIsUpdated(EXACTLY_ONCE);
+        verifyThatClusterStatusIsSynced(TWICE);
+        verifyThatNodeQueuedOnLock(TWICE);
+        verifyThatNodeIsStarted(true);
+        assertEquals(StartupOutcome.STARTED_CLUSTER, service.getConfirmedOutcome().join());
+    }
+
+    @Test
+    //Cluster starting first time, the lock holder is stuck for the whole startup budget so this node is not started and bootstraps again
+    void testNodeIsNotStartedIfLockIsHeldForTheWholeBudget() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockThatZooKeeperIsReachable(true);
+        mockThatStartupBudgetIs(0);
+        mockTheDistributedLockIsFree(false, false);
+        mockThatClusterStatusIs(NOT_STARTED);
+        mockThatStatusWatchNotifiesStarted(false);
+
+        assertEquals(StartupOutcome.NOT_STARTED, service.bootStrapNodeAndCluster());
+
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+        verifyThatClusterStartedFlagIsUpdated(NEVER);
+        verifyThatClusterStatusIsSynced(EXACTLY_ONCE);
+        verifyThatNodeQueuedOnLock(EXACTLY_ONCE);
+        verifyThatStartupTasksAreRun(NEVER);
+        verifyThatNodeIsStarted(false);
+        CompletableFuture<StartupOutcome> pending = service.getConfirmedOutcome();
+        assertFalse(pending.isDone());
+
+        mockThatStartupBudgetIs(startupBudgetMillis);
+        mockTheDistributedLockIsFree(true);
+
+        assertEquals(StartupOutcome.STARTED_CLUSTER, service.bootStrapNodeAndCluster());
+        verifyThatNodeIsStarted(true);
+        assertEquals(StartupOutcome.STARTED_CLUSTER, pending.join());
+    }
+
+    @Test
+    //Cluster has no live member and this node gets lock to bootstrap and registers itself
+    void testNodeRegistersAsFirstMemberAndPerformsStartup() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockThatLivenessIsTrackedBy(LivenessMode.MEMBERSHIP);
+        mockZooKeeperSession();
+        mockTheDistributedLock();
+        mockThatClusterHasLiveMembers(NOT_STARTED, AND_AGAIN_NOT_STARTED);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatLogsWrite("We are started!", EXACTLY_ONCE, logsWritten);
+        verifyThatNodeIsRegisteredAsMember();
+        verifyThatClusterStatusIsChecked(NEVER);
+        verifyThatClusterStartedFlagIsUpdated(NEVER);
+        verifyThatLockIsReleased();
+    }
+
+    @Test
+    //Cluster has live members, so this node only registers itself
+    void testNodeJoinsClusterWithLiveMembers() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockThatLivenessIsTrackedBy(LivenessMode.MEMBERSHIP);
+        mockZooKeeperSession();
+        mockThatClusterHasLiveMembers(STARTED, STARTED);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+        verifyThatNodeIsRegisteredAsMember();
+        verifyThatLockWasNotRequiredOrTried();
+    }
+
+    @Test
+    //Cluster starting first time and this node's conditional create wins, no lock is taken
+    void testNodeWinsConditionalCreateAndPerformsStartup() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockThatStartupIsCoordinatedBy(StartupCoordination.CREATE);
+        mockZooKeeperSession();
+        mockThatClusterStatusIs(NOT_STARTED);
+        mockThatConditionalCreateIs(true);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatLogsWrite("We are started!", EXACTLY_ONCE, logsWritten);
+        verifyThatConditionalCreateIsTried(EXACTLY_ONCE);
+        verifyThatClusterStatusIsSynced(NEVER);
+        verifyThatLockWasNotRequiredOrTried();
+    }
+
+    @Test
+    //Cluster starting first time and another node's conditional create won
+    void testNodeLosesConditionalCreate() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockThatStartupIsCoordinatedBy(StartupCoordination.CREATE);
+        mockZooKeeperSession();
+        mockThatClusterStatusIs(NOT_STARTED);
+        mockThatConditionalCreateIs(false);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+        verifyThatConditionalCreateIsTried(EXACTLY_ONCE);
+        verifyThatLockWasNotRequiredOrTried();
+    }
+
+    @Test
+    //Cluster starting first time and this node bootstraps it without blocking the caller
+    void testNodePerformsStartupAsynchronously() throws Exception {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockTheDistributedLock();
+        mockThatClusterStatusIsAsync(NOT_STARTED, AND_AGAIN_NOT_STARTED);
+
+        assertEquals(StartupOutcome.STARTED_CLUSTER, service.bootStrapNodeAndClusterAsync().get());
+
+        verifyThatLogsWrite("We are started!", EXACTLY_ONCE, logsWritten);
+        verifyThatClusterStartedFlagIsUpdated(EXACTLY_ONCE);
+        verifyThatLockIsReleased();
+        assertTrue(service.isNodeStarted());
+    }
+
+    @Test
+    //Cluster is once started, the asynchronous bootstrap joins it from the first status check
+    void testNodeJoinsStartedClusterAsynchronously() throws Exception {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockThatClusterStatusIsAsync(STARTED, STARTED);
+
+        assertEquals(StartupOutcome.JOINED_CLUSTER, service.bootStrapNodeAndClusterAsync().get());
+
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+        verifyThatLockWasNotRequiredOrTried();
+    }
+
+    @Test
+    //The journal saw the cluster up within its TTL, the node joins at once and ZooKeeper only confirms it
+    void testNodeJoinsAsJournaledAndConfirmsInBackground() throws Exception {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockThatZooKeeperIsReachable(true);
+        mockThatJournaledStatusIsFresh(true);
+        mockThatClusterStatusIs(STARTED);
+
+        assertEquals(StartupOutcome.JOINED_CLUSTER, service.bootStrapNodeAndClusterAsync().get());
+        assertEquals(StartupOutcome.JOINED_CLUSTER, service.getConfirmedOutcome().get(5, SECONDS));
+
+        verifyThatClusterStatusIsChecked(NEVER);
+        verifyThatClusterStatusIsSynced(EXACTLY_ONCE);
+        verifyThatLockWasNotRequiredOrTried();
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+        assertTrue(service.isNodeStarted());
+    }
+
+    @Test
+    //The cluster went down after the journal saw it, the confirmation finds out and this node welcomes after all
+    void testNodeWelcomesWhenJournalIsOutdated() throws Exception {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockThatZooKeeperIsReachable(true);
+        mockThatJournaledStatusIsFresh(true);
+        mockTheDistributedLock();
+        mockThatClusterStatusIs(NOT_STARTED, AND_AGAIN_NOT_STARTED);
+
+        service.bootStrapNodeAndCluster();
+
+        assertEquals(StartupOutcome.STARTED_CLUSTER, service.getConfirmedOutcome().get(5, SECONDS));
+        verifyThatLogsWrite("Status journal was outdated, the cluster is not up.", EXACTLY_ONCE, logsWritten);
+        verifyThatClusterStartedFlagIsUpdated(EXACTLY_ONCE);
+        verifyThatLockIsReleased();
+    }
+
+    @Test
+    //Without ZooKeeper the journaled decision stands instead of the pessimistic welcome
+    void testNodeKeepsJournaledDecisionWhileZooKeeperIsUnreachable() throws Exception {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockThatZooKeeperIsReachable(false);
+        mockThatJournaledStatusIsFresh(true);
+
+        service.bootStrapNodeAndCluster();
+
+        assertEquals(StartupOutcome.JOINED_CLUSTER, service.getConfirmedOutcome().get(5, SECONDS));
+        verifyThatClusterStatusIsSynced(NEVER);
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+        verifyThatLockWasNotRequiredOrTried();
+    }
+
+    @Test
+    //Members have no TTL to judge a journaled view by, MEMBERSHIP mode always asks ZooKeeper
+    void testJournalIsIgnoredInMembershipMode() {
+        Stream<ILoggingEvent> logsWritten = captureLogsForAppStartUpService(NodeStartup.class);
+
+        mockZooKeeperSession();
+        mockThatLivenessIsTrackedBy(LivenessMode.MEMBERSHIP);
+        mockThatJournaledStatusIsFresh(true);
+        mockThatClusterHasLiveMembers(STARTED, STARTED);
+
+        service.bootStrapNodeAndCluster();
+
+        verifyThatJournalIsRead(NEVER);
+        verifyThatLogsWrite("We are started!", NEVER, logsWritten);
+    }
 
     @Configuration
     @Import(NodeStartup.class)
@@ -0,0 +1,62 @@
+package com.hazelnut.node;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestStartupTimeline {
+
+    @Test
+    void testPhasesAreSummedUpInSummary() {
+        StartupTimeline timeline = new StartupTimeline("node-1");
+
+        timeline.run(StartupPhase.LOCK_ACQUIRE, () -> sleep(5));
+        timeline.run(StartupPhase.LOCK_ACQUIRE, () -> sleep(5));
+        assertEquals(Boolean.TRUE, timeline.measure(StartupPhase.SECOND_STATUS_READ, () -> true));
+
+        assertTrue(timeline.getPhaseNanos(StartupPhase.LOCK_ACQUIRE) >= 10_000_000);
+        assertEquals(-1, timeline.getPhaseNanos(StartupPhase.MARK_ACTIVE));
+        String summary = timeline.summary(StartupOutcome.JOINED_CLUSTER);
+        assertTrue(summary.startsWith("outcome=JOINED_CLUSTER total_ms="), summary);
+        assertTrue(summary.contains(" lock_acquire_ms="), summary);
+        assertTrue(summary.contains(" second_status_read_ms="), summary);
+        assertFalse(summary.contains("mark_active"), summary);
+    }
+
+    @Test
+    void testPhasesAreRecordedAsFlightRecorderEvents() throws Exception {
+        Path dump = Files.createTempFile("startup", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.hazelnut.StartupPhase");
+            recording.start();
+            StartupTimeline timeline = new StartupTimeline("node-1");
+            timeline.run(StartupPhase.CONNECT, () -> sleep(1));
+            timeline.run(StartupPhase.FIRST_STATUS_READ, () -> sleep(1));
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.deleteIfExists(dump);
+        assertEquals(List.of("CONNECT", "FIRST_STATUS_READ"), events.stream().map(e -> e.getString("phase")).collect(Collectors.toList()));
+        assertTrue(events.stream().allMatch(e -> "node-1".equals(e.getString("nodeId")) && !e.getDuration().isNegative()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.StatusJournal;
+import com.hazelnut.utils.ClusterStatusRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static com.hazelnut.utils.DataMapper.STATUS_RECORD_LENGTH;
+import static com.hazelnut.utils.DataMapper.writeStatus;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestStatusJournal {
+
+    private static final String STATUS_PATH = "/journal/startup_status";
+
+    private static final long TTL_MILLIS = 7000;
+
+    @TempDir
+    Path directory;
+
+    private StatusJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    //The last observation survives the process, a new journal on the same file reads it back
+    void testObservationIsReadAfterRestart() {
+        Path file = directory.resolve("node/status.journal");
+        journal = open(file);
+        journal.record(status(1_000), 3, 1_500);
+        journal.close();
+
+        journal = open(file);
+        StatusJournal.Observation last = journal.read();
+
+        assertEquals(3, last.getVersion());
+        assertEquals(1_500, last.getObservedAtMillis());
+        assertEquals(1_000, last.getRecord().getRefreshedAtMillis());
+        assertEquals("starter", last.getRecord().getStarterNodeId());
+        assertTrue(journal.hasFreshStatusAt(1_000 + TTL_MILLIS));
+        assertFalse(journal.hasFreshStatusAt(1_001 + TTL_MILLIS));
+    }
+
+    @Test
+    //A deleted status is journaled too, it is never fresh
+    void testDeletedStatusIsNotFresh() {
+        journal = open(directory.resolve("status.journal"));
+        journal.record(status(1_000), 3, 1_500);
+        journal.record(null, -1, 2_000);
+
+        assertEquals(-1, journal.read().getVersion());
+        assertFalse(journal.hasFreshStatusAt(2_000));
+    }
+
+    @Test
+    //An empty, torn or foreign file fails the checksum and reads as no observation
+    void testInvalidJournalReadsAsNothing() throws Exception {
+        Path file = directory.resolve("status.journal");
+        journal = open(file);
+        assertNull(journal.read());
+
+        journal.record(status(1_000), 3, 1_500);
+        try (RandomAccessFile torn = new RandomAccessFile(file.toFile(), "rw")) {
+            torn.seek(20);
+            torn.write(0x7f);
+        }
+
+        assertNull(journal.read());
+        assertFalse(journal.hasFreshStatusAt(1_000));
+    }
+
+    @Test
+    //Journaling is off without a path, and only the status of the own cluster is journaled
+    void testJournalingIsScopedToConfiguredPath() {
+        journal = open(null);
+        assertFalse(journal.isJournaled(STATUS_PATH));
+        journal.record(status(1_000), 3, 1_500);
+        assertNull(journal.read());
+
+        journal = open(directory.resolve("status.journal"));
+        assertTrue(journal.isJournaled(STATUS_PATH));
+        assertFalse(journal.isJournaled("/other/startup_status"));
+    }
+
+    private static StatusJournal open(Path file) {
+        StatusJournal journal = new StatusJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", file == null ? "" : file.toString());
+        ReflectionTestUtils.setField(journal, "statusPath", STATUS_PATH);
+        journal.init();
+        return journal;
+    }
+
+    private static byte[] status(long refreshedAtMillis) {
+        ClusterStatusRecord record = new ClusterStatusRecord();
+        record.start("starter", refreshedAtMillis, TTL_MILLIS);
+        byte[] data = new byte[STATUS_RECORD_LENGTH];
+        writeStatus(record, data);
+        return data;
+    }
+}
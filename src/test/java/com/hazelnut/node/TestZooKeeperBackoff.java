@@ -0,0 +1,128 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.CircuitBreakerOpenException;
+import com.hazelnut.cluster.ClientRetryPolicy;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.preps.CommonTestUtils;
+import org.apache.curator.RetryPolicy;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = {"client.circuit.breaker.failures=3", "client.circuit.breaker.open.ms=100"})
+class TestZooKeeperBackoff extends CommonTestUtils {
+
+    @Autowired
+    private ZooKeeperCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private HazelnutMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        circuitBreaker.onSuccess();
+    }
+
+    @Test
+    //Only failures in a row telling the ensemble is overloaded open the breaker
+    void testBreakerOpensAfterOverloadFailuresInARow() {
+        long openings = metrics.getCircuitBreakerOpenings();
+        circuitBreaker.onFailure(new KeeperException.OperationTimeoutException());
+        circuitBreaker.onFailure(new KeeperException.ConnectionLossException());
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure(new KeeperException.OperationTimeoutException());
+        circuitBreaker.onFailure(new KeeperException.NoNodeException());
+        circuitBreaker.onFailure(new IllegalStateException());
+        circuitBreaker.onFailure(new KeeperException.ConnectionLossException());
+        assertFalse(circuitBreaker.isOpen());
+
+        circuitBreaker.onFailure(new KeeperException.SessionExpiredException());
+
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(openings + 1, metrics.getCircuitBreakerOpenings());
+        long rejections = metrics.getCircuitBreakerRejections();
+        assertThrows(CircuitBreakerOpenException.class, circuitBreaker::acquirePermission);
+        assertEquals(rejections + 1, metrics.getCircuitBreakerRejections());
+    }
+
+    @Test
+    //Once open for its period, one trial is let through and its success closes the breaker
+    void testBreakerLetsOneTrialThroughAndClosesOnSuccess() throws InterruptedException {
+        openBreaker();
+        Thread.sleep(200);
+
+        assertDoesNotThrow(circuitBreaker::acquirePermission);
+        assertThrows(CircuitBreakerOpenException.class, circuitBreaker::acquirePermission);
+
+        circuitBreaker.onSuccess();
+
+        assertFalse(circuitBreaker.isOpen());
+        assertDoesNotThrow(circuitBreaker::acquirePermission);
+    }
+
+    @Test
+    //A failing trial opens the breaker for another period
+    void testFailingTrialOpensTheBreakerAgain() throws InterruptedException {
+        openBreaker();
+        Thread.sleep(200);
+        assertDoesNotThrow(circuitBreaker::acquirePermission);
+
+        circuitBreaker.onFailure(new KeeperException.OperationTimeoutException());
+
+        assertThrows(CircuitBreakerOpenException.class, circuitBreaker::acquirePermission);
+        Thread.sleep(200);
+        assertDoesNotThrow(circuitBreaker::acquirePermission);
+    }
+
+    @Test
+    //Exponential retries sleep a random time, growing with the attempt up to the cap, and stop after the attempts
+    void testExponentialRetriesAreJitteredAndBounded() {
+        RetryPolicy policy = ClientRetryPolicy.EXPONENTIAL.create(6, 100, 1_000);
+        List<Long> sleeps = new ArrayList<>();
+
+        int retry = 0;
+        while (policy.allowRetry(retry, 0, (time, unit) -> sleeps.add(unit.toMillis(time)))) {
+            retry++;
+        }
+
+        assertEquals(6, sleeps.size());
+        for (int i = 0; i < sleeps.size(); i++) {
+            assertTrue(sleeps.get(i) >= 100, "retry " + i + " slept " + sleeps.get(i));
+            assertTrue(sleeps.get(i) <= Math.min(1_000, 100L << (i + 1)), "retry " + i + " slept " + sleeps.get(i));
+        }
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure(new KeeperException.ConnectionLossException());
+        }
+        assertTrue(circuitBreaker.isOpen());
+    }
+
+    @Configuration
+    @Import({HazelnutMetrics.class, ZooKeeperCircuitBreaker.class})
+    static class Config {
+    }
+}
@@ -0,0 +1,71 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.node.preps.ZooKeeperConnectionTestUtils;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The one shared client of ZooKeeperConnectionManager against an in-process ZooKeeper server
+ */
+class TestZooKeeperConnectionManager extends ZooKeeperConnectionTestUtils {
+
+    @Test
+    //Every session leases the same client, releasing never closes it nor counts below zero
+    void testSessionsLeaseTheOneSharedClient() throws Exception {
+        server.start();
+        ZooKeeperConnectionManager manager = newConnectionManager();
+
+        CuratorFramework first = manager.acquire();
+        assertSame(first, manager.acquire());
+        assertEquals(TWICE, manager.getLeasedSessions());
+
+        manager.release();
+        manager.release();
+        manager.release();
+        assertEquals(NEVER, manager.getLeasedSessions());
+        assertTrue(manager.isConnected());
+        assertSame(first, manager.acquire());
+    }
+
+    @Test
+    //An unreachable ZooKeeper costs the connect budget once, the client connects in the background once it is up
+    void testConnectWaitsAtMostTheBudget() throws Exception {
+        ZooKeeperConnectionManager manager = newConnectionManager();
+        long begin = System.nanoTime();
+
+        manager.acquire();
+
+        assertFalse(manager.isConnected());
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - begin) < CONNECT_BUDGET_MILLIS + 2_000);
+
+        server.start();
+        waitUntil(manager::isConnected, "Connected in the background");
+    }
+
+    @Test
+    //Calls fail fast while the server is down, and go through again once it is back
+    void testRequireConnectionFollowsTheConnection() throws Exception {
+        server.start();
+        ZooKeeperConnectionManager manager = newConnectionManager();
+        manager.acquire();
+        assertDoesNotThrow(manager::requireConnection);
+
+        server.stop();
+        waitUntil(() -> !manager.isConnected(), "Disconnected");
+        assertThrows(KeeperException.ConnectionLossException.class, manager::requireConnection);
+
+        server.restart();
+        waitUntil(manager::isConnected, "Reconnected");
+        assertDoesNotThrow(manager::requireConnection);
+    }
+}
@@ -0,0 +1,73 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.ClusterStatusCache;
+import com.hazelnut.cluster.StatusJournal;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.preps.CommonTestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = {"client.connection.string=127.0.0.1:1", "client.connect.budget.ms=300"})
+class TestZooKeeperFailover extends CommonTestUtils {
+
+    @Autowired
+    private ZooKeeperSession session;
+
+    @Autowired
+    private ZooKeeperConnectionManager connectionManager;
+
+    @AfterEach
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    //ZooKeeper being unreachable costs the connect budget once, not a blocked boot
+    void testUnreachableZooKeeperIsGivenUpOnWithinBudget() {
+        long begin = System.nanoTime();
+
+        session.open();
+
+        assertFalse(session.isConnected());
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - begin) < 3_000);
+    }
+
+    @Test
+    //While disconnected every call falls back to its pessimistic outcome at once
+    void testCallsFailFastWhileDisconnected() {
+        session.open();
+        long begin = System.nanoTime();
+
+        assertFalse(session.getSyncedClusterStatus("/failover/status"));
+        assertFalse(session.getClusterStatus("/failover/status"));
+        assertFalse(session.awaitClusterStatus("/failover/status", 10_000));
+        assertTrue(session.tryMarkClusterAsActive("/failover/status", 0));
+
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - begin) < 1_000);
+        assertFalse(connectionManager.isConnected());
+    }
+
+    @Configuration
+    @Import({HazelnutMetrics.class, ZooKeeperCircuitBreaker.class, ZooKeeperConnectionManager.class, StatusJournal.class, ClusterStatusCache.class, ZooKeeperSession.class})
+    static class Config {
+    }
+}
@@ -0,0 +1,128 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.ClusterStatusCache;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.preps.CommonTestUtils;
+import com.hazelnut.utils.ClusterStatusRecord;
+import com.hazelnut.utils.DataMapper;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Races of ZooKeeperSession with other nodes, on a stubbed client so each interleaving is deterministic
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+class TestZooKeeperSession extends CommonTestUtils {
+
+    private static final String STATUS = "/status";
+
+    private static final String VALUE = "/store/value";
+
+    @MockBean
+    private ZooKeeperConnectionManager connectionManager;
+
+    @MockBean
+    private ClusterStatusCache statusCache;
+
+    @Autowired
+    private ObjectProvider<ZooKeeperSession> sessions;
+
+    @Autowired
+    private ZooKeeperCircuitBreaker circuitBreaker;
+
+    private final CuratorFramework client = mock(CuratorFramework.class, RETURNS_DEEP_STUBS);
+
+    @BeforeEach
+    public void setUp() {
+        circuitBreaker.onSuccess();
+        when(client.getState()).thenReturn(CuratorFrameworkState.STARTED);
+        when(connectionManager.acquire()).thenReturn(client);
+        when(connectionManager.isConnected()).thenReturn(true);
+    }
+
+    @Test
+    //The status existed on create but was removed by the TTL reaper before it was read, so the create is tried again
+    void testStatusRemovedBetweenCreateAndReadIsCreatedAgain() throws Exception {
+        when(client.create().creatingParentContainersIfNeeded().forPath(anyString(), any(byte[].class)))
+                .thenThrow(new KeeperException.NodeExistsException(STATUS))
+                .thenReturn(STATUS);
+        when(client.getData().storingStatIn(any(Stat.class)).forPath(STATUS)).thenThrow(new KeeperException.NoNodeException(STATUS));
+
+        assertTrue(sessions.getObject().open().tryMarkClusterAsActive(STATUS, 0));
+        verify(client.create().creatingParentContainersIfNeeded(), times(TWICE)).forPath(anyString(), any(byte[].class));
+    }
+
+    @Test
+    //Another node started the cluster first
+    void testLiveStatusOfAnotherNodeIsNotTakenOver() throws Exception {
+        byte[] live = new byte[DataMapper.STATUS_RECORD_LENGTH];
+        DataMapper.writeStatus(new ClusterStatusRecord().start("other", System.currentTimeMillis(), 0), live);
+        when(client.create().creatingParentContainersIfNeeded().forPath(anyString(), any(byte[].class)))
+                .thenThrow(new KeeperException.NodeExistsException(STATUS));
+        when(client.getData().storingStatIn(any(Stat.class)).forPath(STATUS)).thenReturn(live);
+
+        assertFalse(sessions.getObject().open().tryMarkClusterAsActive(STATUS, 0));
+    }
+
+    @Test
+    //An existing znode is read and watched in one round trip
+    void testWatchedDataIsReadInOneRoundTrip() throws Exception {
+        byte[] value = {42};
+        when(client.getData().storingStatIn(any(Stat.class)).usingWatcher(any(Watcher.class)).forPath(VALUE)).thenReturn(value);
+
+        assertArrayEquals(value, sessions.getObject().open().getWatchedData(VALUE, new Stat(), event -> {
+        }, false));
+        verify(client, never()).checkExists();
+    }
+
+    @Test
+    //A missing znode is watched for its creation
+    void testMissingZnodeIsWatchedForItsCreation() throws Exception {
+        Watcher watcher = event -> {
+        };
+        when(client.getData().storingStatIn(any(Stat.class)).usingWatcher(watcher).forPath(VALUE))
+                .thenThrow(new KeeperException.NoNodeException(VALUE));
+        when(client.checkExists().usingWatcher(watcher).forPath(VALUE)).thenReturn(null);
+
+        assertNull(sessions.getObject().open().getWatchedData(VALUE, new Stat(), watcher, false));
+        verify(client.checkExists().usingWatcher(watcher), times(EXACTLY_ONCE)).forPath(VALUE);
+    }
+
+    @Configuration
+    @Import({HazelnutMetrics.class, ZooKeeperCircuitBreaker.class, ZooKeeperSession.class})
+    static class Config {
+    }
+}
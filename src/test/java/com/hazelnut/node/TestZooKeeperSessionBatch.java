@@ -0,0 +1,175 @@
+package com.hazelnut.node;
+
+import com.hazelnut.cluster.BatchResult;
+import com.hazelnut.cluster.ClusterStatusCache;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.preps.CommonTestUtils;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.transaction.CuratorMultiTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.curator.framework.api.transaction.OperationType;
+import org.apache.curator.framework.imps.CuratorFrameworkImpl;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.framework.imps.TransactionOpImpl;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.data.Stat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+class TestZooKeeperSessionBatch extends CommonTestUtils {
+
+    @MockBean
+    private ZooKeeperConnectionManager connectionManager;
+
+    @MockBean
+    private ClusterStatusCache statusCache;
+
+    @Autowired
+    private ObjectProvider<ZooKeeperSession> sessions;
+
+    @Autowired
+    private ZooKeeperCircuitBreaker circuitBreaker;
+
+    private final CuratorFramework client = mock(CuratorFramework.class);
+
+    private final CuratorMultiTransaction transaction = mock(CuratorMultiTransaction.class);
+
+    //never started, it only builds the operations
+    private final CuratorFramework opBuilder = CuratorFrameworkFactory.newClient("127.0.0.1:1", new RetryOneTime(1));
+
+    private final TransactionOpImpl transactionOp = new TransactionOpImpl((CuratorFrameworkImpl) opBuilder);
+
+    private static final byte[] DATA = {1};
+
+    @BeforeEach
+    public void setUp() {
+        circuitBreaker.onSuccess();
+        when(client.getState()).thenReturn(CuratorFrameworkState.STARTED);
+        when(client.transactionOp()).thenReturn(transactionOp);
+        when(client.transaction()).thenReturn(transaction);
+        when(connectionManager.acquire()).thenReturn(client);
+        when(connectionManager.isConnected()).thenReturn(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        opBuilder.close();
+    }
+
+    @Test
+    //All steps go out in one multi() request and each step gets its own result
+    void testStepsAreCommittedInOneRequestWithPerStepResults() throws Exception {
+        Stat written = new Stat();
+        written.setVersion(5);
+        when(transaction.forOperations(anyList())).thenReturn(List.of(
+                new CuratorTransactionResult(OperationType.CHECK, "/status", "/status", null, 0),
+                new CuratorTransactionResult(OperationType.SET_DATA, "/config", "/config", written, 0),
+                new CuratorTransactionResult(OperationType.CREATE, "/members/n-", "/members/n-0000000007", null, 0)));
+
+        BatchResult result = sessions.getObject().open().batch()
+                .check("/status", 3)
+                .setData("/config", DATA, 4)
+                .create("/members/n-", DATA, CreateMode.EPHEMERAL_SEQUENTIAL)
+                .commit();
+
+        assertTrue(result.isCommitted());
+        assertEquals(3, result.size());
+        assertEquals(-1, result.getFailedStep());
+        assertEquals(5, result.getStat(1).getVersion());
+        assertEquals("/members/n-0000000007", result.getPath(2));
+        verify(transaction, times(EXACTLY_ONCE)).forOperations(anyList());
+    }
+
+    @Test
+    //A failing step rolls back the whole batch, the result tells which step failed
+    void testFailingStepRollsBackTheBatch() throws Exception {
+        KeeperException badVersion = spy(new KeeperException.BadVersionException("/status"));
+        doReturn(List.of(new OpResult.ErrorResult(Code.OK.intValue()),
+                new OpResult.ErrorResult(Code.BADVERSION.intValue()),
+                new OpResult.ErrorResult(Code.RUNTIMEINCONSISTENCY.intValue()))).when(badVersion).getResults();
+        when(transaction.forOperations(anyList())).thenThrow(badVersion);
+
+        BatchResult result = sessions.getObject().open().batch()
+                .create("/lock", DATA, CreateMode.EPHEMERAL)
+                .setData("/status", DATA, 4)
+                .delete("/old", -1)
+                .commit();
+
+        assertFalse(result.isCommitted());
+        assertEquals(1, result.getFailedStep());
+        assertEquals(Code.OK, result.getCode(0));
+        assertEquals(Code.BADVERSION, result.getCode(1));
+        assertEquals(Code.RUNTIMEINCONSISTENCY, result.getCode(2));
+        assertNull(result.getPath(0));
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    //A step that can not be added fails the batch on commit, no request is sent and the steps keep their index
+    void testStepFailingToBeAddedFailsTheBatchWithoutRequest() throws Exception {
+        doThrow(new KeeperException.ConnectionLossException()).when(connectionManager).requireConnection();
+
+        BatchResult result = sessions.getObject().open().batch()
+                .check("/status", -1)
+                .markClusterAsActive("/status", 1_000)
+                .create("/members/n", DATA, CreateMode.EPHEMERAL)
+                .commit();
+
+        assertFalse(result.isCommitted());
+        assertEquals(3, result.size());
+        assertEquals(Code.CONNECTIONLOSS, result.getCode(2));
+        verify(transaction, never()).forOperations(anyList());
+    }
+
+    @Test
+    void testEmptyBatchSendsNothing() throws Exception {
+        BatchResult result = sessions.getObject().open().batch().commit();
+
+        assertTrue(result.isCommitted());
+        assertEquals(0, result.size());
+        verify(transaction, never()).forOperations(anyList());
+    }
+
+    @Configuration
+    @Import({HazelnutMetrics.class, ZooKeeperCircuitBreaker.class, ZooKeeperSession.class})
+    static class Config {
+    }
+}
@@ -0,0 +1,181 @@
+package com.hazelnut.node.preps;
+
+import com.hazelnut.cluster.ClientRetryPolicy;
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.cluster.StartupCoordination;
+import com.hazelnut.node.StartupOutcome;
+import org.apache.curator.test.InstanceSpec;
+import org.apache.curator.test.TestingCluster;
+import org.apache.zookeeper.client.FourLetterWordMain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClusterStartupLoadTestUtils extends CommonTestUtils {
+
+    protected static final int NODES = Integer.getInteger("hazelnut.load.nodes", 200);
+    protected static final int ENSEMBLE_SIZE = Integer.getInteger("hazelnut.load.ensemble", 3);
+    protected static final long STAGGER_MILLIS = Long.getLong("hazelnut.load.stagger.ms", 5000);
+    protected static final long TTL_MILLIS = 2000;
+    protected static final long HEART_BEAT_MILLIS = 500;
+
+    private static final AtomicInteger clusterIds = new AtomicInteger();
+
+    protected static TestingCluster ensemble;
+
+    protected static ScheduledExecutorService heartBeatScheduler;
+
+    private final Logger logger = LoggerFactory.getLogger(ClusterStartupLoadTestUtils.class);
+
+    protected static void startEnsemble() throws Exception {
+        System.setProperty("zookeeper.extendedTypesEnabled", "true");
+        System.setProperty("zookeeper.4lw.commands.whitelist", "*");
+        System.setProperty("znode.container.checkIntervalMs", "100");
+        ensemble = new TestingCluster(ENSEMBLE_SIZE);
+        ensemble.start();
+        heartBeatScheduler = Executors.newScheduledThreadPool(4);
+    }
+
+    protected static void stopEnsemble() throws Exception {
+        heartBeatScheduler.shutdownNow();
+        ensemble.close();
+    }
+
+    /**
+     * one independent logical cluster per scenario, so scenarios don't see each other's status
+     */
+    protected Map<String, Object> clusterProperties(LivenessMode livenessMode, StartupCoordination coordination) {
+        String clusterId = "load_cluster_" + clusterIds.incrementAndGet();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cluster.status.data.path", "/" + clusterId + "/startup_status");
+        properties.put("cluster.members.path", "/" + clusterId + "/members");
+        properties.put("cluster.generation.path", "/" + clusterId + "/generation");
+        properties.put("cluster.startup.tasks.path", "/" + clusterId + "/startup_tasks");
+        properties.put("cluster.startup.tasks.parallelism", "4");
+        properties.put("cluster.nodes.liveness.ttl.ms", String.valueOf(TTL_MILLIS));
+        properties.put("cluster.liveness.mode", livenessMode.name());
+        properties.put("distributed.lock.path", "/" + clusterId + "/initialization_mutex");
+        properties.put("distributed.lock.timeout.ms", "5000");
+        properties.put("distributed.lock.lease.ms", "0");
+        properties.put("distributed.startup.coordination", coordination.name());
+        properties.put("node.startup.budget.ms", "120000");
+        properties.put("node.status.journal.path", "");
+        properties.put("node.liveness.reporting.time.ms", String.valueOf(HEART_BEAT_MILLIS));
+        properties.put("node.liveness.reporting.jitter", "0.2");
+        properties.put("client.connection.string", ensemble.getConnectString());
+        properties.put("client.session.timeout.ms", "10000");
+        properties.put("client.connection.timeout.ms", "15000");
+        properties.put("client.connect.budget.ms", "15000");
+        properties.put("client.retry.time.ms", "1000");
+        properties.put("client.retry.attempts.count", "2");
+        properties.put("client.retry.max.time.ms", "8000");
+        properties.put("client.retry.policy", ClientRetryPolicy.EXPONENTIAL.name());
+        properties.put("client.circuit.breaker.failures", "5");
+        properties.put("client.circuit.breaker.open.ms", "5000");
+        return properties;
+    }
+
+    /**
+     * start the nodes, all at once if staggerMillis is 0, otherwise at random offsets within staggerMillis
+     *
+     * @return the decision of every node, in start order
+     */
+    protected List<Decision> startNodes(int count, Map<String, Object> clusterProperties, long staggerMillis, List<SimulatedNode> running) throws Exception {
+        ExecutorService starters = Executors.newFixedThreadPool(Math.min(count, 64));
+        CountDownLatch gate = new CountDownLatch(1);
+        List<CompletableFuture<Decision>> decisions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> properties = new HashMap<>(clusterProperties);
+            properties.put("node.id", "node-" + running.size());
+            SimulatedNode node = new SimulatedNode(properties);
+            running.add(node);
+            long delay = staggerMillis > 0 ? ThreadLocalRandom.current().nextLong(staggerMillis) : 0;
+            decisions.add(CompletableFuture.supplyAsync(() -> {
+                awaitQuietly(gate);
+                sleepQuietly(delay);
+                long begin = System.nanoTime();
+                StartupOutcome outcome = node.start().join();
+                node.reportLivenessEvery(HEART_BEAT_MILLIS, heartBeatScheduler);
+                return new Decision(outcome, NANOSECONDS.toMillis(System.nanoTime() - begin));
+            }, starters));
+        }
+        gate.countDown();
+        List<Decision> result = new ArrayList<>();
+        for (CompletableFuture<Decision> decision : decisions) {
+            result.add(decision.get());
+        }
+        starters.shutdown();
+        return result;
+    }
+
+    protected void stopNodes(List<SimulatedNode> running) {
+        running.forEach(SimulatedNode::close);
+        running.clear();
+    }
+
+    protected long packetsReceivedByEnsemble() throws Exception {
+        long packets = 0;
+        for (InstanceSpec server : ensemble.getInstances()) {
+            String monitor = FourLetterWordMain.send4LetterWord(server.getHostname(), server.getPort(), "mntr");
+            for (String line : monitor.split("\n")) {
+                if (line.startsWith("zk_packets_received")) {
+                    packets += Long.parseLong(line.split("\t")[1].trim());
+                }
+            }
+        }
+        return packets;
+    }
+
+    protected void verifyThatClusterIsStarted(int expected, List<Decision> decisions) {
+        assertEquals(expected, decisions.stream().filter(d -> d.outcome() == StartupOutcome.STARTED_CLUSTER).count());
+        assertEquals(NEVER, decisions.stream().filter(d -> d.outcome() == StartupOutcome.TIMED_OUT).count());
+    }
+
+    protected void report(String scenario, List<Decision> decisions, long packets) {
+        long[] millis = decisions.stream().mapToLong(Decision::millis).sorted().toArray();
+        logger.info("{}: nodes={} welcomes={} timeouts={} decision ms p50={} p90={} p99={} max={} zk packets={} ({} per node)",
+                scenario, millis.length,
+                decisions.stream().filter(d -> d.outcome() == StartupOutcome.STARTED_CLUSTER).count(),
+                decisions.stream().filter(d -> d.outcome() == StartupOutcome.TIMED_OUT).count(),
+                percentile(millis, 50), percentile(millis, 90), percentile(millis, 99), millis[millis.length - 1],
+                packets < 0 ? "n/a, counters reset by a re-election" : packets, Math.max(0, packets) / millis.length);
+    }
+
+    private long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    protected void sleepQuietly(long millis) {
+        try {
+            MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitQuietly(CountDownLatch gate) {
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected record Decision(StartupOutcome outcome, long millis) {
+    }
+}
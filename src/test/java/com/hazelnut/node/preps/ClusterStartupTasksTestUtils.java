@@ -0,0 +1,87 @@
+package com.hazelnut.node.preps;
+
+import com.hazelnut.cluster.ClusterStartupTask;
+import com.hazelnut.cluster.ClusterStartupTasks;
+import com.hazelnut.cluster.ZooKeeperSession;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.Mockito.times;
+
+public class ClusterStartupTasksTestUtils extends CommonTestUtils {
+
+    protected static final List<String> TASKS_RUN = Collections.synchronizedList(new ArrayList<>());
+
+    protected static final Set<String> FAILING_TASKS = ConcurrentHashMap.newKeySet();
+
+    @MockBean
+    protected ZooKeeperSession session;
+
+    @Autowired
+    protected ClusterStartupTasks startupTasks;
+
+    @Mock
+    protected ObjectProvider<ClusterStartupTask> provider;
+
+    protected static ClusterStartupTask task(String name, String... dependencies) {
+        return new RecordingStartupTask(name, Set.of(dependencies), TASKS_RUN, FAILING_TASKS);
+    }
+
+    protected void mockThatNoTaskIsDone() {
+        TASKS_RUN.clear();
+        FAILING_TASKS.clear();
+        Mockito.when(session.open()).thenReturn(session);
+        Mockito.when(session.tryClaim(anyString())).thenReturn(true);
+        Mockito.when(session.watch(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    protected void mockThatTaskIsDoneByOtherNode(String name) {
+        Mockito.when(session.isMarkedSince(endsWith("/" + name + "/done"), anyLong())).thenReturn(true);
+    }
+
+    protected void mockThatTaskIsClaimedByOtherNodeUntilDone(String name) {
+        Mockito.when(session.tryClaim(endsWith("/" + name + "/claim"))).thenReturn(false);
+        Mockito.when(session.isMarkedSince(endsWith("/" + name + "/done"), anyLong())).thenReturn(false, true);
+    }
+
+    protected void mockThatTaskIsDoneByOtherNodeRightBeforeClaim(String name) {
+        Mockito.when(session.isMarkedSince(endsWith("/" + name + "/done"), anyLong())).thenReturn(false, true);
+    }
+
+    protected void mockThatTaskFails(String name) {
+        FAILING_TASKS.add(name);
+    }
+
+    protected void mockThatTasksAre(ClusterStartupTask... tasks) {
+        Mockito.when(provider.orderedStream()).thenAnswer(invocation -> Stream.of(tasks));
+        ReflectionTestUtils.setField(startupTasks, "taskProvider", provider);
+    }
+
+    protected void assertRanBefore(String first, String then) {
+        assertTrue(TASKS_RUN.indexOf(first) < TASKS_RUN.indexOf(then), first + " did not run before " + then + ": " + TASKS_RUN);
+    }
+
+    protected void verifyThatTaskIsMarkedDone(String name, int count) {
+        Mockito.verify(session, times(count)).mark(endsWith("/" + name + "/done"));
+    }
+
+    protected void verifyThatClaimIsReleased(String name, int count) {
+        Mockito.verify(session, times(count)).releaseClaim(endsWith("/" + name + "/claim"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.hazelnut.node.preps;
+
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.ClusterTenants;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+
+public class ClusterTenantsTestUtils extends CommonTestUtils {
+
+    @MockBean
+    protected ZooKeeperSession session;
+
+    @MockBean
+    protected HazelnutMetrics metrics;
+
+    @Autowired
+    protected ClusterTenants tenants;
+
+    @Captor
+    protected ArgumentCaptor<Collection<String>> batches;
+
+    protected static String statusPathOf(String clusterId) {
+        return "/" + clusterId + "/startup_status";
+    }
+
+    protected void mockZooKeeperSession() {
+        new ArrayList<>(tenants.getTenants()).forEach(tenants::stopTenant);
+        Mockito.when(session.open()).thenReturn(session);
+        Mockito.when(session.isConnected()).thenReturn(true);
+        Mockito.when(session.tryMarkClusterAsActive(anyString(), anyLong())).thenReturn(true);
+    }
+
+    protected void mockThatTenantClusterIs(String clusterId, boolean status) {
+        Mockito.when(session.getClusterStatus(statusPathOf(clusterId))).thenReturn(status);
+    }
+
+    protected void mockThatZooKeeperIsConnected(boolean connected) {
+        Mockito.when(session.isConnected()).thenReturn(connected);
+    }
+
+    protected void mockThatTenantStatusWasRefreshedMillisAgo(String clusterId, long millis) {
+        Mockito.when(session.getClusterStatusAgeMillis(statusPathOf(clusterId))).thenReturn(OptionalLong.of(millis));
+    }
+
+    protected void mockThatBatchSizeIs(int batchSize) {
+        ReflectionTestUtils.setField(tenants, "batchSize", batchSize);
+    }
+
+    protected void startTenants(String... clusterIds) {
+        for (String clusterId : clusterIds) {
+            tenants.startTenant(clusterId);
+        }
+    }
+
+    /**
+     * @return the status paths of every batched heart beat call, in call order
+     */
+    protected List<Collection<String>> verifyBatchedHeartBeatCallsAreMade(int count) {
+        Mockito.verify(session, times(count)).markClustersAsActive(batches.capture(), anyLong());
+        List<Collection<String>> copies = new ArrayList<>();
+        batches.getAllValues().forEach(batch -> copies.add(new ArrayList<>(batch)));
+        return copies;
+    }
+
+    protected void verifySingleHeartBeatCallIsMade(int count) {
+        Mockito.verify(session, times(count)).markClusterAsActive(anyString(), anyLong());
+    }
+
+    protected void verifyThatTenantIsMarkedAsStarted(String clusterId, int count) {
+        Mockito.verify(session, times(count)).tryMarkClusterAsActive(eq(statusPathOf(clusterId)), anyLong());
+    }
+
+    protected void verifyHeartBeatIsPaused(int count) {
+        Mockito.verify(metrics, times(count)).recordHeartBeatPaused();
+    }
+
+    protected void verifyNoBatchedHeartBeatCallIsMade() {
+        Mockito.verify(session, times(NEVER)).markClustersAsActive(anyCollection(), anyLong());
+    }
+}
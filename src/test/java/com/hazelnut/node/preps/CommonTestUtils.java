@@ -20,7 +20,7 @@ public class CommonTestUtils {
     protected static final boolean AND_AGAIN_NOT_STARTED = false;
     protected static final boolean BUT_THEN_STARTED = true;
 
-    protected Stream<ILoggingEvent> captureLogsForAppStartUpService(Class clazz) {
+    protected Stream<ILoggingEvent> captureLogsForAppStartUpService(Class<?> clazz) {
         Logger logger = (Logger) LoggerFactory.getLogger(clazz);
         ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
         listAppender.start();
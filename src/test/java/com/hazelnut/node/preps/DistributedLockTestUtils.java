@@ -1,13 +1,21 @@
 package com.hazelnut.node.preps;
 
+import com.hazelnut.cluster.CircuitBreakerOpenException;
+import com.hazelnut.cluster.DistributedLock;
 import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
 import com.hazelnut.node.NodeLivenessReporter;
 import com.hazelnut.node.NodeStartup;
 import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.zookeeper.KeeperException;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -25,12 +33,66 @@ public class DistributedLockTestUtils extends CommonTestUtils {
     @MockBean
     protected NodeLivenessReporter reporter;
 
+    @MockBean
+    protected HazelnutMetrics metrics;
+
     protected InterProcessMutex mutex = mock(InterProcessMutex.class);
 
+    protected void mockThatZooKeeperIsConnected(boolean connected) {
+        Mockito.when(zooKeeperSession.isConnected()).thenReturn(connected);
+        try {
+            if (connected) {
+                Mockito.doAnswer(invocation -> invocation.<Callable<?>>getArgument(0).call()).when(zooKeeperSession).callRecipe(any());
+            } else {
+                Mockito.doThrow(new KeeperException.ConnectionLossException()).when(zooKeeperSession).callRecipe(any());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void mockThatCircuitBreakerIsOpen() {
+        try {
+            Mockito.doThrow(new CircuitBreakerOpenException()).when(zooKeeperSession).callRecipe(any());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     protected void mockThatLockIsAlreadyAcquired() {
             Mockito.when(mutex.isAcquiredInThisProcess()).thenReturn(true);
     }
 
+    protected Thread anotherThreadQueuesOn(DistributedLock lock, AtomicBoolean lockedByOther) throws InterruptedException {
+        Thread other = new Thread(() -> {
+            try (DistributedLock locked = lock.tryLock()) {
+                lockedByOther.set(locked.isLocked());
+            }
+        });
+        other.start();
+        ReentrantLock localLock = (ReentrantLock) ReflectionTestUtils.getField(lock, "localLock");
+        while (!localLock.hasQueuedThread(other)) {
+            Thread.sleep(1);
+        }
+        return other;
+    }
+
+    protected void mockThatLockIsLeasedFor(DistributedLock lock, long leaseMillis) {
+        ReflectionTestUtils.setField(lock, "leaseMillis", leaseMillis);
+    }
+
+    protected void verifyThatSessionIsClosed(int count) {
+        Mockito.verify(zooKeeperSession, times(count)).close();
+    }
+
+    protected void verifyReleaseLockCallIsMadeWithin(long millis) {
+        try {
+            Mockito.verify(mutex, Mockito.timeout(millis)).release();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     protected void verifyDistributedLockIsTried(int count) {
         try {
             Mockito.verify(mutex, times(count)).acquire(anyLong(), any(TimeUnit.class));
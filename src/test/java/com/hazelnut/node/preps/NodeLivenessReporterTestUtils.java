@@ -1,11 +1,16 @@
 package com.hazelnut.node.preps;
 
+import com.hazelnut.cluster.LivenessMode;
 import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
 import com.hazelnut.node.NodeLivenessReporter;
 import com.hazelnut.node.NodeStartup;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.OptionalLong;
 
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -19,18 +24,42 @@ public class NodeLivenessReporterTestUtils extends CommonTestUtils {
     @MockBean
     protected NodeStartup nodeStartup;
 
+    @MockBean
+    protected HazelnutMetrics metrics;
+
     @Autowired
     protected NodeLivenessReporter reporter;
 
 
     protected void mockZooKeeperSession() {
         Mockito.when(zooKeeperSession.open()).thenReturn(zooKeeperSession);
+        mockThatZooKeeperIsConnected(true);
+    }
+
+    protected void mockThatZooKeeperIsConnected(boolean connected) {
+        Mockito.when(zooKeeperSession.isConnected()).thenReturn(connected);
+    }
+
+    protected void verifyHeartBeatIsPaused(int count) {
+        Mockito.verify(metrics, times(count)).recordHeartBeatPaused();
     }
 
     protected void verifyHeartBeatCallIsMade(int count) {
         Mockito.verify(zooKeeperSession, times(count)).markClusterAsActive(anyString(), anyLong());
     }
 
+    protected void mockThatLivenessIsTrackedBy(LivenessMode mode) {
+        ReflectionTestUtils.setField(reporter, "livenessMode", mode);
+    }
+
+    protected void mockThatClusterStatusWasRefreshedMillisAgo(long millis) {
+        Mockito.when(zooKeeperSession.getClusterStatusAgeMillis(anyString())).thenReturn(OptionalLong.of(millis));
+    }
+
+    protected void verifyHeartBeatIsSuppressed(int count) {
+        Mockito.verify(metrics, times(count)).recordHeartBeatSuppressed();
+    }
+
     protected void mockThatNodeIs(boolean status) {
         Mockito.when(nodeStartup.isNodeStarted()).thenReturn(status);
     }
@@ -1,14 +1,22 @@
 package com.hazelnut.node.preps;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.hazelnut.cluster.ClusterMembership;
+import com.hazelnut.cluster.ClusterStartupTasks;
 import com.hazelnut.cluster.DistributedLock;
+import com.hazelnut.cluster.LivenessMode;
+import com.hazelnut.cluster.StartupCoordination;
+import com.hazelnut.cluster.StatusJournal;
 import com.hazelnut.cluster.ZooKeeperSession;
 import com.hazelnut.node.NodeLivenessReporter;
 import com.hazelnut.node.NodeStartup;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -26,15 +34,32 @@ public class NodeStartUpTestUtils extends CommonTestUtils {
     @MockBean
     protected NodeLivenessReporter reporter;
 
+    @MockBean
+    protected ClusterMembership membership;
+
+    @MockBean
+    protected ClusterStartupTasks startupTasks;
+
+    @MockBean
+    protected StatusJournal journal;
+
     @Autowired
     protected NodeStartup service;
 
+    @Value("${node.startup.budget.ms}")
+    protected long startupBudgetMillis;
+
+    @Value("${distributed.lock.timeout.ms}")
+    protected long startupWaitMillis;
+
     protected void mockThatClusterStatusIs(boolean value) {
         Mockito.when(session.getClusterStatus(anyString())).thenReturn(value);
+        Mockito.when(session.getSyncedClusterStatus(anyString())).thenReturn(value);
     }
 
     protected void mockThatClusterStatusIs(boolean value, boolean secondValue) {
-        Mockito.when(session.getClusterStatus(anyString())).thenReturn(value, secondValue);
+        Mockito.when(session.getClusterStatus(anyString())).thenReturn(value);
+        Mockito.when(session.getSyncedClusterStatus(anyString())).thenReturn(secondValue);
     }
 
     protected void verifyThatLogsWrite(String message, int expected, Stream<ILoggingEvent> logsWritten) {
@@ -42,15 +67,60 @@ public class NodeStartUpTestUtils extends CommonTestUtils {
     }
 
     protected void mockTheDistributedLock() {
+        mockTheDistributedLockIsFree(true);
+    }
+
+    protected void mockTheDistributedLockIsFree(boolean free) {
         Mockito.when(distributedLock.tryLock()).thenReturn(distributedLock);
+        Mockito.when(distributedLock.tryLock(anyLong())).thenReturn(distributedLock);
+        Mockito.when(distributedLock.isLocked()).thenReturn(free);
+    }
+
+    protected void mockTheDistributedLockIsFree(boolean free, boolean thenFree) {
+        mockTheDistributedLockIsFree(free);
+        Mockito.when(distributedLock.isLocked()).thenReturn(free, thenFree);
+    }
+
+    protected void mockTheDistributedLockIsFree(boolean free, boolean thenFree, boolean finallyFree) {
+        mockTheDistributedLockIsFree(free);
+        Mockito.when(distributedLock.isLocked()).thenReturn(free, thenFree, finallyFree);
+    }
+
+    protected void mockThatStartupBudgetIs(long millis) {
+        ReflectionTestUtils.setField(service, "startupBudgetMillis", millis);
+    }
+
+    protected void mockThatStartupWaitIs(long millis) {
+        ReflectionTestUtils.setField(service, "startupWaitMillis", millis);
+    }
+
+    protected void mockThatNodeIsNotStartedYet() {
+        ReflectionTestUtils.setField(service, "nodeStarted", false);
+    }
+
+    protected void verifyThatNodeIsStarted(boolean started) {
+        assertEquals(started, service.isNodeStarted());
+    }
+
+    protected void mockThatStatusWatchNotifiesStarted(boolean notified) {
+        Mockito.when(session.awaitClusterStatus(anyString(), anyLong())).thenReturn(notified);
     }
 
     protected void verifyThatLockIsReleased() {
-        Mockito.verify(distributedLock, times(EXACTLY_ONCE)).close();
+        verifyThatLockIsReleased(EXACTLY_ONCE);
+    }
+
+    protected void verifyThatLockIsReleased(int count) {
+        Mockito.verify(distributedLock, times(count)).close();
     }
 
     protected void verifyThatLockWasNotRequiredOrTried() {
         Mockito.verify(distributedLock, times(NEVER)).tryLock();
+        Mockito.verify(distributedLock, times(NEVER)).tryLock(anyLong());
+    }
+
+    protected void verifyThatNodeQueuedOnLock(int count) {
+        Mockito.verify(distributedLock, times(count)).tryLock();
     }
 
     protected void verifyThatClusterStartedFlagIsUpdated(int count) {
@@ -61,8 +131,59 @@ public class NodeStartUpTestUtils extends CommonTestUtils {
         Mockito.verify(session, times(count)).getClusterStatus(anyString());
     }
 
+    protected void verifyThatClusterStatusIsSynced(int count) {
+        Mockito.verify(session, times(count)).getSyncedClusterStatus(anyString());
+    }
+
+    protected void mockThatLivenessIsTrackedBy(LivenessMode mode) {
+        ReflectionTestUtils.setField(service, "livenessMode", mode);
+    }
+
+    protected void mockThatClusterStatusIsAsync(boolean value, boolean secondValue) {
+        Mockito.when(session.getClusterStatusAsync(anyString())).thenReturn(CompletableFuture.completedFuture(value));
+        Mockito.when(session.getSyncedClusterStatus(anyString())).thenReturn(secondValue);
+    }
+
+    protected void mockThatStartupIsCoordinatedBy(StartupCoordination coordination) {
+        ReflectionTestUtils.setField(service, "startupCoordination", coordination);
+    }
+
+    protected void mockThatConditionalCreateIs(boolean won) {
+        Mockito.when(session.tryMarkClusterAsActive(anyString(), anyLong())).thenReturn(won);
+        Mockito.when(membership.registerAndCheckIfFirst()).thenReturn(won);
+    }
+
+    protected void verifyThatConditionalCreateIsTried(int count) {
+        Mockito.verify(session, times(count)).tryMarkClusterAsActive(anyString(), anyLong());
+    }
+
+    protected void mockThatClusterHasLiveMembers(boolean value, boolean secondValue) {
+        Mockito.when(membership.hasLiveMembers(false)).thenReturn(value);
+        Mockito.when(membership.hasLiveMembers(true)).thenReturn(secondValue);
+    }
+
+    protected void verifyThatNodeIsRegisteredAsMember() {
+        Mockito.verify(membership, Mockito.atLeastOnce()).register();
+    }
+
+    protected void verifyThatStartupTasksAreRun(int count) {
+        Mockito.verify(startupTasks, times(count)).runPending();
+    }
+
     protected void mockZooKeeperSession() {
         Mockito.when(session.open()).thenReturn(session);
     }
 
+    protected void mockThatJournaledStatusIsFresh(boolean fresh) {
+        Mockito.when(journal.hasFreshStatusAt(anyLong())).thenReturn(fresh);
+    }
+
+    protected void verifyThatJournalIsRead(int count) {
+        Mockito.verify(journal, times(count)).hasFreshStatusAt(anyLong());
+    }
+
+    protected void mockThatZooKeeperIsReachable(boolean reachable) {
+        Mockito.when(session.isConnected()).thenReturn(reachable);
+    }
+
 }
@@ -0,0 +1,45 @@
+package com.hazelnut.node.preps;
+
+import com.hazelnut.cluster.ClusterStartupTask;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Startup task recording its runs, and failing while its name is in the given failing tasks
+ */
+public class RecordingStartupTask implements ClusterStartupTask {
+
+    private final String name;
+
+    private final Set<String> dependencies;
+
+    private final Collection<String> runs;
+
+    private final Collection<String> failing;
+
+    public RecordingStartupTask(String name, Set<String> dependencies, Collection<String> runs, Collection<String> failing) {
+        this.name = name;
+        this.dependencies = dependencies;
+        this.runs = runs;
+        this.failing = failing;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    @Override
+    public void run() {
+        if (failing.contains(name)) {
+            throw new IllegalStateException(name + " failed");
+        }
+        runs.add(name);
+    }
+}
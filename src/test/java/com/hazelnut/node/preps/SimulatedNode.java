@@ -0,0 +1,62 @@
+package com.hazelnut.node.preps;
+
+import com.hazelnut.cluster.ClusterMembership;
+import com.hazelnut.cluster.ClusterStartupTasks;
+import com.hazelnut.cluster.ClusterStatusCache;
+import com.hazelnut.cluster.DistributedLock;
+import com.hazelnut.cluster.StatusJournal;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.cluster.ZooKeeperSession;
+import com.hazelnut.metrics.HazelnutMetrics;
+import com.hazelnut.node.NodeLivenessReporter;
+import com.hazelnut.node.NodeStartup;
+import com.hazelnut.node.StartupOutcome;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * One simulated Hazelnut node: its own Spring context, its own connection and thus its own ZooKeeper session
+ * Heart beats are driven by the harness instead of @Scheduled
+ */
+public class SimulatedNode implements Closeable {
+
+    private final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+
+    private ScheduledFuture<?> heartBeats = null;
+
+    public SimulatedNode(Map<String, Object> properties) {
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("node", properties));
+        context.register(HazelnutMetrics.class, ZooKeeperCircuitBreaker.class, ZooKeeperConnectionManager.class, StatusJournal.class, ClusterStatusCache.class, ClusterMembership.class,
+                ZooKeeperSession.class, DistributedLock.class, ClusterStartupTasks.class, NodeStartup.class, NodeLivenessReporter.class);
+        context.refresh();
+    }
+
+    public CompletableFuture<StartupOutcome> start() {
+        return context.getBean(NodeStartup.class).bootStrapNodeAndClusterAsync();
+    }
+
+    public void reportLivenessEvery(long intervalMillis, ScheduledExecutorService scheduler) {
+        NodeLivenessReporter reporter = context.getBean(NodeLivenessReporter.class);
+        heartBeats = scheduler.scheduleWithFixedDelay(reporter::updateClusterStatus, 0, intervalMillis, MILLISECONDS);
+    }
+
+    /**
+     * stop the node the way a process dies gracefully: heart beats stop and the session is closed
+     */
+    @Override
+    public void close() {
+        if (heartBeats != null) {
+            heartBeats.cancel(false);
+        }
+        context.close();
+    }
+}
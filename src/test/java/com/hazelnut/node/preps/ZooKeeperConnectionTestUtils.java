@@ -0,0 +1,66 @@
+package com.hazelnut.node.preps;
+
+import com.hazelnut.cluster.ClientRetryPolicy;
+import com.hazelnut.cluster.ZooKeeperCircuitBreaker;
+import com.hazelnut.cluster.ZooKeeperConnectionManager;
+import com.hazelnut.metrics.HazelnutMetrics;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * One in-process ZooKeeper server per test, and connection managers wired as the Spring context would
+ */
+public class ZooKeeperConnectionTestUtils extends CommonTestUtils {
+
+    protected static final long CONNECT_BUDGET_MILLIS = 300;
+
+    protected static final long WAIT_MILLIS = 10_000;
+
+    protected TestingServer server;
+
+    private final List<ZooKeeperConnectionManager> managers = new ArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        System.setProperty("zookeeper.extendedTypesEnabled", "true");
+        server = new TestingServer(false);
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        managers.forEach(ZooKeeperConnectionManager::close);
+        managers.clear();
+        server.close();
+    }
+
+    protected ZooKeeperConnectionManager newConnectionManager() {
+        HazelnutMetrics metrics = new HazelnutMetrics();
+        ZooKeeperConnectionManager manager = new ZooKeeperConnectionManager(metrics, new ZooKeeperCircuitBreaker(metrics));
+        ReflectionTestUtils.setField(manager, "connectionString", server.getConnectString());
+        ReflectionTestUtils.setField(manager, "sessionTimeoutMs", 2000);
+        ReflectionTestUtils.setField(manager, "connectionTimeoutMs", 1000);
+        ReflectionTestUtils.setField(manager, "connectBudgetMillis", CONNECT_BUDGET_MILLIS);
+        ReflectionTestUtils.setField(manager, "retryTimeMs", 100);
+        ReflectionTestUtils.setField(manager, "numberOfTries", 2);
+        ReflectionTestUtils.setField(manager, "maxRetryTimeMs", 500);
+        ReflectionTestUtils.setField(manager, "retryPolicy", ClientRetryPolicy.EXPONENTIAL);
+        managers.add(manager);
+        return manager;
+    }
+
+    protected void waitUntil(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), what + " not within " + WAIT_MILLIS + " ms.");
+    }
+}
@@ -0,0 +1,141 @@
+package com.hazelnut.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestCoalescingPublisher {
+
+    //items are keyed by their first letter, a newer item names the ones it replaced
+    private final CoalescingPublisher<String> publisher =
+            new CoalescingPublisher<>(Runnable::run, item -> item.charAt(0), (older, newer) -> newer + "<" + older);
+
+    @Test
+    //Nothing is delivered beyond the demand, pending items wait in order
+    void testItemsAreDeliveredOnlyAsRequested() {
+        RecordingSubscriber subscriber = subscribe();
+        publisher.submit("a1");
+        publisher.submit("b1");
+        publisher.submit("c1");
+        assertEquals(List.of(), subscriber.items);
+
+        subscriber.subscription.request(2);
+        assertEquals(List.of("a1", "b1"), subscriber.items);
+
+        subscriber.subscription.request(1);
+        assertEquals(List.of("a1", "b1", "c1"), subscriber.items);
+    }
+
+    @Test
+    //A newer item replaces the pending one of its key and moves behind the others
+    void testPendingItemsOfOneKeyAreCoalesced() {
+        RecordingSubscriber subscriber = subscribe();
+        publisher.submit("a1");
+        publisher.submit("a2");
+        publisher.submit("b1");
+        publisher.submit("a3");
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(List.of("b1", "a3<a2<a1"), subscriber.items);
+        publisher.submit("a4");
+        assertEquals(List.of("b1", "a3<a2<a1", "a4"), subscriber.items);
+    }
+
+    @Test
+    //A burst to a stalled subscriber is held as one item per key, a subscriber with demand gets every item
+    void testSlowSubscriberBufferIsBoundedByKeys() {
+        RecordingSubscriber slow = subscribe();
+        RecordingSubscriber fast = subscribe();
+        fast.subscription.request(Long.MAX_VALUE);
+
+        for (int i = 0; i < 10_000; i++) {
+            publisher.submit("abc".charAt(i % 3) + String.valueOf(i));
+        }
+        slow.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(10_000, fast.items.size());
+        assertEquals(3, slow.items.size());
+        assertTrue(slow.items.get(1).startsWith("c9998<c9995<"));
+        assertTrue(slow.items.get(2).startsWith("a9999<a9996<"));
+    }
+
+    @Test
+    //A late subscriber first gets its initial item, e.g. the current state
+    void testSubscriberGetsItsInitialItem() {
+        publisher.submit("a1");
+        RecordingSubscriber late = new RecordingSubscriber();
+        publisher.subscribe(late, () -> "s0");
+        publisher.submit("b1");
+
+        late.subscription.request(5);
+
+        assertEquals(List.of("s0", "b1"), late.items);
+    }
+
+    @Test
+    //Close completes a subscriber once it took its pending items, cancel and invalid requests end the subscription
+    void testTerminalSignals() {
+        RecordingSubscriber completed = subscribe();
+        RecordingSubscriber cancelled = subscribe();
+        RecordingSubscriber invalid = subscribe();
+        publisher.submit("a1");
+
+        cancelled.subscription.cancel();
+        invalid.subscription.request(0);
+        publisher.close();
+        assertEquals(0, completed.completions);
+
+        completed.subscription.request(1);
+
+        assertEquals(List.of("a1"), completed.items);
+        assertEquals(1, completed.completions);
+        assertEquals(List.of(), cancelled.items);
+        assertEquals(0, cancelled.completions);
+        assertInstanceOf(IllegalArgumentException.class, invalid.error);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    private RecordingSubscriber subscribe() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<String> {
+
+        private final List<String> items = new ArrayList<>();
+
+        private Flow.Subscription subscription;
+
+        private int completions = 0;
+
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.hazelnut.utils;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.junit.runner.RunWith;
@@ -7,6 +8,9 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @RunWith(MockitoJUnitRunner.class)
 class TestDataMapper {
@@ -19,4 +23,101 @@ class TestDataMapper {
         assertEquals(DataMapper.bytesToBoolean(boolConvertedBytes), bool);
     }
 
+    @Test
+    void testStatusRecordRoundTripsThroughReusedBuffers() {
+        byte[] buffer = new byte[DataMapper.STATUS_RECORD_LENGTH];
+        ClusterStatusRecord written = new ClusterStatusRecord().start("node-7", 1_000, 7_000).refresh(5_000, 7_000);
+        ClusterStatusRecord read = new ClusterStatusRecord().start("a-much-longer-node-id-left-over", 1, 1);
+
+        assertEquals(DataMapper.STATUS_RECORD_LENGTH, DataMapper.writeStatus(written, buffer));
+        assertTrue(DataMapper.readStatus(buffer, read));
+
+        assertEquals(DataMapper.STATUS_SCHEMA_VERSION, read.getSchemaVersion());
+        assertTrue(read.isStarted());
+        assertEquals(1_000, read.getEpochMillis());
+        assertEquals(5_000, read.getRefreshedAtMillis());
+        assertEquals(7_000, read.getTtlMillis());
+        assertEquals("node-7", read.getStarterNodeId());
+    }
+
+    @Test
+    void testSingleByteStatusIsReadAsSchemaVersionZero() {
+        ClusterStatusRecord read = new ClusterStatusRecord();
+
+        assertTrue(DataMapper.readStatus(DataMapper.booleanToBytes(true), read));
+
+        assertEquals(0, read.getSchemaVersion());
+        assertTrue(read.isLiveAt(Long.MAX_VALUE));
+        assertEquals("", read.getStarterNodeId());
+        assertTrue(DataMapper.isLiveStatus(DataMapper.booleanToBytes(true), 0));
+        assertFalse(DataMapper.isLiveStatus(DataMapper.booleanToBytes(false), 0));
+    }
+
+    @Test
+    void testStatusIsStaleAfterTwiceItsTtlWithoutRefresh() {
+        byte[] buffer = new byte[DataMapper.STATUS_RECORD_LENGTH];
+        DataMapper.writeStatus(new ClusterStatusRecord().start("node-1", 1_000, 7_000), buffer);
+
+        assertTrue(DataMapper.isLiveStatus(buffer, 15_000));
+        assertFalse(DataMapper.isLiveStatus(buffer, 15_001));
+        assertFalse(DataMapper.isLiveStatus(null, 0));
+        assertFalse(DataMapper.isLiveStatus(new byte[]{9, 9, 9}, 0));
+    }
+
+    @Test
+    void testLongNodeIdsAreCutAndSmallBuffersRejected() {
+        byte[] buffer = new byte[DataMapper.STATUS_RECORD_LENGTH];
+        ClusterStatusRecord read = new ClusterStatusRecord();
+        DataMapper.writeStatus(new ClusterStatusRecord().start("x".repeat(100), 0, 0), buffer);
+
+        DataMapper.readStatus(buffer, read);
+
+        assertEquals("x".repeat(ClusterStatusRecord.MAX_NODE_ID_BYTES), read.getStarterNodeId());
+        assertThrows(IllegalArgumentException.class, () -> DataMapper.writeStatus(read, new byte[8]));
+    }
+
+    @Test
+    void testLongNodeIdsAreCutAtWholeCharacters() {
+        byte[] buffer = new byte[DataMapper.STATUS_RECORD_LENGTH];
+        ClusterStatusRecord read = new ClusterStatusRecord();
+        DataMapper.writeStatus(new ClusterStatusRecord().start("x" + "\u00fc".repeat(40), 0, 0), buffer);
+
+        DataMapper.readStatus(buffer, read);
+
+        assertEquals("x" + "\u00fc".repeat(31), read.getStarterNodeId());
+    }
+
+    @Test
+    void testStatusOfNewerSchemaVersionIsReadAndRefreshedAsFarAsKnown() {
+        byte[] buffer = new byte[DataMapper.STATUS_RECORD_LENGTH + 3];
+        DataMapper.writeStatus(new ClusterStatusRecord().start("node-2", 1_000, 7_000), buffer);
+        buffer[0] = (byte) (DataMapper.STATUS_SCHEMA_VERSION + 1);
+        buffer[DataMapper.STATUS_RECORD_LENGTH] = 42;
+        ClusterStatusRecord read = new ClusterStatusRecord();
+
+        assertTrue(DataMapper.readStatus(buffer, read));
+        assertEquals(DataMapper.STATUS_SCHEMA_VERSION + 1, read.getSchemaVersion());
+        assertTrue(read.isLiveAt(15_000));
+        assertEquals("node-2", read.getStarterNodeId());
+        assertTrue(DataMapper.isLiveStatus(buffer, 15_000));
+
+        DataMapper.refreshStatus(buffer, 20_000, 7_000);
+        DataMapper.readStatus(buffer, read);
+        assertEquals(20_000, read.getRefreshedAtMillis());
+        assertEquals(1_000, read.getEpochMillis());
+        assertEquals(DataMapper.STATUS_SCHEMA_VERSION + 1, buffer[0]);
+        assertEquals(42, buffer[DataMapper.STATUS_RECORD_LENGTH]);
+        assertThrows(IllegalArgumentException.class, () -> DataMapper.refreshStatus(DataMapper.booleanToBytes(true), 0, 0));
+    }
+
+    @Test
+    void testStockCodecsRoundTrip() {
+        assertEquals(Long.MIN_VALUE, DataMapper.LONG.decode(DataMapper.LONG.encode(Long.MIN_VALUE)));
+        assertEquals(42L, DataMapper.bytesToLong(DataMapper.longToBytes(42L)));
+        assertEquals("z\u00fcrich", DataMapper.STRING.decode(DataMapper.STRING.encode("z\u00fcrich")));
+        assertEquals(true, DataMapper.BOOLEAN.decode(DataMapper.BOOLEAN.encode(true)));
+        assertArrayEquals(new byte[]{1, 2}, DataMapper.BYTES.decode(DataMapper.BYTES.encode(new byte[]{1, 2})));
+        assertThrows(IllegalArgumentException.class, () -> DataMapper.LONG.decode(new byte[3]));
+    }
+
 }